@@ -0,0 +1,307 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.zip.CRC32;
+
+// Append-only write-ahead log of acceptor state. Every promise and every accepted value is written here before the
+// reply that depends on it is sent, so an acceptor that crashes and restarts cannot break a promise it already gave.
+//
+// With group commit a single writer thread drains every record appended while the previous fsync was running and
+// makes them durable with one write and one fsync, so replies that arrive together share the cost of the sync.
+// Without it every append writes and syncs on the caller's thread.
+//
+// Record layout: int payload length, int CRC32 of the payload, then the payload
+//   byte    kind (RANGE_PROMISE or SLOT)
+//   RANGE_PROMISE: int proposalNumber, int fromInstance
+//   SLOT:          int instance, int promisedProposalNumber, int acceptedProposalNumber, value
+// A value is an int holding the UTF-8 length plus one, followed by the bytes. A length of zero means null.
+// A torn or corrupt record at the end of the file is a write that never completed, recovery stops there and drops it
+public class AcceptorLog implements Closeable {
+    private static final byte RANGE_PROMISE = 1;
+    private static final byte SLOT = 2;
+    private static final int HEADER_SIZE = 2 * Integer.BYTES;
+
+    // Receives the records of the log in the order they were written
+    public interface Replayer {
+        void rangePromise(int proposalNumber, int fromInstance);
+
+        void slot(int instance, int promisedProposalNumber, int acceptedProposalNumber, String acceptedValue);
+    }
+
+    private final Path file;
+    private FileChannel channel;
+    private final boolean groupCommit;
+    private final Thread writer;
+
+    // Records waiting for the writer thread, each with the action to run once it is durable
+    private final Object lock = new Object();
+    private List<ByteBuffer> pendingRecords = new ArrayList<>();
+    private List<Runnable> pendingActions = new ArrayList<>();
+    private boolean closed = false;
+    private IOException failure;
+
+    private long records = 0;
+    private long syncs = 0;
+
+    public AcceptorLog(Path file, boolean groupCommit, String name) throws IOException {
+        this.file = file;
+        this.groupCommit = groupCommit;
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        channel.position(channel.size());
+        if (groupCommit) {
+            writer = new Thread(this::writeLoop, name + "-wal");
+            writer.setDaemon(true);
+            writer.start();
+        } else {
+            writer = null;
+        }
+    }
+
+    // Reads the log from the start and truncates whatever follows the last complete record
+    public synchronized void replay(Replayer replayer) throws IOException {
+        long size = channel.size();
+        long pos = 0;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        CRC32 crc = new CRC32();
+        while (pos + HEADER_SIZE <= size) {
+            header.clear();
+            readFully(header, pos);
+            int length = header.getInt(0);
+            if (length <= 0 || pos + HEADER_SIZE + length > size) {
+                break;
+            }
+            ByteBuffer payload = ByteBuffer.allocate(length);
+            readFully(payload, pos + HEADER_SIZE);
+            crc.reset();
+            crc.update(payload.array());
+            if ((int) crc.getValue() != header.getInt(Integer.BYTES)) {
+                break;
+            }
+            apply(payload.array(), replayer);
+            pos += HEADER_SIZE + length;
+        }
+        if (pos < size) {
+            channel.truncate(pos);
+        }
+        channel.position(pos);
+    }
+
+    public void appendRangePromise(int proposalNumber, int fromInstance, Runnable onDurable) {
+        append(rangePromiseRecord(proposalNumber, fromInstance), onDurable);
+    }
+
+    public void appendSlot(int instance, int promisedProposalNumber, int acceptedProposalNumber, String acceptedValue,
+                           Runnable onDurable) {
+        append(slotRecord(instance, promisedProposalNumber, acceptedProposalNumber, acceptedValue), onDurable);
+    }
+
+    private static byte[] rangePromiseRecord(int proposalNumber, int fromInstance) {
+        ByteBuffer payload = ByteBuffer.allocate(1 + 2 * Integer.BYTES);
+        payload.put(RANGE_PROMISE).putInt(proposalNumber).putInt(fromInstance);
+        return payload.array();
+    }
+
+    private static byte[] slotRecord(int instance, int promisedProposalNumber, int acceptedProposalNumber,
+                                     String acceptedValue) {
+        byte[] value = acceptedValue == null ? null : acceptedValue.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer payload = ByteBuffer.allocate(1 + 4 * Integer.BYTES + (value == null ? 0 : value.length));
+        payload.put(SLOT).putInt(instance).putInt(promisedProposalNumber).putInt(acceptedProposalNumber);
+        if (value == null) {
+            payload.putInt(0);
+        } else {
+            payload.putInt(value.length + 1).put(value);
+        }
+        return payload.array();
+    }
+
+    // Replaces the log with one holding only the given state, used after a snapshot has made the slots below it
+    // redundant. The new log is written next to the old one and moved over it, so a crash leaves one or the other.
+    // Records still queued for the writer thread are appended after it; each is older than the state written here
+    // and followed by any later change to the same slot, so replay still ends with the current state
+    public synchronized void rewrite(int rangePromisedProposalNumber, int rangePromisedFromInstance,
+                                     SortedMap<Integer, CouncilMember.AcceptorSlot> slots) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel compacted = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            List<ByteBuffer> state = new ArrayList<>();
+            if (rangePromisedProposalNumber > -1) {
+                state.add(frame(rangePromiseRecord(rangePromisedProposalNumber, rangePromisedFromInstance)));
+            }
+            for (Map.Entry<Integer, CouncilMember.AcceptorSlot> entry : slots.entrySet()) {
+                CouncilMember.AcceptorSlot slot = entry.getValue();
+                state.add(frame(slotRecord(entry.getKey(), slot.promisedProposalNumber, slot.acceptedProposalNumber,
+                        slot.acceptedValue)));
+            }
+            writeFully(compacted, state.toArray(new ByteBuffer[0]));
+            compacted.force(false);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        channel.close();
+        channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        channel.position(channel.size());
+    }
+
+    public synchronized long size() throws IOException {
+        return channel.size();
+    }
+
+    // onDurable runs once the record is on disk. If the log cannot be written it never runs, an acceptor that
+    // cannot persist its state must stay silent rather than answer
+    protected void append(byte[] payload, Runnable onDurable) {
+        ByteBuffer record = frame(payload);
+        if (!groupCommit) {
+            synchronized (this) {
+                try {
+                    if (closed || failure != null) {
+                        return;
+                    }
+                    writeFully(channel, new ByteBuffer[]{record});
+                    channel.force(false);
+                    records++;
+                    syncs++;
+                } catch (IOException e) {
+                    fail(e);
+                    return;
+                }
+            }
+            onDurable.run();
+            return;
+        }
+        synchronized (lock) {
+            if (closed || failure != null) {
+                return;
+            }
+            pendingRecords.add(record);
+            pendingActions.add(onDurable);
+            lock.notify();
+        }
+    }
+
+    private void writeLoop() {
+        while (true) {
+            List<ByteBuffer> batch;
+            List<Runnable> actions;
+            synchronized (lock) {
+                while (pendingRecords.isEmpty() && !closed) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (pendingRecords.isEmpty()) {
+                    return;
+                }
+                batch = pendingRecords;
+                actions = pendingActions;
+                pendingRecords = new ArrayList<>();
+                pendingActions = new ArrayList<>();
+            }
+            try {
+                synchronized (this) {
+                    writeFully(channel, batch.toArray(new ByteBuffer[0]));
+                    channel.force(false);
+                    records += batch.size();
+                    syncs++;
+                }
+            } catch (IOException e) {
+                fail(e);
+                return;
+            }
+            for (Runnable action : actions) {
+                action.run();
+            }
+        }
+    }
+
+    // Number of records written and number of fsyncs it took
+    public synchronized long records() {
+        return records;
+    }
+
+    public synchronized long syncs() {
+        return syncs;
+    }
+
+    // Writes out what is already queued, then closes the file
+    public void close() throws IOException {
+        synchronized (lock) {
+            closed = true;
+            lock.notify();
+        }
+        if (writer != null) {
+            try {
+                writer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (this) {
+            channel.close();
+        }
+    }
+
+    private void fail(IOException e) {
+        synchronized (lock) {
+            if (failure == null) {
+                failure = e;
+                e.printStackTrace();
+            }
+            pendingRecords.clear();
+            pendingActions.clear();
+        }
+    }
+
+    private static ByteBuffer frame(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        ByteBuffer record = ByteBuffer.allocate(HEADER_SIZE + payload.length);
+        record.putInt(payload.length).putInt((int) crc.getValue()).put(payload);
+        record.flip();
+        return record;
+    }
+
+    private static void apply(byte[] payload, Replayer replayer) throws IOException {
+        ByteBuffer in = ByteBuffer.wrap(payload);
+        byte kind = in.get();
+        if (kind == RANGE_PROMISE) {
+            replayer.rangePromise(in.getInt(), in.getInt());
+        } else if (kind == SLOT) {
+            int instance = in.getInt();
+            int promised = in.getInt();
+            int accepted = in.getInt();
+            int length = in.getInt() - 1;
+            String value = null;
+            if (length >= 0) {
+                value = new String(payload, in.position(), length, StandardCharsets.UTF_8);
+            }
+            replayer.slot(instance, promised, accepted, value);
+        } else {
+            throw new IOException("Unknown acceptor log record " + kind);
+        }
+    }
+
+    private void readFully(ByteBuffer buffer, long pos) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, pos + buffer.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer[] buffers) throws IOException {
+        long remaining = 0;
+        for (ByteBuffer buffer : buffers) {
+            remaining += buffer.remaining();
+        }
+        while (remaining > 0) {
+            remaining -= channel.write(buffers);
+        }
+    }
+}
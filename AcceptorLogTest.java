@@ -0,0 +1,170 @@
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+
+public class AcceptorLogTest {
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    // Collects replayed records as strings so they can be compared in one assertion
+    private static List<String> replay(AcceptorLog log) throws Exception {
+        List<String> records = new ArrayList<>();
+        log.replay(new AcceptorLog.Replayer() {
+            public void rangePromise(int proposalNumber, int fromInstance) {
+                records.add("promise " + proposalNumber + " from " + fromInstance);
+            }
+
+            public void slot(int instance, int promisedProposalNumber, int acceptedProposalNumber,
+                             String acceptedValue) {
+                records.add("slot " + instance + " " + promisedProposalNumber + " " + acceptedProposalNumber + " "
+                        + acceptedValue);
+            }
+        });
+        return records;
+    }
+
+    @Test
+    public void testReplaysRecordsInOrder() throws Exception {
+        Path file = folder.newFile().toPath();
+        for (boolean groupCommit : new boolean[]{false, true}) {
+            AcceptorLog log = new AcceptorLog(file, groupCommit, "test");
+            replay(log);
+            log.appendRangePromise(108, 0, () -> { });
+            log.appendSlot(0, 108, 108, "Candidate_A", () -> { });
+            log.appendSlot(1, 108, -1, null, () -> { });
+            log.close();
+        }
+
+        AcceptorLog log = new AcceptorLog(file, true, "test");
+        List<String> expected = new ArrayList<>();
+        for (int run = 0; run < 2; run++) {
+            expected.add("promise 108 from 0");
+            expected.add("slot 0 108 108 Candidate_A");
+            expected.add("slot 1 108 -1 null");
+        }
+        assertEquals(expected, replay(log));
+        log.close();
+    }
+
+    @Test
+    public void testTornTailIsDropped() throws Exception {
+        Path file = folder.newFile().toPath();
+        AcceptorLog log = new AcceptorLog(file, false, "test");
+        log.appendRangePromise(108, 0, () -> { });
+        log.appendSlot(0, 108, 108, "Candidate_A", () -> { });
+        log.close();
+
+        // Cut the last record short, as a crash in the middle of a write would
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.setLength(raf.length() - 3);
+        }
+
+        log = new AcceptorLog(file, false, "test");
+        assertEquals(List.of("promise 108 from 0"), replay(log));
+        // New records go after the last complete one
+        log.appendSlot(0, 209, 209, "Candidate_B", () -> { });
+        log.close();
+
+        log = new AcceptorLog(file, false, "test");
+        assertEquals(List.of("promise 108 from 0", "slot 0 209 209 Candidate_B"), replay(log));
+        log.close();
+    }
+
+    @Test
+    public void testGroupCommitSharesSyncs() throws Exception {
+        AcceptorLog log = new AcceptorLog(folder.newFile().toPath(), true, "test");
+        int appenders = 16;
+        int recordsEach = 50;
+        CountDownLatch durable = new CountDownLatch(appenders * recordsEach);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < appenders; t++) {
+            int instance = t;
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < recordsEach; i++) {
+                    log.appendSlot(instance, i, i, "Value_" + i, durable::countDown);
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        // Assertion: every reply was released, and records that arrived together went out with one fsync
+        assertTrue(durable.await(30, TimeUnit.SECONDS));
+        assertEquals(appenders * recordsEach, log.records());
+        assertTrue(log.syncs() < log.records());
+        log.close();
+    }
+
+    @Test
+    public void testMemberKeepsPromisesAcrossRestart() throws Exception {
+        Map<Integer, Integer> memberPorts = new HashMap<>();
+        memberPorts.put(1, 9901);
+        memberPorts.put(2, 9902);
+        Path file = folder.newFile().toPath();
+
+        CouncilMember member = new CouncilMember(1, 9901, memberPorts);
+        member.openAcceptorLog(file, true);
+        member.handlePrepare(new Message(Message.MessageType.PREPARE, 2, 102, null, 0));
+        member.handleAcceptRequest(new Message(Message.MessageType.ACCEPT_REQUEST, 2, 102, "Candidate_A", 0));
+        member.handlePrepare(new Message(Message.MessageType.PREPARE, 2, 202, null, 1));
+        int[] promised = {member.promisedFor(0), member.promisedFor(1), member.promisedFor(7)};
+        member.shutdown();
+
+        // Assertion: the restarted member still holds its promises and the value it accepted
+        CouncilMember restarted = new CouncilMember(1, 9901, memberPorts);
+        restarted.openAcceptorLog(file, true);
+        assertArrayEquals(promised, new int[]{restarted.promisedFor(0), restarted.promisedFor(1),
+                restarted.promisedFor(7)});
+        assertEquals(202, restarted.promisedFor(1));
+        assertEquals("Candidate_A", restarted.acceptorSlot(0).acceptedValue);
+        assertTrue(restarted.generateProposalNumber() > 202);
+        restarted.shutdown();
+    }
+
+    @Test
+    public void testMemberRestartsFromSnapshot() throws Exception {
+        Map<Integer, Integer> memberPorts = new HashMap<>();
+        memberPorts.put(1, 9903);
+        memberPorts.put(2, 9904);
+        Path log = folder.newFile().toPath();
+        Path snapshot = folder.getRoot().toPath().resolve("snapshot");
+
+        CouncilMember member = new CouncilMember(1, 9903, memberPorts);
+        member.openAcceptorLog(log, false);
+        member.enableSnapshots(4, snapshot);
+        for (int instance = 0; instance < 10; instance++) {
+            member.handleAcceptRequest(new Message(Message.MessageType.ACCEPT_REQUEST, 2, 102, "Value_" + instance,
+                    instance));
+            member.learnValue(instance, "Value_" + instance);
+        }
+        member.shutdown();
+
+        // Assertion: only the slots after the last snapshot are left in the acceptor log, and the restarted member
+        // resumes from there
+        AcceptorLog compacted = new AcceptorLog(log, false, "test");
+        assertEquals(List.of("slot 8 102 102 Value_8", "slot 9 102 102 Value_9"), replay(compacted));
+        compacted.close();
+
+        CouncilMember restarted = new CouncilMember(1, 9903, memberPorts);
+        restarted.enableSnapshots(4, snapshot);
+        restarted.openAcceptorLog(log, false);
+        assertEquals(8, restarted.deliveredUpTo());
+        assertEquals("Value_0", restarted.learnedValue);
+        assertEquals(List.of(8, 9), new ArrayList<>(restarted.acceptorSlots.keySet()));
+        restarted.shutdown();
+    }
+}
@@ -0,0 +1,92 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.*;
+
+// Sweeps the batch size of a stable leader. A fixed number of clients each propose a value and wait for it to be
+// decided before proposing the next, and the benchmark reports decided values/sec and the latency each client saw
+public class BatchingBenchmark {
+    private static final int[] BATCH_SIZES = {1, 4, 16, 64, 256};
+    private static final long BATCH_WINDOW_MILLIS = 1;
+    private static final int CLIENTS = 256;
+    private static final int VALUES_PER_CLIENT = 40;
+    private static final int MEMBERS = 9;
+
+    public static void main(String[] args) throws Exception {
+        // Keep the members' event log out of the measurements
+        EventLog.shared().setLevel(EventLog.Level.OFF);
+
+        int basePort = 7500;
+        for (int batchSize : BATCH_SIZES) {
+            long start = System.nanoTime();
+            long[] latencies = measure(batchSize, basePort);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            basePort += 10;
+            Arrays.sort(latencies);
+            System.out.printf("batch %4d  %9.0f values/s  p50 %8.2f ms  p99 %8.2f ms%n",
+                    batchSize, latencies.length / seconds,
+                    latencies[latencies.length / 2] / 1e6,
+                    latencies[(int) (latencies.length * 0.99)] / 1e6);
+        }
+    }
+
+    private static long[] measure(int batchSize, int basePort) throws Exception {
+        Map<Integer, Integer> memberPorts = new HashMap<>();
+        for (int i = 1; i <= MEMBERS; i++) {
+            memberPorts.put(i, basePort + i);
+        }
+        // Clients wait on a latch that the leader releases when it learns their value
+        Map<String, CountDownLatch> waiting = new ConcurrentHashMap<>();
+        CouncilMember[] members = new CouncilMember[MEMBERS];
+        for (int i = 0; i < MEMBERS; i++) {
+            members[i] = new CouncilMember(i + 1, basePort + i + 1, memberPorts) {
+                @Override
+                protected void deliver(int instance, String value) {
+                    super.deliver(instance, value);
+                    for (String learned : ValueBatch.decode(value)) {
+                        CountDownLatch latch = waiting.remove(learned);
+                        if (latch != null) {
+                            latch.countDown();
+                        }
+                    }
+                }
+            };
+            members[i].responseProfile = CouncilMember.ResponseProfile.IMMEDIATE;
+            members[i].setStableLeader(true);
+            new Thread(members[i]).start();
+        }
+        CouncilMember leader = members[0];
+        leader.setBatching(batchSize, BATCH_WINDOW_MILLIS);
+        Thread.sleep(200);
+
+        long[] latencies = new long[CLIENTS * VALUES_PER_CLIENT];
+        ExecutorService clients = Executors.newFixedThreadPool(CLIENTS);
+        for (int c = 0; c < CLIENTS; c++) {
+            int client = c;
+            clients.execute(() -> {
+                for (int i = 0; i < VALUES_PER_CLIENT; i++) {
+                    String value = "Client_" + client + "_" + i;
+                    CountDownLatch latch = new CountDownLatch(1);
+                    waiting.put(value, latch);
+                    long start = System.nanoTime();
+                    leader.propose(value);
+                    try {
+                        if (!latch.await(30, TimeUnit.SECONDS)) {
+                            throw new IllegalStateException(value + " was not decided");
+                        }
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    latencies[client * VALUES_PER_CLIENT + i] = System.nanoTime() - start;
+                }
+            });
+        }
+        clients.shutdown();
+        clients.awaitTermination(5, TimeUnit.MINUTES);
+
+        for (CouncilMember member : members) {
+            member.shutdown();
+        }
+        return latencies;
+    }
+}
@@ -0,0 +1,208 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+// Compact hand written encoding of a Message.
+//
+// Layout (version 4):
+//   byte    version
+//   byte    message type (ordinal of Message.MessageType)
+//   varint  group
+//   varint  senderId, instance, proposalNumber, acceptedProposalNumber (zigzag encoded so -1 stays one byte)
+//   string  value, acceptedValue
+//   varint  number of entries, followed by instance, proposalNumber and value of each entry
+//
+// A string is a varint holding the UTF-8 length plus one, followed by the bytes. A length of zero means null.
+// Older frames are still read: version 1 has no instance (read as instance 0), versions 1 and 2 have no entries and
+// versions before 4 have no group (read as group 0).
+public class BinaryMessageCodec implements MessageCodec {
+    public static final byte VERSION = 4;
+    private static final byte VERSION_SINGLE_DECREE = 1;
+    private static final byte VERSION_WITHOUT_ENTRIES = 2;
+    private static final byte VERSION_WITHOUT_GROUP = 3;
+
+    private static final Message.MessageType[] TYPES = Message.MessageType.values();
+
+    public byte[] encode(Message msg) throws IOException {
+        byte[] value = utf8(msg.value);
+        byte[] acceptedValue = utf8(msg.acceptedValue);
+
+        int entryCount = msg.entries == null ? 0 : msg.entries.size();
+        byte[][] entryValues = new byte[entryCount][];
+
+        int size = 2
+                + varintSize(msg.group)
+                + varintSize(zigzag(msg.senderId))
+                + varintSize(zigzag(msg.instance))
+                + varintSize(zigzag(msg.proposalNumber))
+                + varintSize(zigzag(msg.acceptedProposalNumber))
+                + stringSize(value)
+                + stringSize(acceptedValue)
+                + varintSize(entryCount);
+        for (int i = 0; i < entryCount; i++) {
+            Message.Entry entry = msg.entries.get(i);
+            entryValues[i] = utf8(entry.value);
+            size += varintSize(zigzag(entry.instance)) + varintSize(zigzag(entry.proposalNumber))
+                    + stringSize(entryValues[i]);
+        }
+
+        byte[] frame = new byte[size];
+        int pos = 0;
+        frame[pos++] = VERSION;
+        frame[pos++] = (byte) msg.type.ordinal();
+        pos = writeVarint(frame, pos, msg.group);
+        pos = writeVarint(frame, pos, zigzag(msg.senderId));
+        pos = writeVarint(frame, pos, zigzag(msg.instance));
+        pos = writeVarint(frame, pos, zigzag(msg.proposalNumber));
+        pos = writeVarint(frame, pos, zigzag(msg.acceptedProposalNumber));
+        pos = writeString(frame, pos, value);
+        pos = writeString(frame, pos, acceptedValue);
+        pos = writeVarint(frame, pos, entryCount);
+        for (int i = 0; i < entryCount; i++) {
+            Message.Entry entry = msg.entries.get(i);
+            pos = writeVarint(frame, pos, zigzag(entry.instance));
+            pos = writeVarint(frame, pos, zigzag(entry.proposalNumber));
+            pos = writeString(frame, pos, entryValues[i]);
+        }
+        return frame;
+    }
+
+    public Message decode(byte[] frame) throws IOException {
+        Reader in = new Reader(frame);
+        int version = in.readByte();
+        if (version < VERSION_SINGLE_DECREE || version > VERSION) {
+            throw new IOException("Unsupported message version " + version);
+        }
+        int typeOrdinal = in.readByte();
+        if (typeOrdinal < 0 || typeOrdinal >= TYPES.length) {
+            throw new IOException("Unknown message type " + typeOrdinal);
+        }
+
+        Message msg = new Message(TYPES[typeOrdinal], 0, 0, null);
+        if (version > VERSION_WITHOUT_GROUP) {
+            msg.group = in.readVarint();
+        }
+        msg.senderId = unzigzag(in.readVarint());
+        msg.instance = version == VERSION_SINGLE_DECREE ? 0 : unzigzag(in.readVarint());
+        msg.proposalNumber = unzigzag(in.readVarint());
+        msg.acceptedProposalNumber = unzigzag(in.readVarint());
+        msg.value = in.readString();
+        msg.acceptedValue = in.readString();
+        if (version > VERSION_WITHOUT_ENTRIES) {
+            int entryCount = in.readVarint();
+            if (entryCount < 0 || entryCount > frame.length) {
+                throw new IOException("Invalid entry count " + entryCount);
+            }
+            if (entryCount > 0) {
+                List<Message.Entry> entries = new ArrayList<>(entryCount);
+                for (int i = 0; i < entryCount; i++) {
+                    int instance = unzigzag(in.readVarint());
+                    int proposalNumber = unzigzag(in.readVarint());
+                    entries.add(new Message.Entry(instance, proposalNumber, in.readString()));
+                }
+                msg.entries = entries;
+            }
+        }
+        return msg;
+    }
+
+    public int group(byte[] frame) {
+        Reader in = new Reader(frame);
+        try {
+            int version = in.readByte();
+            if (version <= VERSION_WITHOUT_GROUP || version > VERSION) {
+                return 0;
+            }
+            in.readByte();
+            return in.readVarint();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static byte[] utf8(String s) {
+        return s == null ? null : s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int zigzag(int n) {
+        return (n << 1) ^ (n >> 31);
+    }
+
+    private static int unzigzag(int n) {
+        return (n >>> 1) ^ -(n & 1);
+    }
+
+    private static int varintSize(int n) {
+        int size = 1;
+        while ((n & ~0x7F) != 0) {
+            n >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    private static int stringSize(byte[] bytes) {
+        return bytes == null ? 1 : varintSize(bytes.length + 1) + bytes.length;
+    }
+
+    private static int writeVarint(byte[] frame, int pos, int n) {
+        while ((n & ~0x7F) != 0) {
+            frame[pos++] = (byte) ((n & 0x7F) | 0x80);
+            n >>>= 7;
+        }
+        frame[pos++] = (byte) n;
+        return pos;
+    }
+
+    private static int writeString(byte[] frame, int pos, byte[] bytes) {
+        if (bytes == null) {
+            return writeVarint(frame, pos, 0);
+        }
+        pos = writeVarint(frame, pos, bytes.length + 1);
+        System.arraycopy(bytes, 0, frame, pos, bytes.length);
+        return pos + bytes.length;
+    }
+
+    // Cursor over a received frame, every read is bounds checked so a truncated frame fails cleanly
+    private static class Reader {
+        private final byte[] frame;
+        private int pos = 0;
+
+        Reader(byte[] frame) {
+            this.frame = frame;
+        }
+
+        int readByte() throws IOException {
+            if (pos >= frame.length) {
+                throw new IOException("Truncated message frame");
+            }
+            return frame[pos++];
+        }
+
+        int readVarint() throws IOException {
+            int result = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                int b = readByte();
+                result |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return result;
+                }
+            }
+            throw new IOException("Malformed varint in message frame");
+        }
+
+        String readString() throws IOException {
+            int length = readVarint() - 1;
+            if (length < 0) {
+                return null;
+            }
+            if (length > frame.length - pos) {
+                throw new IOException("Truncated message frame");
+            }
+            String s = new String(frame, pos, length, StandardCharsets.UTF_8);
+            pos += length;
+            return s;
+        }
+    }
+}
@@ -0,0 +1,132 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Broadcast time over the TCP transport with 0 to 3 of the 8 peers offline, writing on the caller's thread one peer
+// after the other against the per-peer outbound queues. An offline peer is a port whose listen backlog is full and
+// never accepted from, so connecting to it hangs until the connect timeout like connecting to a host that is down.
+// The connect timeout is cut to CONNECT_TIMEOUT_MILLIS to keep the runs writing on the caller's thread short.
+// Reports how long broadcastMessage blocks the caller and how long until every live peer has the message
+public class BroadcastBenchmark {
+    private static final int MEMBERS = 9;
+    private static final int BROADCASTS = 10;
+    private static final long PAUSE_MILLIS = 50;
+    private static final long TIMEOUT_MILLIS = 30000;
+    private static final int CONNECT_TIMEOUT_MILLIS = 1000;
+
+    public static void main(String[] args) throws Exception {
+        // Keep the members' event log out of the measurements
+        EventLog.shared().setLevel(EventLog.Level.OFF);
+
+        int basePort = 7600;
+        for (int offline = 0; offline <= 3; offline++) {
+            for (boolean queues : new boolean[]{false, true}) {
+                measure(offline, queues, basePort);
+                basePort += 20;
+            }
+        }
+    }
+
+    private static void measure(int offline, boolean queues, int basePort) throws Exception {
+        Map<Integer, Integer> memberPorts = new HashMap<>();
+        for (int id = 1; id <= MEMBERS; id++) {
+            memberPorts.put(id, basePort + id);
+        }
+        // The offline peers come first in the broadcast order, so writing on the caller's thread every live peer
+        // waits behind them. Member 2 goes offline first
+        List<Integer> offlineIds = new ArrayList<>();
+        for (int id = 2; id < 2 + offline; id++) {
+            offlineIds.add(id);
+        }
+
+        AtomicLongArray received = new AtomicLongArray(BROADCASTS);
+        AtomicLong lastArrival = new AtomicLong();
+        List<CouncilMember> peers = new ArrayList<>();
+        List<ServerSocket> blackholes = new ArrayList<>();
+        List<Socket> backlog = new ArrayList<>();
+        for (int id = 2; id <= MEMBERS; id++) {
+            if (offlineIds.contains(id)) {
+                ServerSocket blackhole = new ServerSocket();
+                blackhole.bind(new InetSocketAddress("localhost", memberPorts.get(id)), 1);
+                blackholes.add(blackhole);
+                // Fill the backlog, further connection attempts are then left unanswered
+                for (int i = 0; i < 2; i++) {
+                    Socket filler = new Socket();
+                    filler.connect(new InetSocketAddress("localhost", memberPorts.get(id)), 1000);
+                    backlog.add(filler);
+                }
+                continue;
+            }
+            CouncilMember peer = new CouncilMember(id, memberPorts.get(id), memberPorts) {
+                // Count on the reactor thread, the time of arrival is all that is measured
+                @Override
+                protected void dispatch(Message msg) {
+                    received.incrementAndGet(msg.proposalNumber);
+                    lastArrival.accumulateAndGet(System.nanoTime(), Math::max);
+                }
+            };
+            peers.add(peer);
+            new Thread(peer).start();
+        }
+        SocketTransport transport = new SocketTransport(memberPorts.get(1), memberPorts, new BinaryMessageCodec());
+        transport.setOutboundQueues(queues);
+        transport.setConnectTimeoutMillis(CONNECT_TIMEOUT_MILLIS);
+        CouncilMember broadcaster = new CouncilMember(1, memberPorts.keySet(), transport,
+                CouncilMember.ExecutionMode.PLATFORM);
+        new Thread(broadcaster).start();
+        Thread.sleep(100);
+
+        List<Long> callerMicros = new ArrayList<>();
+        List<Long> deliveredMicros = new ArrayList<>();
+        int live = peers.size();
+        for (int i = 0; i < BROADCASTS; i++) {
+            int broadcast = i;
+            long start = System.nanoTime();
+            broadcaster.broadcastMessage(new Message(Message.MessageType.PREPARE, 1, broadcast, null));
+            callerMicros.add((System.nanoTime() - start) / 1000);
+            long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+            while (received.get(broadcast) < live) {
+                if (System.currentTimeMillis() > deadline) {
+                    throw new IllegalStateException("Broadcast " + broadcast + " did not reach every live peer");
+                }
+                Thread.sleep(0, 100000);
+            }
+            deliveredMicros.add((lastArrival.get() - start) / 1000);
+            Thread.sleep(PAUSE_MILLIS);
+        }
+
+        broadcaster.shutdown();
+        for (CouncilMember peer : peers) {
+            peer.shutdown();
+        }
+        for (Socket filler : backlog) {
+            filler.close();
+        }
+        for (ServerSocket blackhole : blackholes) {
+            blackhole.close();
+        }
+
+        Collections.sort(callerMicros);
+        Collections.sort(deliveredMicros);
+        System.out.printf("%d offline  %-14s caller p50 %9s  max %9s   all live peers p50 %9s  max %9s%n", offline,
+                queues ? "peer queues" : "caller thread", format(percentile(callerMicros, 0.5)),
+                format(callerMicros.get(callerMicros.size() - 1)), format(percentile(deliveredMicros, 0.5)),
+                format(deliveredMicros.get(deliveredMicros.size() - 1)));
+    }
+
+    private static long percentile(List<Long> sorted, double fraction) {
+        return sorted.get((int) Math.ceil(fraction * sorted.size()) - 1);
+    }
+
+    private static String format(long micros) {
+        return micros >= 10000 ? String.format("%.0f ms", micros / 1e3) : String.format("%.2f ms", micros / 1e3);
+    }
+}
@@ -0,0 +1,52 @@
+import java.lang.management.ManagementFactory;
+
+// Compares Java serialization against the binary codec: frame size, encode/decode throughput and the
+// bytes allocated per message
+public class CodecBenchmark {
+    private static final int WARMUP = 200000;
+    private static final int ITERATIONS = 1000000;
+
+    public static void main(String[] args) throws Exception {
+        Message[] messages = {
+            new Message(Message.MessageType.PREPARE, 8, 108, null),
+            new Message(Message.MessageType.PROMISE, 4, 209, 108, "Candidate_A"),
+            new Message(Message.MessageType.ACCEPT_REQUEST, 9, 209, "Candidate_A"),
+            new Message(Message.MessageType.LEARN, 9, 209, "Candidate_A")
+        };
+        MessageCodec[] codecs = {new JavaSerializationCodec(), new BinaryMessageCodec()};
+
+        for (MessageCodec codec : codecs) {
+            int frameBytes = 0;
+            for (Message msg : messages) {
+                frameBytes += codec.encode(msg).length;
+            }
+
+            run(codec, messages, WARMUP);
+            long allocatedBefore = allocatedBytes();
+            long start = System.nanoTime();
+            run(codec, messages, ITERATIONS);
+            long elapsed = System.nanoTime() - start;
+            long allocated = allocatedBytes() - allocatedBefore;
+
+            System.out.printf("%-24s %6.1f bytes/frame %12.0f round trips/s %10.0f bytes allocated/round trip%n",
+                    codec.getClass().getSimpleName(),
+                    (double) frameBytes / messages.length,
+                    ITERATIONS / (elapsed / 1e9),
+                    (double) allocated / ITERATIONS);
+        }
+    }
+
+    private static int run(MessageCodec codec, Message[] messages, int iterations) throws Exception {
+        int checksum = 0;
+        for (int i = 0; i < iterations; i++) {
+            Message decoded = codec.decode(codec.encode(messages[i % messages.length]));
+            checksum += decoded.proposalNumber;
+        }
+        return checksum;
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().threadId());
+    }
+}
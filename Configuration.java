@@ -0,0 +1,146 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// The members of the council from one slot of the log onwards, and the quorums among them. A council starts with
+// the configuration its members were constructed with, and changes it by deciding a reconfiguration value in the
+// log like any other value. The new configuration takes effect alpha slots after the one it was decided in, so a
+// leader that keeps fewer than alpha slots beyond what it has delivered always knows the configuration of the slots
+// it proposes. Configurations from a reconfiguration use majority quorums.
+//
+// Reconfiguration value: MARKER followed by the member IDs, separated by commas. A snapshot of a reconfigured
+// council carries the configurations that replaced the initial one ahead of the learned state: SNAPSHOT_MARKER,
+// each configuration as its first slot, '=' and its member IDs, separated by ';' and ended by a newline, then 'S'
+// and the state, or 'N' when there is none
+public class Configuration {
+    public static final String MARKER = "\u0000members:";
+    public static final String SNAPSHOT_MARKER = "\u0000configured:";
+
+    public final int fromInstance;
+    public final List<Integer> memberIds;
+    public final QuorumSystem quorums;
+    // Weight of each member by its position in the member's index list, refreshed when that list grows
+    protected int[] voteWeights;
+
+    public Configuration(int fromInstance, Collection<Integer> memberIds, QuorumSystem quorums) {
+        this.fromInstance = fromInstance;
+        this.memberIds = Collections.unmodifiableList(new ArrayList<>(memberIds));
+        this.quorums = quorums;
+    }
+
+    public static Configuration majority(int fromInstance, Collection<Integer> memberIds) {
+        return new Configuration(fromInstance, memberIds, QuorumSystem.majority(memberIds));
+    }
+
+    public boolean contains(int memberId) {
+        return memberIds.contains(memberId);
+    }
+
+    // Whether the members that answered carry a phase 1 quorum of this configuration
+    public boolean phase1Reached(Collection<Integer> answered) {
+        int weight = 0;
+        for (int memberId : answered) {
+            weight += quorums.weight(memberId);
+        }
+        return weight >= quorums.phase1Threshold();
+    }
+
+    public static String encodeChange(Collection<Integer> memberIds) {
+        StringBuilder encoded = new StringBuilder(MARKER);
+        appendIds(encoded, memberIds);
+        return encoded.toString();
+    }
+
+    public static boolean isChange(String value) {
+        return value != null && value.startsWith(MARKER);
+    }
+
+    // The members a reconfiguration value names. Fails with an IllegalArgumentException when they are malformed or
+    // cannot form a council with majority quorums, which every member finds alike as it only depends on the value
+    public static List<Integer> decodeChange(String value) {
+        String encoded = value.substring(MARKER.length());
+        List<Integer> memberIds;
+        try {
+            memberIds = parseIds(encoded);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Malformed member IDs '" + encoded + "'");
+        }
+        if (new HashSet<>(memberIds).size() != memberIds.size()) {
+            throw new IllegalArgumentException("Member IDs " + memberIds + " repeat");
+        }
+        for (int memberId : memberIds) {
+            if (memberId < 0) {
+                throw new IllegalArgumentException("Member ID " + memberId + " is negative");
+            }
+        }
+        QuorumSystem.majority(memberIds).validate(memberIds);
+        return memberIds;
+    }
+
+    // The configurations after the initial one, in front of the state a snapshot captures
+    public static String wrapSnapshot(Collection<Configuration> history, String state) {
+        StringBuilder wrapped = new StringBuilder(SNAPSHOT_MARKER);
+        boolean first = true;
+        for (Configuration configuration : history) {
+            if (!first) {
+                wrapped.append(';');
+            }
+            first = false;
+            wrapped.append(configuration.fromInstance).append('=');
+            appendIds(wrapped, configuration.memberIds);
+        }
+        wrapped.append('\n').append(state == null ? "N" : "S" + state);
+        return wrapped.toString();
+    }
+
+    public static boolean isWrappedSnapshot(String snapshot) {
+        return snapshot != null && snapshot.startsWith(SNAPSHOT_MARKER);
+    }
+
+    // The configurations a wrapped snapshot carries, by first slot
+    public static Map<Integer, Configuration> snapshotHistory(String snapshot) {
+        Map<Integer, Configuration> history = new TreeMap<>();
+        String encoded = snapshot.substring(SNAPSHOT_MARKER.length(), snapshot.indexOf('\n'));
+        if (encoded.isEmpty()) {
+            return history;
+        }
+        for (String entry : encoded.split(";")) {
+            int separator = entry.indexOf('=');
+            int from = Integer.parseInt(entry.substring(0, separator));
+            history.put(from, majority(from, parseIds(entry.substring(separator + 1))));
+        }
+        return history;
+    }
+
+    public static String snapshotState(String snapshot) {
+        int start = snapshot.indexOf('\n') + 1;
+        return snapshot.charAt(start) == 'N' ? null : snapshot.substring(start + 1);
+    }
+
+    private static void appendIds(StringBuilder encoded, Collection<Integer> memberIds) {
+        boolean first = true;
+        for (int memberId : memberIds) {
+            if (!first) {
+                encoded.append(',');
+            }
+            first = false;
+            encoded.append(memberId);
+        }
+    }
+
+    private static List<Integer> parseIds(String encoded) {
+        List<Integer> memberIds = new ArrayList<>();
+        for (String memberId : encoded.split(",")) {
+            memberIds.add(Integer.parseInt(memberId));
+        }
+        return memberIds;
+    }
+
+    public String toString() {
+        return "members " + memberIds + " from slot " + fromInstance;
+    }
+}
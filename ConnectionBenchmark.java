@@ -0,0 +1,125 @@
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Compares the persistent peer connections against opening a new socket for every message.
+// Reports raw messages/sec between two members and the latency of a full round on a 9 member council
+public class ConnectionBenchmark {
+    private static final int MESSAGES = 10000;
+    private static final int ROUNDS = 20;
+    private static final int MEMBERS = 9;
+    private static final long TIMEOUT_MILLIS = 30000;
+
+    public static void main(String[] args) throws Exception {
+        // Keep the members' event log out of the measurements
+        EventLog.shared().setLevel(EventLog.Level.OFF);
+
+        int basePort = 7000;
+        for (boolean persistent : new boolean[]{false, true}) {
+            double messagesPerSecond = measureThroughput(persistent, basePort);
+            basePort += 10;
+            double roundMillis = measureRoundLatency(persistent, basePort);
+            basePort += 10 * ROUNDS;
+            System.out.printf("%-22s %10.0f msg/s %10.2f ms/round%n",
+                    persistent ? "persistent connection" : "socket per message", messagesPerSecond, roundMillis);
+        }
+    }
+
+    private static SocketTransport transport(int id, Map<Integer, Integer> memberPorts, boolean persistent)
+            throws IOException {
+        SocketTransport transport = new SocketTransport(memberPorts.get(id), memberPorts, new BinaryMessageCodec());
+        transport.setPersistentConnections(persistent);
+        return transport;
+    }
+
+    private static SocketTransport directTransport(int id, Map<Integer, Integer> memberPorts, boolean persistent)
+            throws IOException {
+        SocketTransport transport = transport(id, memberPorts, persistent);
+        // Write on the sending thread, the outbound queue would drop part of a burst this large
+        transport.setOutboundQueues(false);
+        return transport;
+    }
+
+    private static double measureThroughput(boolean persistent, int basePort) throws Exception {
+        Map<Integer, Integer> memberPorts = new HashMap<>();
+        memberPorts.put(1, basePort + 1);
+        memberPorts.put(2, basePort + 2);
+
+        AtomicInteger received = new AtomicInteger();
+        CouncilMember sender = new CouncilMember(1, memberPorts.keySet(), directTransport(1, memberPorts, persistent),
+                CouncilMember.ExecutionMode.PLATFORM);
+        CouncilMember receiver = new CouncilMember(2, basePort + 2, memberPorts) {
+            // Count on the reactor thread, the protocol queue would drop part of a burst this large
+            @Override
+            protected void dispatch(Message msg) {
+                received.incrementAndGet();
+            }
+        };
+        new Thread(sender).start();
+        new Thread(receiver).start();
+
+        Message msg = new Message(Message.MessageType.PREPARE, 1, 101, null);
+        long start = System.nanoTime();
+        for (int i = 0; i < MESSAGES; i++) {
+            sender.sendMessage(2, msg);
+        }
+        waitUntil(() -> received.get() >= MESSAGES);
+        long elapsed = System.nanoTime() - start;
+
+        sender.shutdown();
+        receiver.shutdown();
+        return received.get() / (elapsed / 1e9);
+    }
+
+    private static double measureRoundLatency(boolean persistent, int basePort) throws Exception {
+        long totalNanos = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            // Fresh ports every round so sockets lingering from the previous council cannot interfere
+            int roundPort = basePort + round * 10;
+            Map<Integer, Integer> memberPorts = new HashMap<>();
+            for (int i = 1; i <= MEMBERS; i++) {
+                memberPorts.put(i, roundPort + i);
+            }
+            CouncilMember[] members = new CouncilMember[MEMBERS];
+            for (int i = 0; i < MEMBERS; i++) {
+                members[i] = new CouncilMember(i + 1, memberPorts.keySet(), transport(i + 1, memberPorts, persistent),
+                        CouncilMember.ExecutionMode.PLATFORM);
+                members[i].responseProfile = CouncilMember.ResponseProfile.IMMEDIATE;
+                new Thread(members[i]).start();
+            }
+            Thread.sleep(100);
+
+            long start = System.nanoTime();
+            members[0].propose("Candidate_" + round);
+            waitUntil(() -> {
+                for (CouncilMember member : members) {
+                    if (member.learnedValue == null) {
+                        return false;
+                    }
+                }
+                return true;
+            });
+            totalNanos += System.nanoTime() - start;
+
+            for (CouncilMember member : members) {
+                member.shutdown();
+            }
+        }
+        return totalNanos / 1e6 / ROUNDS;
+    }
+
+    private interface Condition {
+        boolean holds();
+    }
+
+    private static void waitUntil(Condition condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (!condition.holds()) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new IllegalStateException("Benchmark timed out");
+            }
+            Thread.sleep(1);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+// Proposer and acceptor work contending on one member. One thread runs phase 2 rounds as the proposer, feeding the
+// ACCEPTEDs of a majority straight into the handlers, while other threads deliver ACCEPT_REQUESTs from other
+// proposers for slots of their own. Each setup runs twice: once with every message handled under the member's
+// monitor, the way all handlers were synchronized before, and once with the lock free handlers
+public class ContentionBenchmark {
+    private static final int MEMBERS = 9;
+    private static final int PROPOSAL_NUMBER = 101;
+    // Acceptor threads cycle through their own slots, far above the ones the proposer decides
+    private static final int ACCEPTOR_SLOT_BASE = 1 << 28;
+    private static final int SLOTS_PER_THREAD = 1024;
+    private static final long DURATION_MILLIS = 2000;
+    private static final int RUNS = 2;
+
+    public static void main(String[] args) throws Exception {
+        // Keep the members' event log out of the measurements
+        EventLog.shared().setLevel(EventLog.Level.OFF);
+
+        int maxAcceptors = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+        for (int run = 0; run < RUNS; run++) {
+            for (int acceptors = 1; acceptors <= maxAcceptors; acceptors *= 2) {
+                for (boolean monitor : new boolean[]{true, false}) {
+                    measure(acceptors, monitor);
+                }
+            }
+        }
+    }
+
+    private static void measure(int acceptors, boolean monitor) throws Exception {
+        CouncilMember member = member();
+        AtomicBoolean stop = new AtomicBoolean();
+        LongAdder rounds = new LongAdder();
+        LongAdder accepts = new LongAdder();
+        List<Thread> threads = new ArrayList<>();
+
+        threads.add(new Thread(() -> {
+            while (!stop.get()) {
+                int instance;
+                synchronized (member) {
+                    instance = member.deliveredUpTo();
+                    member.sendAcceptRequest(new CouncilMember.AcceptRound(instance, PROPOSAL_NUMBER, "Value",
+                            Collections.emptyList()));
+                }
+                for (int sender = 2; sender <= MEMBERS / 2 + 2; sender++) {
+                    deliver(member, new Message(Message.MessageType.ACCEPTED, sender, PROPOSAL_NUMBER, "Value",
+                            instance), monitor);
+                }
+                rounds.increment();
+            }
+        }));
+        for (int t = 0; t < acceptors; t++) {
+            int sender = 2 + t % (MEMBERS - 1);
+            int firstSlot = ACCEPTOR_SLOT_BASE + t * SLOTS_PER_THREAD;
+            threads.add(new Thread(() -> {
+                for (int i = 0; !stop.get(); i++) {
+                    // Each visit to a slot comes with a higher proposal number, so every request is accepted
+                    int proposalNumber = (i / SLOTS_PER_THREAD + 2) * 100 + sender;
+                    deliver(member, new Message(Message.MessageType.ACCEPT_REQUEST, sender, proposalNumber, "Value",
+                            firstSlot + i % SLOTS_PER_THREAD), monitor);
+                    accepts.increment();
+                }
+            }));
+        }
+
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        Thread.sleep(DURATION_MILLIS);
+        stop.set(true);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        member.shutdown();
+
+        double seconds = DURATION_MILLIS / 1e3;
+        System.out.printf("%-14s %2d acceptor threads  proposer %9.0f rounds/s  acceptors %10.0f requests/s%n",
+                monitor ? "single monitor" : "lock free", acceptors, rounds.sum() / seconds, accepts.sum() / seconds);
+    }
+
+    private static void deliver(CouncilMember member, Message msg, boolean monitor) {
+        if (monitor) {
+            synchronized (member) {
+                member.processMessage(msg);
+            }
+        } else {
+            member.processMessage(msg);
+        }
+    }
+
+    private static CouncilMember member() throws IOException {
+        List<Integer> memberIds = new ArrayList<>();
+        for (int id = 1; id <= MEMBERS; id++) {
+            memberIds.add(id);
+        }
+        // Replies are counted by the caller, whatever the member sends is dropped
+        Transport discard = new Transport() {
+            public void open(int memberId, Consumer<Message> receiver) {
+            }
+
+            public void run() {
+            }
+
+            public void send(int recipientId, Message msg) {
+            }
+
+            public void close() {
+            }
+        };
+        CouncilMember member = new CouncilMember(1, memberIds, discard, CouncilMember.ExecutionMode.PLATFORM);
+        // Keeps the learned log from growing over millions of rounds
+        member.enableSnapshots(1000, null);
+        return member;
+    }
+}
@@ -1,9 +1,10 @@
-import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.net.ServerSocket;
-import java.net.Socket;
+import java.io.*;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
 
 @SuppressWarnings("WrongPackageStatement")
 public class CouncilMember implements Runnable {
@@ -16,146 +17,653 @@ public class CouncilMember implements Runnable {
     }
     protected ResponseProfile responseProfile = ResponseProfile.DELAY_SMALL;
 
+    // How inbound messages are executed. PLATFORM handles them on a bounded pool of platform threads, VIRTUAL
+    // gives every message its own virtual thread so the simulated response delays do not hold a platform thread
+    public enum ExecutionMode {
+        PLATFORM,
+        VIRTUAL
+    }
+    protected final ExecutionMode executionMode;
+
     protected int id;
-    protected int port;
-    protected ServerSocket serverSocket;
+    // Paxos group this member belongs to when its process runs members of several, 0 for a council on its own
+    protected int group = 0;
+    protected Transport transport;
     protected volatile boolean isRunning = true;
 
-    // Map of member IDs to their ports, we maintain this to send messages to other members
-    protected Map<Integer, Integer> memberPorts;
+    // Decoded messages are handled on a bounded executor instead of a new thread per connection. When the bound
+    // is reached the message is dropped, which the protocol already has to tolerate from an unreliable network
+    protected static final int PROTOCOL_THREADS = 32;
+    protected static final int PROTOCOL_QUEUE_SIZE = 1024;
+    protected static final int VIRTUAL_MAX_IN_FLIGHT = 10000;
+    protected ExecutorService protocolExecutor;
+    protected boolean ownsProtocolExecutor = true;
+    protected Semaphore inFlightMessages;
+
+    // Message counts and phase latencies, null unless enableMetrics was called
+    protected Metrics metrics;
+    // Structured record of what this member does, written out asynchronously
+    protected EventLog eventLog = EventLog.shared();
+
+    // IDs of every member this member knows of, in the council now or at any point in its log, and the position of
+    // each in that list. Votes are tracked as bits by position. The list only grows, under the member's lock
     protected List<Integer> memberIds;
+    protected Map<Integer, Integer> memberIndexes;
+
+    // Membership of the council by the slot each configuration takes effect from. The one at slot 0 is the council
+    // the member was constructed with, its quorums a majority unless setQuorumSystem says otherwise. A
+    // reconfiguration decided in slot s takes effect from slot s + alpha, and a stable leader never proposes a slot
+    // alpha or more past the slots it has delivered, so every slot it proposes has a configuration it already knows.
+    // Each phase counts its votes against the configuration of its slot. Configurations are added under the lock
+    // when a reconfiguration is delivered, and read without it
+    protected static final int DEFAULT_ALPHA = 64;
+    protected int alpha = DEFAULT_ALPHA;
+    protected final ConcurrentNavigableMap<Integer, Configuration> configurations = new ConcurrentSkipListMap<>();
+    // Members of the configurations from the one in effect at the delivery point onwards, the members that are sent
+    // heartbeats, LEARNs and phase 1
+    protected volatile List<Integer> peerIds;
+
+    // Acceptor state of one slot. Slots are never changed in place: a handler reads the current one, checks the
+    // message against it and swaps in a new one with a compare-and-set, so acceptors need no lock and a reader
+    // always sees the three fields together
+    protected static final class AcceptorSlot {
+        protected static final AcceptorSlot EMPTY = new AcceptorSlot(-1, -1, null);
+
+        protected final int promisedProposalNumber;
+        protected final int acceptedProposalNumber;
+        protected final String acceptedValue;
+
+        protected AcceptorSlot(int promisedProposalNumber, int acceptedProposalNumber, String acceptedValue) {
+            this.promisedProposalNumber = promisedProposalNumber;
+            this.acceptedProposalNumber = acceptedProposalNumber;
+            this.acceptedValue = acceptedValue;
+        }
+    }
+    protected final ConcurrentNavigableMap<Integer, AcceptorSlot> acceptorSlots = new ConcurrentSkipListMap<>();
+
+    // A PREPARE covers its instance and every later slot, so that promise is kept once for the whole range and
+    // replaced as a whole when a higher one is given
+    protected static final class RangePromise {
+        protected static final RangePromise NONE = new RangePromise(-1, Integer.MAX_VALUE);
+
+        protected final int proposalNumber;
+        protected final int fromInstance;
+
+        protected RangePromise(int proposalNumber, int fromInstance) {
+            this.proposalNumber = proposalNumber;
+            this.fromInstance = fromInstance;
+        }
+
+        protected int promisedFor(int instance) {
+            return instance >= fromInstance ? proposalNumber : -1;
+        }
+    }
+    protected final AtomicReference<RangePromise> rangePromise = new AtomicReference<>(RangePromise.NONE);
+    // Durable copy of the acceptor state. Without one the state lives only in memory, as a single run of the
+    // council never restarts a member
+    protected AcceptorLog acceptorLog;
+
+    // Highest proposal number seen from any member, new proposal numbers are generated above it
+    protected final AtomicInteger highestSeenProposalNumber = new AtomicInteger(-1);
+    protected int proposalCounter = 0;
+    // Proposal numbers are proposalCounter * proposalNumberStride + id, the stride is a power of ten above every
+    // member ID so numbers from different members never collide
+    protected int proposalNumberStride = 100;
+
+    // Phase 1 of one proposal. PROMISEs are counted and their accepted values collected without a lock, only the
+    // PROMISE that completes the quorum takes the member's lock to move on to phase 2
+    protected static class PrepareRound {
+        protected final int instance;
+        protected final int proposalNumber;
+        protected final String value;
+        // Queued values carried by the proposal, put back in the queue if it ends up with another value
+        protected final List<String> clientValues;
+        // Configuration of the prepared slot, which promises and NACKs are counted against
+        protected final Configuration configuration;
+        protected final VoteSet promises;
+        // NACKs, reaching their threshold once so many members turned the proposal down that it cannot win
+        protected final VoteSet rejections;
+        // Every member that promised, and every member the PREPARE went to. The promise covers every later slot, so
+        // it also needs a quorum of each configuration that takes effect after the prepared slot. Once the
+        // promises reach the prepared slot's quorum and another configuration still lacks one, waitingForQuorums
+        // is set and the PREPARE goes to that configuration's members too
+        protected final Set<Integer> promisedBy = ConcurrentHashMap.newKeySet();
+        protected final Set<Integer> preparedMembers = new HashSet<>();
+        protected volatile boolean waitingForQuorums;
+        // Value accepted with the highest proposal number in the prepared slot, as reported by the PROMISEs
+        protected final AtomicReference<Message.Entry> highestAccepted = new AtomicReference<>();
+        // Values accepted in the slots after it, the one with the highest proposal number for each slot
+        protected final Map<Integer, Message.Entry> recoveredEntries = new ConcurrentHashMap<>();
+        // When the PREPARE went out, on the member's clock and, with metrics enabled, in nanoseconds
+        protected long startMillis;
+        protected long startNanos;
+        protected Scheduler.Task timeout;
+        // With thrifty messaging, the peers the PREPARE went to first and when the fallback sent it to the others.
+        // Null when it went to everyone at once
+        protected boolean[] sentTo;
+        protected long fallbackStartMillis;
+        protected Scheduler.Task fallback;
+
+        protected PrepareRound(int instance, int proposalNumber, String value, List<String> clientValues,
+                               Configuration configuration, VoteSet promises, VoteSet rejections) {
+            this.instance = instance;
+            this.proposalNumber = proposalNumber;
+            this.value = value;
+            this.clientValues = clientValues;
+            this.configuration = configuration;
+            this.promises = promises;
+            this.rejections = rejections;
+        }
+    }
+    // The proposal in phase 1, null when this member is not preparing
+    protected volatile PrepareRound prepareRound;
+
+    // Phase 2 of one slot. Every slot is tracked on its own, so several can be in flight and their ACCEPTED
+    // messages can arrive in any order. Rounds are added and removed under the member's lock, ACCEPTEDs are counted
+    // without it
+    protected static class AcceptRound {
+        protected final int instance;
+        protected final int proposalNumber;
+        protected final String value;
+        // Queued values this round carries, put back in the queue if the slot goes to another value
+        protected final List<String> clientValues;
+        // Set when the ACCEPT_REQUEST goes out, with the votes counted against the slot's configuration
+        protected Configuration configuration;
+        protected VoteSet acceptsReceived;
+        protected VoteSet rejections;
+        // When the ACCEPT_REQUEST went out, on the member's clock and, with metrics enabled, in nanoseconds
+        protected long startMillis;
+        protected long startNanos;
+        protected Scheduler.Task timeout;
+        // Sent again after a timeout, its round trip is then not measured
+        protected boolean resent;
+        // With thrifty messaging, the peers the ACCEPT_REQUEST went to first and when the fallback sent it to the
+        // others. Null when it went to everyone at once
+        protected boolean[] sentTo;
+        protected long fallbackStartMillis;
+        protected Scheduler.Task fallback;
+
+        protected AcceptRound(int instance, int proposalNumber, String value, List<String> clientValues) {
+            this.instance = instance;
+            this.proposalNumber = proposalNumber;
+            this.value = value;
+            this.clientValues = clientValues;
+        }
+    }
+    protected final ConcurrentNavigableMap<Integer, AcceptRound> acceptRounds = new ConcurrentSkipListMap<>();
+
+    // A phase that does not reach its quorum within the retry policy's timeout, or is turned down by NACKs from too
+    // many members, is given up and tried again after a random backoff with a higher proposal number. A stable
+    // leader that is still leading sends a timed out ACCEPT_REQUEST again with the same number instead
+    protected boolean retries = true;
+    protected RetryPolicy retryPolicy = new RetryPolicy(new Random());
+    protected Scheduler.Task retryTask;
+
+    // Stable leader mode. A proposer that wins phase 1 keeps its proposal number and sends later values straight to
+    // phase 2 until it sees a higher proposal number. Values are queued, and up to maxInFlight slots are proposed
+    // at once
+    protected boolean stableLeader = false;
+    // Read without the lock by acceptors, which end the leadership when they see a higher proposal number
+    protected volatile boolean isLeader = false;
+    protected volatile int leaderProposalNumber = -1;
+    protected int nextLeaderInstance = 0;
+    protected int maxInFlight = 1;
+    // Values proposed on this member and not in a round yet. Without a stable leader they are proposed one slot at a
+    // time in the order they were queued, and a value whose slot goes to another proposer's value is queued again
+    // for a later slot, so every value is decided unless its proposer stops or gives up with retries off
+    protected final Deque<String> pendingValues = new ArrayDeque<>();
+
+    // Batching of queued values. Up to maxBatchSize values are proposed together as one slot, and when the leader is
+    // idle a partial batch waits at most batchWindowMillis for more values to arrive
+    protected int maxBatchSize = 1;
+    protected long batchWindowMillis = 0;
+    protected Scheduler.Task batchTimer;
+    // Values other proposers left accepted in slots after the prepared one, re-proposed before any new value
+    protected final SortedMap<Integer, String> recoveredValues = new TreeMap<>();
+
+    // The leader announces itself with heartbeats, followers treat it as gone after LEADER_TIMEOUT_MILLIS of silence.
+    // A member whose lease a PREPARE was turned down for is taken for the leader the same way
+    protected static final long HEARTBEAT_INTERVAL_MILLIS = 100;
+    protected static final long LEADER_TIMEOUT_MILLIS = 500;
+    protected Scheduler timers;
+    protected Scheduler.Task heartbeatTask;
+    protected int knownLeaderId = -1;
+    protected int knownLeaderProposalNumber = -1;
+    protected long lastHeartbeatMillis = 0;
+
+    // Ballot leasing, against proposers that keep preempting each other. An acceptor that accepts a member's
+    // ACCEPT_REQUEST, or hears a current leader's heartbeat, leases that member the right to propose for
+    // leaseMillis and turns down PREPAREs from everyone else meanwhile, so a proposer that reached phase 2 is not
+    // overtaken by a rival's phase 1. The lease is renewed by every ACCEPT_REQUEST and heartbeat from its holder and
+    // ends early once the slot it was last renewed for is decided, a heartbeat lease lasts until the heartbeats stop.
+    // A proposer turned down for a lease defers to the holder instead of raising its number: under a stable leader
+    // it forwards its values to the holder, otherwise it waits for the lease to run out before trying again, by
+    // when the slot is usually decided. 0 turns leasing off
+    protected static final class Lease {
+        protected static final Lease NONE = new Lease(-1, -1, -1, Long.MIN_VALUE);
+
+        protected final int holderId;
+        protected final int proposalNumber;
+        // Decided slot that ends the lease, Integer.MAX_VALUE for a leader's lease
+        protected final int untilInstance;
+        protected final long expiresMillis;
 
-    protected int promisedProposalNumber = -1;
-    protected int acceptedProposalNumber = -1;
-    protected String acceptedValue = null;
+        protected Lease(int holderId, int proposalNumber, int untilInstance, long expiresMillis) {
+            this.holderId = holderId;
+            this.proposalNumber = proposalNumber;
+            this.untilInstance = untilInstance;
+            this.expiresMillis = expiresMillis;
+        }
+    }
+    protected volatile long leaseMillis = LEADER_TIMEOUT_MILLIS;
+    protected final AtomicReference<Lease> lease = new AtomicReference<>(Lease.NONE);
+
+    // Thrifty messaging. PREPAREs and ACCEPT_REQUESTs go only to the peers expected to make up the phase's quorum
+    // fastest, ranked by how fast they answered earlier phases, instead of to every peer. If they have not reached
+    // the quorum within the fallback time the phase goes to the other peers too. Heartbeats and LEARNs still go to
+    // everyone, so peers left out of a phase still learn its outcome
+    protected volatile boolean thrifty = false;
+    protected volatile PeerLatencies peerLatencies;
+
+    // Linearizable reads without a consensus round, ReadIndex style. Only a stable leader serves them. A read takes
+    // note of every slot the leader has started or recovered so far, which covers every value a client can have seen
+    // decided, and runs once the leader has confirmed it still leads and has delivered those slots. The leader
+    // confirms with a READ_INDEX round: acceptors weighing more than a phase 1 quorum leaves out, so that any phase 1
+    // quorum of a rival includes one of them, have to report that they have seen no higher proposal number. Reads
+    // that come in while a confirmation is out wait for the next one and share it. Nothing goes through the
+    // acceptors' logs
+    protected static final class PendingRead {
+        protected final int readIndex;
+        protected final Runnable serve;
+        protected final CompletableFuture<?> result;
+
+        protected PendingRead(int readIndex, Runnable serve, CompletableFuture<?> result) {
+            this.readIndex = readIndex;
+            this.serve = serve;
+            this.result = result;
+        }
+    }
+    protected static final class ReadConfirmation {
+        protected final int sequence;
+        protected final int proposalNumber;
+        protected final VoteSet acks;
+        protected final List<PendingRead> reads;
+        protected Scheduler.Task timeout;
+
+        protected ReadConfirmation(int sequence, int proposalNumber, VoteSet acks, List<PendingRead> reads) {
+            this.sequence = sequence;
+            this.proposalNumber = proposalNumber;
+            this.acks = acks;
+            this.reads = reads;
+        }
+    }
+    // The confirmation in flight, null when there is none. Its acks are counted without the lock
+    protected volatile ReadConfirmation readConfirmation;
+    protected int readSequence = 0;
+    // Reads waiting for the next confirmation, and confirmed reads waiting for their slots to be delivered
+    protected final List<PendingRead> queuedReads = new ArrayList<>();
+    protected final List<PendingRead> confirmedReads = new ArrayList<>();
+
+    // The replicated log, chosen values by slot. Slots can be decided out of order, but are delivered strictly in
+    // order: nextDeliveryInstance is the first slot not delivered yet. learnedValue is the first value decided
+    // (slot 0), kept for callers that only use the council for a single decision. Delivery happens under the
+    // member's lock, acceptors read the decided slots without it
+    protected final ConcurrentNavigableMap<Integer, String> chosenValues = new ConcurrentSkipListMap<>();
+    protected volatile int nextDeliveryInstance = 0;
+    protected volatile String learnedValue = null;
+
+    // Service state the delivered values are applied to in log order, none when the council only decides values.
+    // Commands submitted through this member wait in submittedCommands until it applies them, under the lock
+    protected StateMachine stateMachine;
+    protected final Map<String, CompletableFuture<String>> submittedCommands = new HashMap<>();
 
-    protected int proposalNumber = 0;
-    protected String proposalValue = null;
-    protected Set<Integer> promisesReceived = Collections.synchronizedSet(new HashSet<>());
-    protected Map<Integer, Integer> highestAcceptedProposalNumbers = Collections.synchronizedMap(new HashMap<>());
-    protected Map<Integer, String> previousAcceptedValues = Collections.synchronizedMap(new HashMap<>());
-    protected boolean acceptRequestSent = false;
+    // Snapshots of the learned state. Every snapshotInterval delivered slots the state is captured, and the chosen
+    // values and acceptor slots below it are dropped from memory and from the acceptor log. A snapshot is written to
+    // snapshotFile when one is set, otherwise it only lives in memory to serve members that are catching up
+    protected int snapshotInterval = 0;
+    protected Path snapshotFile;
+    protected volatile Snapshot latestSnapshot;
 
-    protected Set<Integer> acceptsReceived = Collections.synchronizedSet(new HashSet<>());
-    protected boolean learnedValueSent = false;
-    protected String learnedValue = null;
+    // A member that learns it is behind (from a LEARN for a later slot or a heartbeat from a leader further ahead)
+    // waits CATCH_UP_DELAY_MILLIS for the missing slots to arrive on their own before asking for them
+    protected static final long CATCH_UP_DELAY_MILLIS = 500;
+    protected static final int MAX_CATCH_UP_ENTRIES = 1000;
+    protected Scheduler.Task catchUpCheck;
 
     public CouncilMember(int id, int port, Map<Integer, Integer> memberPorts) throws IOException {
+        this(id, port, memberPorts, new BinaryMessageCodec());
+    }
+
+    public CouncilMember(int id, int port, Map<Integer, Integer> memberPorts, MessageCodec codec) throws IOException {
+        this(id, port, memberPorts, codec, ExecutionMode.PLATFORM);
+    }
+
+    public CouncilMember(int id, int port, Map<Integer, Integer> memberPorts, MessageCodec codec,
+                         ExecutionMode executionMode) throws IOException {
+        this(id, memberPorts.keySet(), new SocketTransport(port, memberPorts, codec), executionMode);
+    }
+
+    public CouncilMember(int id, Collection<Integer> memberIds, Transport transport, ExecutionMode executionMode) {
+        this(id, memberIds, transport, executionMode, new ExecutorScheduler("member-" + id + "-timer"));
+    }
+
+    public CouncilMember(int id, Collection<Integer> memberIds, Transport transport, ExecutionMode executionMode,
+                         Scheduler timers) {
+        this(id, memberIds, transport, executionMode, timers, null);
+    }
+
+    // A member that handles its messages on protocolExecutor, shared with the other members in the process, instead
+    // of a pool of its own. Shutting the member down leaves the executor running
+    public CouncilMember(int id, Collection<Integer> memberIds, Transport transport, ExecutorService protocolExecutor,
+                         Scheduler timers) {
+        this(id, memberIds, transport, ExecutionMode.PLATFORM, timers, protocolExecutor);
+    }
+
+    private CouncilMember(int id, Collection<Integer> memberIds, Transport transport, ExecutionMode executionMode,
+                          Scheduler timers, ExecutorService sharedExecutor) {
         this.id = id;
-        this.port = port;
-        this.memberPorts = memberPorts;
-        this.memberIds = new ArrayList<>(memberPorts.keySet());
-        serverSocket = new ServerSocket(port);
+        this.executionMode = executionMode;
+        this.memberIds = new ArrayList<>(memberIds);
+        this.memberIndexes = new HashMap<>();
+        for (int i = 0; i < this.memberIds.size(); i++) {
+            memberIndexes.put(this.memberIds.get(i), i);
+        }
+        this.peerLatencies = new PeerLatencies(this.memberIds.size());
+        addConfiguration(Configuration.majority(0, memberIds));
+        // A member joining a running council is constructed with the council's initial members and may not be one
+        while (proposalNumberStride <= Math.max(id, Collections.max(this.memberIds))) {
+            proposalNumberStride *= 10;
+        }
+        if (sharedExecutor != null) {
+            protocolExecutor = sharedExecutor;
+            ownsProtocolExecutor = false;
+        } else if (executionMode == ExecutionMode.VIRTUAL) {
+            protocolExecutor = Executors.newThreadPerTaskExecutor(
+                    Thread.ofVirtual().name("member-" + id + "-protocol-", 0).factory());
+            inFlightMessages = new Semaphore(VIRTUAL_MAX_IN_FLIGHT);
+        } else {
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(PROTOCOL_THREADS, PROTOCOL_THREADS, 30, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(PROTOCOL_QUEUE_SIZE), runnable -> {
+                        Thread thread = new Thread(runnable, "member-" + id + "-protocol");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+            pool.allowCoreThreadTimeOut(true);
+            protocolExecutor = pool;
+        }
+        this.timers = timers;
+        this.transport = transport;
+        transport.open(id, this::dispatch);
     }
 
     public void run() {
-        try {
-            while (isRunning) {
-                Socket socket = serverSocket.accept();
-                // Handle each connection in a separate thread, so that the server can continue to accept new connections
-                new Thread(new ConnectionHandler(socket)).start();
+        // The transport delivers inbound messages until the member is stopped
+        transport.run();
+    }
+
+    protected void dispatch(Message msg) {
+        if (inFlightMessages == null) {
+            try {
+                protocolExecutor.execute(() -> handleMessage(msg));
+            } catch (RejectedExecutionException e) {
+                // Queue full or member stopping
+                if (metrics != null) {
+                    metrics.messageDropped(msg.type);
+                }
             }
-        } catch (IOException e) {
-            if (!isRunning) {
-            } else {
-                e.printStackTrace();
+            return;
+        }
+        // Virtual threads are cheap but not free, so the number of messages in flight is still capped
+        if (!inFlightMessages.tryAcquire()) {
+            if (metrics != null) {
+                metrics.messageDropped(msg.type);
             }
-        } finally {
+            return;
+        }
+        try {
+            protocolExecutor.execute(() -> {
+                try {
+                    handleMessage(msg);
+                } finally {
+                    inFlightMessages.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            inFlightMessages.release();
+            if (metrics != null) {
+                metrics.messageDropped(msg.type);
+            }
+        }
+    }
+
+    public void shutdown() {
+        isRunning = false;
+        transport.close();
+        // Abandon any simulated delays still in progress
+        if (ownsProtocolExecutor) {
+            protocolExecutor.shutdownNow();
+        }
+        timers.shutdown();
+        if (metrics != null) {
+            metrics.unregister();
+        }
+        if (acceptorLog != null) {
             try {
-                serverSocket.close();
+                acceptorLog.close();
             } catch (IOException e) {
                 e.printStackTrace();
             }
         }
     }
 
-    // Runnable class to handle incoming connections
-    private class ConnectionHandler implements Runnable {
-        private Socket socket;
-
-        public ConnectionHandler(Socket socket) {
-            this.socket = socket;
+    // Takes a snapshot every interval delivered slots, written to file when it is not null. A snapshot left in the
+    // file by an earlier run of this member is restored. Call before the member starts
+    public synchronized void enableSnapshots(int interval, Path file) throws IOException {
+        if (interval < 1) {
+            throw new IllegalArgumentException("Snapshot interval must be positive");
+        }
+        snapshotInterval = interval;
+        snapshotFile = file;
+        Snapshot snapshot = file == null ? null : Snapshot.read(file);
+        if (snapshot != null && snapshot.upTo > nextDeliveryInstance) {
+            restoreWithConfigurations(snapshot.state);
+            nextDeliveryInstance = snapshot.upTo;
+            updatePeers();
+            latestSnapshot = snapshot;
+            compactBelow(snapshot.upTo);
         }
+    }
 
-        public void run() {
-            try (ObjectInputStream in = new ObjectInputStream(socket.getInputStream())) {
-                Message msg = (Message) in.readObject();
-                handleMessage(msg);
-            } catch (IOException | ClassNotFoundException e) {
-                e.printStackTrace();
-            } finally {
-                try {
-                    socket.close();
-                } catch (IOException e) {
-                    e.printStackTrace();
+    // Keeps the acceptor state in a write-ahead log at the given path, restoring whatever an earlier run of this
+    // member left there. Call before the member starts
+    public synchronized void openAcceptorLog(Path file, boolean groupCommit) throws IOException {
+        AcceptorLog log = new AcceptorLog(file, groupCommit, "member-" + id);
+        // Handlers running at the same time can append their records in a different order than they changed the
+        // state. Promises and accepted proposal numbers only ever go up, so replay keeps the highest of each
+        log.replay(new AcceptorLog.Replayer() {
+            public void rangePromise(int proposalNumber, int fromInstance) {
+                RangePromise current = rangePromise.get();
+                if (proposalNumber > current.proposalNumber) {
+                    rangePromise.set(new RangePromise(proposalNumber, Math.min(current.fromInstance, fromInstance)));
                 }
+                observeProposalNumber(proposalNumber);
+            }
+
+            public void slot(int instance, int promisedProposalNumber, int acceptedProposalNumber,
+                             String acceptedValue) {
+                AcceptorSlot current = acceptorSlot(instance);
+                boolean newer = acceptedProposalNumber > current.acceptedProposalNumber;
+                acceptorSlots.put(instance, new AcceptorSlot(
+                        Math.max(current.promisedProposalNumber, promisedProposalNumber),
+                        newer ? acceptedProposalNumber : current.acceptedProposalNumber,
+                        newer ? acceptedValue : current.acceptedValue));
+                observeProposalNumber(promisedProposalNumber);
             }
+        });
+        // Slots a restored snapshot already covers are not needed
+        acceptorSlots.headMap(snapshotUpTo()).clear();
+        acceptorLog = log;
+    }
+
+    // Starts counting messages and timing protocol phases, and registers the metrics with JMX. Call before the
+    // member starts
+    public synchronized Metrics enableMetrics() {
+        if (metrics == null) {
+            metrics = new Metrics(group, id);
+            metrics.register();
         }
+        return metrics;
+    }
+
+    // Tells this member's metrics and events apart from those of the other groups' members with its ID. Call before
+    // the member starts and before enableMetrics
+    public synchronized void setGroup(int group) {
+        this.group = group;
+    }
+
+    public int group() {
+        return group;
+    }
+
+    public void setEventLog(EventLog eventLog) {
+        this.eventLog = eventLog;
+    }
+
+    // The metrics of this member, or null when they are not enabled
+    public Metrics metrics() {
+        return metrics;
     }
 
     public void setResponseProfile(ResponseProfile responseProfile) {
         this.responseProfile = responseProfile;
     }
 
+    // Whether proposers retry phases that time out or are turned down, on by default
+    public synchronized void setRetries(boolean retries) {
+        this.retries = retries;
+    }
+
+    // How long an acceptor lets the last proposer to reach it in phase 2 propose undisturbed, 0 turns leasing off
+    public void setLeaseMillis(long leaseMillis) {
+        if (leaseMillis < 0) {
+            throw new IllegalArgumentException("Lease duration must not be negative");
+        }
+        this.leaseMillis = leaseMillis;
+    }
+
+    // Replaces the majority quorums of the initial council, after checking the system against it. Call before the
+    // member starts, with the same system on every member
+    public synchronized void setQuorumSystem(QuorumSystem quorums) {
+        quorums.validate(configurations.get(0).memberIds);
+        addConfiguration(new Configuration(0, configurations.get(0).memberIds, quorums));
+    }
+
+    // Number of slots between the one a reconfiguration is decided in and the first it applies to. It also bounds
+    // how far a stable leader runs ahead of its delivered slots, so it caps the pipeline window. Call before the
+    // member starts, with the same value on every member
+    public synchronized void setReconfigurationWindow(int alpha) {
+        if (alpha < 1) {
+            throw new IllegalArgumentException("Reconfiguration window must be positive");
+        }
+        this.alpha = alpha;
+    }
+
+    // Proposes replacing the council's members with the given ones. Like any value it is decided in a slot of the
+    // log and only takes effect alpha slots later, while values keep being proposed and decided meanwhile. A member
+    // that joins is constructed with the initial members and learns the rest from the log, and on TCP every
+    // member's transport needs its address first. The new configuration uses majority quorums
+    public synchronized void reconfigure(Collection<Integer> newMemberIds) {
+        for (int memberId : newMemberIds) {
+            if (memberId < 0 || memberId >= proposalNumberStride) {
+                throw new IllegalArgumentException("Member ID " + memberId + " must be between 0 and "
+                        + (proposalNumberStride - 1) + " to keep proposal numbers unique");
+            }
+        }
+        // Fails here rather than being ignored at delivery when the members cannot form a council
+        String change = Configuration.encodeChange(newMemberIds);
+        Configuration.decodeChange(change);
+        proposeValue(change);
+    }
+
+    // The members of the council as of the last configuration this member knows of
+    public List<Integer> members() {
+        return configurations.lastEntry().getValue().memberIds;
+    }
+
+    // Whether phases go only to the peers expected to answer fastest, off by default
+    public void setThrifty(boolean thrifty) {
+        this.thrifty = thrifty;
+    }
+
+    public synchronized void setStableLeader(boolean stableLeader) {
+        this.stableLeader = stableLeader;
+        if (!stableLeader) {
+            stepDown();
+        }
+    }
+
     protected void handleMessage(Message msg) {
         // This is the default method to handle messages, we can override this in subclasses for specific behavior
+        long delay = responseDelayMillis(ThreadLocalRandom.current());
+        if (delay < 0) {
+            // Dropped
+            if (metrics != null) {
+                metrics.messageDropped(msg.type);
+            }
+            return;
+        }
+        if (metrics != null) {
+            metrics.handlerStarted();
+        }
+        try {
+            if (delay > 0) {
+                // Wait to simulate the delay in member response
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException e) {
+                    // The member is shutting down
+                    return;
+                }
+            }
+            processMessage(msg);
+        } finally {
+            if (metrics != null) {
+                metrics.handlerFinished();
+            }
+        }
+    }
 
+    // How long this member takes to respond to a message under its response profile, or -1 when it drops the
+    // message. The simulator draws from the same distribution with its own seeded random
+    protected long responseDelayMillis(Random random) {
         switch (responseProfile) {
             case IMMEDIATE:
                 // Immediate response without delay
-                processMessage(msg);
-                break;
+                return 0;
             case DELAY_SMALL:
-                // Wait a small random time to simulate the delay in member response
-                try {
-                    Thread.sleep((long) (Math.random() * 500));
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                }
-                processMessage(msg);
-                break;
+                // A small random delay
+                return (long) (random.nextDouble() * 500);
             case DELAY_LARGE:
-                // Wait a large random time to simulate the delay in member response
-                try {
-                    Thread.sleep((long) (Math.random() * 2000));
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                }
-                processMessage(msg);
-                break;
+                // A large random delay
+                return (long) (random.nextDouble() * 2000);
             case SLOW:
-                // Randomly drop message
-                if (Math.random() < 0.5) {
-                    return;
-                } else {
-                    // Simulate large delay
-                    try {
-                        Thread.sleep(2000);
-                    } catch (InterruptedException e) {
-                        e.printStackTrace();
-                    }
-                }
-                processMessage(msg);
-                break;
+                // Randomly drop message, otherwise a large delay
+                return random.nextDouble() < 0.5 ? -1 : 2000;
             case OFFLINE:
                 // No response
-                break;
+                return -1;
             default:
                 // Default behavior is to wait a small random time
-                // Wait a small random time to simulate the delay in member response
-                try {
-                    Thread.sleep((long) (Math.random() * 500));
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                }
-                processMessage(msg);
-                break;
+                return (long) (random.nextDouble() * 500);
         }
     }
 
     protected void processMessage(Message msg) {
-        System.out.println("Member " + id + " received message: " + msg);
-        
+        eventLog.received(id, msg);
+        if (metrics != null) {
+            metrics.messageReceived(msg.type);
+        }
+
         switch (msg.type) {
             case PREPARE:
                 handlePrepare(msg);
@@ -172,149 +680,1540 @@ public class CouncilMember implements Runnable {
             case LEARN:
                 handleLearn(msg);
                 break;
+            case HEARTBEAT:
+                handleHeartbeat(msg);
+                break;
+            case CATCH_UP_REQUEST:
+                handleCatchUpRequest(msg);
+                break;
+            case CATCH_UP:
+                handleCatchUp(msg);
+                break;
+            case NACK:
+                handleNack(msg);
+                break;
+            case FORWARD:
+                handleForward(msg);
+                break;
+            case READ_INDEX:
+                handleReadIndex(msg);
+                break;
+            case READ_INDEX_ACK:
+                handleReadIndexAck(msg);
+                break;
             default:
-                System.out.println("Unknown message type received by member " + id);
+                eventLog.log(id, group, EventLog.Kind.UNKNOWN_MESSAGE, msg.senderId, msg.type, msg.proposalNumber,
+                        msg.instance, null);
                 break;
         }
     }
 
-    public void propose(String value) {
-        this.proposalValue = value;
-        this.proposalNumber = generateProposalNumber();
-        promisesReceived.clear();
-        highestAcceptedProposalNumbers.clear();
-        previousAcceptedValues.clear();
-        acceptRequestSent = false;
-        acceptsReceived.clear();
-        learnedValueSent = false;
-        learnedValue = null;
-
-        Message prepareMsg = new Message(Message.MessageType.PREPARE, id, proposalNumber, null);
-        broadcastMessage(prepareMsg);
-    }
-
-    protected synchronized void handlePrepare(Message msg) {
-        if (msg.proposalNumber > promisedProposalNumber) {
-            promisedProposalNumber = msg.proposalNumber;
-            Message promiseMsg = new Message(
-                Message.MessageType.PROMISE,
-                id,
-                promisedProposalNumber,
-                acceptedProposalNumber,
-                acceptedValue
-            );
-            sendMessage(msg.senderId, promiseMsg);
-        } else {
-            // Ignore the Prepare message (already promised a higher proposal number)
-        }
-    }
-
-    protected synchronized void handlePromise(Message msg) {
-        if (msg.proposalNumber == proposalNumber) {
-            promisesReceived.add(msg.senderId);
-            if (msg.acceptedProposalNumber > -1 && msg.acceptedValue != null) {
-                highestAcceptedProposalNumbers.put(msg.senderId, msg.acceptedProposalNumber);
-                previousAcceptedValues.put(msg.senderId, msg.acceptedValue);
-            }
-            if (!acceptRequestSent && promisesReceived.size() > (memberIds.size() / 2)) {
-                // Received promises from majority
-                acceptRequestSent = true;
-                String valueToPropose = proposalValue;
-                // Choose the value with the highest accepted proposal number
-                if (!previousAcceptedValues.isEmpty()) {
-                    int highestProposalNum = -1;
-                    for (Map.Entry<Integer, Integer> entry : highestAcceptedProposalNumbers.entrySet()) {
-                        if (entry.getValue() > highestProposalNum) {
-                            highestProposalNum = entry.getValue();
-                            valueToPropose = previousAcceptedValues.get(entry.getKey());
-                        }
-                    }
-                }
-                Message acceptMsg = new Message(
-                    Message.MessageType.ACCEPT_REQUEST,
-                    id,
-                    proposalNumber,
-                    valueToPropose
-                );
-                broadcastMessage(acceptMsg);
-            }
-        }
-    }
-
-    protected synchronized void handleAcceptRequest(Message msg) {
-        if (msg.proposalNumber >= promisedProposalNumber) {
-            promisedProposalNumber = msg.proposalNumber;
-            acceptedProposalNumber = msg.proposalNumber;
-            acceptedValue = msg.value;
-            Message acceptedMsg = new Message(
-                Message.MessageType.ACCEPTED,
-                id,
-                acceptedProposalNumber,
-                acceptedValue
-            );
-            sendMessage(msg.senderId, acceptedMsg);
-        } else {
-            // Ignore the Accept Request message (already promised a higher proposal number)
+    // Queues value to be decided in a slot of the log. A stable leader pipelines and batches what is queued, without
+    // one a member has a single slot in flight at a time and proposes the rest of the queue after it
+    public synchronized void propose(String value) {
+        rejectReserved(value);
+        proposeValue(value);
+    }
+
+    // Batches and membership changes are encoded as values with a marker in front, which clients cannot propose:
+    // a batch is only built by the proposer and a change only comes from reconfigure
+    protected static void rejectReserved(String value) {
+        if (ValueBatch.isBatch(value) || Configuration.isChange(value) || Configuration.isWrappedSnapshot(value)) {
+            throw new IllegalArgumentException("Values starting with the batch or configuration markers are reserved");
         }
     }
 
-    protected synchronized void handleAccepted(Message msg) {
-        if (msg.proposalNumber == proposalNumber) {
-            acceptsReceived.add(msg.senderId);
-            if (!learnedValueSent && acceptsReceived.size() > (memberIds.size() / 2)) {
-                // Value is chosen
-                learnedValue = msg.value;
-                System.out.println("Member " + id + " learned value: " + learnedValue);
-                // Notify all learners
-                Message learnMsg = new Message(
-                    Message.MessageType.LEARN,
-                    id,
-                    proposalNumber,
-                    learnedValue
-                );
-                broadcastMessage(learnMsg);
-                learnedValueSent = true;
-
-                // stop the member since consensus is reached
-                isRunning = false;
-                try {
-                    serverSocket.close();
-                } catch (IOException e) {
-                    e.printStackTrace();
+    // Proposes a value without checking it for markers, for this member's own changes and values forwarded by others
+    protected void proposeValue(String value) {
+        if (stableLeader) {
+            pendingValues.add(value);
+            if (prepareRound != null || (isLeader && acceptRounds.size() >= maxInFlight)) {
+                // Picked up when a round finishes
+                return;
+            }
+            if (pendingValues.size() < maxBatchSize && batchWindowMillis > 0) {
+                // Give other values a chance to join this batch
+                if (batchTimer == null) {
+                    batchTimer = timers.schedule(this::flushBatch, batchWindowMillis);
                 }
+                return;
             }
+            startNextRounds();
+            return;
         }
+        pendingValues.add(value);
+        startNextRounds();
     }
 
-    protected synchronized void handleLearn(Message msg) {
-        if (learnedValue == null) {
-            learnedValue = msg.value;
-            System.out.println("Member " + id + " learned value: " + learnedValue);
-            // stop the member if consensus is reached
-            isRunning = false;
+    // Runs query on this member's learned state once the state reflects every value decided before the call, and
+    // completes with its result. Only the leader of a stable council serves reads, anywhere else the result fails
+    // with an IllegalStateException, as it does when the leader is replaced before it confirmed the read
+    public synchronized <T> CompletableFuture<T> read(Supplier<T> query) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        if (!stableLeader || !isLeader) {
+            result.completeExceptionally(new IllegalStateException("Member " + id
+                    + " does not lead, the current leader is " + currentLeader()));
+            return result;
+        }
+        Runnable serve = () -> {
             try {
-                serverSocket.close();
-            } catch (IOException e) {
-                e.printStackTrace();
+                result.complete(query.get());
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
             }
+        };
+        queuedReads.add(new PendingRead(readIndex(), serve, result));
+        if (readConfirmation == null) {
+            startReadConfirmation();
         }
+        return result;
     }
 
-    protected void sendMessage(int recipientId, Message msg) {
-        // Helper method to send a message to a specific member
-        int recipientPort = memberPorts.get(recipientId);
-        try (Socket socket = new Socket("localhost", recipientPort);
-             ObjectOutputStream out = new ObjectOutputStream(socket.getOutputStream())) {
-            out.writeObject(msg);
-        } catch (IOException e) {
-            // Handle exception (recipient may be offline)
-            System.out.println("Member " + id + " failed to send message to Member " + recipientId);
+    // The first decided value, read linearizably
+    public CompletableFuture<String> readLearnedValue() {
+        return read(() -> learnedValue);
+    }
+
+    // Applies every delivered value to stateMachine from now on, and takes snapshots of it instead of learnedValue.
+    // Call before the member starts
+    public synchronized void setStateMachine(StateMachine stateMachine) {
+        this.stateMachine = stateMachine;
+    }
+
+    public synchronized StateMachine stateMachine() {
+        return stateMachine;
+    }
+
+    // Proposes command and completes with the state machine's result once this member applies it. The same command
+    // string can only be waited on once at a time, so commands carry something that makes them unique, like the
+    // request IDs of KeyValueStore. A command whose proposal is lost (its leader failed before deciding it) leaves
+    // the result incomplete, and one submitted again after a timeout can be applied twice
+    public synchronized CompletableFuture<String> submit(String command) {
+        if (stateMachine == null) {
+            throw new IllegalStateException("No state machine to apply commands to");
         }
+        rejectReserved(command);
+        CompletableFuture<String> result = new CompletableFuture<>();
+        if (submittedCommands.putIfAbsent(command, result) != null) {
+            throw new IllegalArgumentException("Command already submitted and not applied yet");
+        }
+        propose(command);
+        return result;
     }
 
-    protected void broadcastMessage(Message msg) {
-        // Helper method to broadcast a message to all members except self
-        for (int memberId : memberIds) {
+    public synchronized void setBatching(int maxBatchSize, long batchWindowMillis) {
+        if (maxBatchSize < 1 || batchWindowMillis < 0) {
+            throw new IllegalArgumentException("Batch size must be positive and the window not negative");
+        }
+        this.maxBatchSize = maxBatchSize;
+        this.batchWindowMillis = batchWindowMillis;
+    }
+
+    // Number of slots a stable leader keeps in phase 2 at the same time, and never alpha or more past its delivered
+    // slots
+    public synchronized void setPipelineWindow(int maxInFlight) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("At least one slot must be allowed in flight");
+        }
+        this.maxInFlight = maxInFlight;
+        if (isLeader) {
+            startNextRounds();
+        }
+    }
+
+    protected synchronized void flushBatch() {
+        batchTimer = null;
+        startNextRounds();
+    }
+
+    // Starts as much queued work as the pipeline and the reconfiguration window allow, or phase 1 when this member
+    // is not the leader
+    protected void startNextRounds() {
+        if (!stableLeader) {
+            // One slot at a time: the next value waits until the current one is decided or its retry has run
+            if (prepareRound == null && acceptRounds.isEmpty() && retryTask == null && !pendingValues.isEmpty()) {
+                String value = pendingValues.poll();
+                startPrepare(value, Collections.singletonList(value));
+            }
+            return;
+        }
+        if (batchTimer != null) {
+            batchTimer.cancel();
+            batchTimer = null;
+        }
+        if (isLeader) {
+            while (acceptRounds.size() < maxInFlight && (!recoveredValues.isEmpty() || !pendingValues.isEmpty())
+                    && nextAcceptInstance() < nextDeliveryInstance + alpha) {
+                startAcceptRound();
+            }
+        } else if (!latestConfiguration().contains(id)) {
+            // Removed from the council, or not told yet that it joined. The values go to the leader, or with none
+            // heard from to a member of the council, which runs phase 1 for them
+            forwardPending(handoffTarget());
+        } else if (leaseHolder() != -1) {
+            // The leader holds the lease, a PREPARE from here would only be turned down
+            forwardPending(leaseHolder());
+        } else if (prepareRound == null && !pendingValues.isEmpty()) {
+            List<String> batch = takeBatch();
+            startPrepare(ValueBatch.encode(batch), batch);
+        }
+    }
+
+    // Takes up to maxBatchSize values off the queue
+    protected List<String> takeBatch() {
+        List<String> batch = new ArrayList<>(Math.min(maxBatchSize, pendingValues.size()));
+        while (batch.size() < maxBatchSize && !pendingValues.isEmpty()) {
+            batch.add(pendingValues.poll());
+        }
+        return batch;
+    }
+
+    // Puts values back at the head of the queue in their original order
+    protected void requeue(List<String> values) {
+        for (int i = values.size() - 1; i >= 0; i--) {
+            pendingValues.addFirst(values.get(i));
+        }
+    }
+
+    protected void startPrepare(String value, List<String> clientValues) {
+        // Each proposal fills the first slot of the log this member has not seen chosen yet
+        endPrepare();
+        int instance = firstUnchosenInstance();
+        Configuration configuration = configuration(instance);
+        int threshold = configuration.quorums.phase1Threshold();
+        PrepareRound round = new PrepareRound(instance, generateProposalNumber(), value, clientValues, configuration,
+                new VoteSet(configuration.voteWeights, threshold),
+                new VoteSet(configuration.voteWeights, rejectionThreshold(configuration, threshold)));
+        round.startMillis = timers.currentTimeMillis();
+        if (metrics != null) {
+            round.startNanos = System.nanoTime();
+        }
+        prepareRound = round;
+        round.timeout = scheduleTimeout(() -> prepareTimedOut(round));
+
+        Message prepareMsg = new Message(Message.MessageType.PREPARE, id, round.proposalNumber, null, round.instance);
+        round.sentTo = sendToFastest(prepareMsg, configuration, threshold);
+        if (round.sentTo != null) {
+            round.fallback = scheduleFallback(round.sentTo, () -> prepareFallback(round, prepareMsg));
+            for (int i = 0; i < round.sentTo.length; i++) {
+                if (round.sentTo[i]) {
+                    round.preparedMembers.add(memberIds.get(i));
+                }
+            }
+        } else {
+            round.preparedMembers.addAll(peerIds);
+        }
+    }
+
+    // The slot the leader proposes in next: the first recovered one, else the first free one after those it started
+    protected int nextAcceptInstance() {
+        if (!recoveredValues.isEmpty()) {
+            return recoveredValues.firstKey();
+        }
+        int instance = Math.max(nextLeaderInstance, firstUnchosenInstance());
+        while (chosenValues.containsKey(instance) || acceptRounds.containsKey(instance)) {
+            instance++;
+        }
+        return instance;
+    }
+
+    // Phase 2 only, used by the leader once it holds the promise for every slot from its prepared instance onwards
+    protected void startAcceptRound() {
+        int instance = nextAcceptInstance();
+        String value;
+        List<String> clientValues;
+        if (!recoveredValues.isEmpty()) {
+            value = recoveredValues.remove(instance);
+            clientValues = Collections.emptyList();
+        } else {
+            clientValues = takeBatch();
+            value = ValueBatch.encode(clientValues);
+        }
+        nextLeaderInstance = Math.max(nextLeaderInstance, instance + 1);
+        sendAcceptRequest(new AcceptRound(instance, leaderProposalNumber, value, clientValues));
+    }
+
+    protected void sendAcceptRequest(AcceptRound round) {
+        Configuration configuration = configuration(round.instance);
+        int threshold = configuration.quorums.phase2Threshold();
+        round.configuration = configuration;
+        round.acceptsReceived = new VoteSet(configuration.voteWeights, threshold);
+        round.rejections = new VoteSet(configuration.voteWeights, rejectionThreshold(configuration, threshold));
+        round.startMillis = timers.currentTimeMillis();
+        acceptRounds.put(round.instance, round);
+        if (metrics != null) {
+            round.startNanos = System.nanoTime();
+        }
+        round.timeout = scheduleTimeout(() -> acceptTimedOut(round));
+        Message acceptMsg = new Message(Message.MessageType.ACCEPT_REQUEST, id, round.proposalNumber, round.value,
+                round.instance);
+        round.sentTo = sendToFastest(acceptMsg, configuration, threshold);
+        if (round.sentTo != null) {
+            round.fallback = scheduleFallback(round.sentTo, () -> acceptFallback(round, acceptMsg));
+        }
+    }
+
+    // A slot this member was proposing has been decided, either with its own value or with another proposer's
+    protected void finishRound(AcceptRound round, String chosen) {
+        acceptRounds.remove(round.instance);
+        cancel(round.timeout);
+        cancel(round.fallback);
+        if (!round.value.equals(chosen)) {
+            requeue(round.clientValues);
+        }
+        // Values queued while the round was running go out straight away, they have already waited
+        startNextRounds();
+    }
+
+    protected void becomeLeader(PrepareRound round) {
+        leaderProposalNumber = round.proposalNumber;
+        isLeader = true;
+        nextLeaderInstance = round.instance + 1;
+        recoveredValues.clear();
+        for (Message.Entry entry : round.recoveredEntries.values()) {
+            if (entry.instance >= nextDeliveryInstance && !chosenValues.containsKey(entry.instance)) {
+                recoveredValues.put(entry.instance, entry.value);
+            }
+        }
+        if (heartbeatTask == null) {
+            heartbeatTask = timers.scheduleAtFixedRate(this::sendHeartbeat, 0, HEARTBEAT_INTERVAL_MILLIS);
+        }
+    }
+
+    protected void stepDown() {
+        isLeader = false;
+        recoveredValues.clear();
+        if (heartbeatTask != null) {
+            heartbeatTask.cancel();
+            heartbeatTask = null;
+        }
+        // Rounds that ran with the old proposal number can no longer complete. Their values go back in the queue
+        // and are proposed again after a backoff, or with retries off at the next propose(). A value that was
+        // already decided may then be proposed a second time
+        List<AcceptRound> abandoned = new ArrayList<>(acceptRounds.descendingMap().values());
+        acceptRounds.clear();
+        for (AcceptRound round : abandoned) {
+            cancel(round.timeout);
+            cancel(round.fallback);
+            requeue(round.clientValues);
+        }
+        failUnconfirmedReads();
+        if (stableLeader && !pendingValues.isEmpty()) {
+            scheduleRetry(this::retryQueued);
+        }
+    }
+
+    protected synchronized void prepareTimedOut(PrepareRound round) {
+        if (prepareRound == round) {
+            retryPolicy.timedOut(round.promises.size() > 0 || round.rejections.size() > 0);
+            // The timeout can come before the fallback, the next attempt should not count on the same peers
+            peersMissed(round.sentTo, round.promises, round.rejections, round.startMillis);
+            abandonPrepare(round);
+        }
+    }
+
+    protected synchronized void prepareRejected(PrepareRound round) {
+        if (prepareRound != round) {
+            return;
+        }
+        int holder = leaseHolder();
+        if (holder == -1) {
+            retryPolicy.rejected();
+            abandonPrepare(round);
+            return;
+        }
+        // Turned down for another member's lease. Raising the proposal number would not help before the lease runs
+        // out, and would preempt the holder once it does
+        endPrepare();
+        if (stableLeader) {
+            requeue(round.clientValues);
+            forwardPending(holder);
+        } else {
+            retryOrDrop(round.instance, round.value, round.clientValues, leaseMillis + retryPolicy.backoffMillis());
+        }
+    }
+
+    // Another member known to hold a lease, which this member defers to, or -1 when there is none. A leader that was
+    // removed from the council is not deferred to, its lease runs out now that its heartbeats have stopped
+    protected int leaseHolder() {
+        int leader = currentLeader();
+        return leaseMillis > 0 && leader != id && latestConfiguration().contains(leader) ? leader : -1;
+    }
+
+    // Where a member outside the council sends its values: the leader when one has been heard from, else the member
+    // of the council that answered this one's phases fastest, which then runs phase 1 for them
+    protected int handoffTarget() {
+        int leader = currentLeader();
+        List<Integer> council = latestConfiguration().memberIds;
+        if (leader != -1 && leader != id && council.contains(leader)) {
+            return leader;
+        }
+        int target = council.get(0);
+        double fastest = Double.MAX_VALUE;
+        for (int memberId : council) {
+            int index = memberIndex(memberId);
+            double estimate = peerLatencies.estimate(index);
+            if (estimate >= 0 && estimate < fastest) {
+                fastest = estimate;
+                target = memberId;
+            }
+        }
+        return target;
+    }
+
+    // Hands the queued values to the lease holder. Like any message the FORWARD can be lost, and its values with it,
+    // the same as values queued at a leader that crashes
+    protected void forwardPending(int holderId) {
+        while (!pendingValues.isEmpty()) {
+            sendMessage(holderId, new Message(Message.MessageType.FORWARD, id, 0, pendingValues.poll()));
+        }
+    }
+
+    // Gives up on phase 1 to try it again with a higher proposal number
+    protected void abandonPrepare(PrepareRound round) {
+        endPrepare();
+        if (stableLeader) {
+            requeue(round.clientValues);
+            scheduleRetry(this::retryQueued);
+        } else {
+            retryOrDrop(round.instance, round.value, round.clientValues, retryPolicy.backoffMillis());
+        }
+    }
+
+    protected synchronized void acceptTimedOut(AcceptRound round) {
+        if (acceptRounds.get(round.instance) != round) {
+            return;
+        }
+        retryPolicy.timedOut(round.acceptsReceived.size() > 0 || round.rejections.size() > 0);
+        if (!round.resent) {
+            peersMissed(round.sentTo, round.acceptsReceived, round.rejections, round.startMillis);
+        }
+        if (isLeader && round.proposalNumber == leaderProposalNumber) {
+            // Nobody has preempted the leader, so requests or replies were lost. The votes already counted stay
+            // valid for the same proposal number
+            round.resent = true;
+            cancel(round.fallback);
+            round.timeout = scheduleTimeout(() -> acceptTimedOut(round));
+            sendToMembers(round.configuration, new Message(Message.MessageType.ACCEPT_REQUEST, id,
+                    round.proposalNumber, round.value, round.instance));
+            return;
+        }
+        abandonAccept(round);
+    }
+
+    protected synchronized void acceptRejected(AcceptRound round) {
+        if (acceptRounds.get(round.instance) == round) {
+            retryPolicy.rejected();
+            abandonAccept(round);
+        }
+    }
+
+    // Gives up on a slot that can no longer be won with the round's proposal number, to try it again from phase 1
+    protected void abandonAccept(AcceptRound round) {
+        acceptRounds.remove(round.instance);
+        cancel(round.timeout);
+        cancel(round.fallback);
+        if (stableLeader) {
+            requeue(round.clientValues);
+            scheduleRetry(this::retryQueued);
+        } else {
+            retryOrDrop(round.instance, round.value, round.clientValues, retryPolicy.backoffMillis());
+        }
+    }
+
+    // Tries a slot again after a backoff without a stable leader. With retries off the value is dropped and the
+    // next queued one goes out instead
+    protected void retryOrDrop(int instance, String value, List<String> clientValues, long delayMillis) {
+        scheduleRetry(() -> retryValue(instance, value, clientValues), delayMillis);
+        if (retryTask == null) {
+            startNextRounds();
+        }
+    }
+
+    protected synchronized void retryQueued() {
+        retryTask = null;
+        startNextRounds();
+    }
+
+    protected synchronized void retryValue(int instance, String value, List<String> clientValues) {
+        retryTask = null;
+        if (prepareRound != null) {
+            // Proposing again already, after setStableLeader
+            return;
+        }
+        if (instance >= nextDeliveryInstance && !chosenValues.containsKey(instance)) {
+            startPrepare(value, clientValues);
+            return;
+        }
+        // The slot was decided meanwhile. A value it did not take goes back in the queue for a later slot, and so
+        // does one whose slot a snapshot has compacted away, which may then be decided twice
+        if (!value.equals(chosenValues.get(instance))) {
+            requeue(clientValues);
+        }
+        startNextRounds();
+    }
+
+    // Runs onTimeout once the retry policy's timeout has passed, returns null when retries are off
+    protected Scheduler.Task scheduleTimeout(Runnable onTimeout) {
+        if (!retries || !isRunning) {
+            return null;
+        }
+        try {
+            return timers.schedule(onTimeout, retryPolicy.timeoutMillis());
+        } catch (RejectedExecutionException e) {
+            // Member stopping
+            return null;
+        }
+    }
+
+    // Runs the retry after a random backoff, replacing one that is already waiting
+    protected void scheduleRetry(Runnable retry) {
+        scheduleRetry(retry, retryPolicy.backoffMillis());
+    }
+
+    protected void scheduleRetry(Runnable retry, long delayMillis) {
+        cancel(retryTask);
+        retryTask = null;
+        if (!retries || !isRunning) {
+            return;
+        }
+        try {
+            retryTask = timers.schedule(retry, delayMillis);
+        } catch (RejectedExecutionException e) {
+            // Member stopping
+        }
+    }
+
+    protected static void cancel(Scheduler.Task task) {
+        if (task != null) {
+            task.cancel();
+        }
+    }
+
+    // Ends phase 1 of the current proposal, whichever way it went
+    protected void endPrepare() {
+        PrepareRound round = prepareRound;
+        if (round != null) {
+            cancel(round.timeout);
+            cancel(round.fallback);
+            prepareRound = null;
+        }
+    }
+
+    // Sends a phase to the fewest members of the configuration expected to reach threshold fastest and returns them
+    // by index, or with thrifty messaging off sends it to every member and returns null. Phase 1 goes to the members
+    // of later configurations as well, phase 2 only to the slot's own
+    protected boolean[] sendToFastest(Message msg, Configuration configuration, int threshold) {
+        if (!thrifty) {
+            if (msg.type == Message.MessageType.PREPARE) {
+                broadcastMessage(msg);
+            } else {
+                sendToMembers(configuration, msg);
+            }
+            return null;
+        }
+        boolean[] sentTo = peerLatencies.fastest(configuration.voteWeights, threshold, memberIndex(id));
+        for (int i = 0; i < sentTo.length; i++) {
+            if (sentTo[i]) {
+                sendMessage(memberIds.get(i), msg);
+            }
+        }
+        return sentTo;
+    }
+
+    // Runs onFallback once the peers a phase went to have had twice their usual time to answer. When the phase's
+    // timeout comes first, the timeout counts the silent peers as slow instead and the next attempt goes elsewhere
+    protected Scheduler.Task scheduleFallback(boolean[] sentTo, Runnable onFallback) {
+        if (!isRunning) {
+            return null;
+        }
+        try {
+            return timers.schedule(onFallback, peerLatencies.fallbackMillis(sentTo));
+        } catch (RejectedExecutionException e) {
+            // Member stopping
+            return null;
+        }
+    }
+
+    protected synchronized void prepareFallback(PrepareRound round, Message prepareMsg) {
+        if (prepareRound == round && !round.promises.reached()) {
+            round.fallbackStartMillis = sendToOthers(prepareMsg, round.configuration, round.sentTo, round.promises,
+                    round.rejections, round.startMillis);
+            round.preparedMembers.addAll(round.configuration.memberIds);
+        }
+    }
+
+    protected synchronized void acceptFallback(AcceptRound round, Message acceptMsg) {
+        if (acceptRounds.get(round.instance) == round && !round.acceptsReceived.reached() && !round.resent) {
+            round.fallbackStartMillis = sendToOthers(acceptMsg, round.configuration, round.sentTo,
+                    round.acceptsReceived, round.rejections, round.startMillis);
+        }
+    }
+
+    // A phase sent to too few peers to reach its quorum in time goes to every other peer. The peers it first went
+    // to that have not answered yet count as slow from now on. Returns when it was sent
+    protected long sendToOthers(Message msg, Configuration configuration, boolean[] sentTo, VoteSet votes,
+                                VoteSet rejections, long startMillis) {
+        long now = timers.currentTimeMillis();
+        peersMissed(sentTo, votes, rejections, startMillis);
+        for (int memberId : configuration.memberIds) {
+            int index = memberIndex(memberId);
+            if ((index >= sentTo.length || !sentTo[index]) && memberId != id) {
+                sendMessage(memberId, msg);
+            }
+        }
+        return now;
+    }
+
+    // The peers a phase first went to that have neither voted nor turned it down by now count as slow. Nothing to
+    // do when the phase went to everyone
+    protected void peersMissed(boolean[] sentTo, VoteSet votes, VoteSet rejections, long startMillis) {
+        if (sentTo == null) {
+            return;
+        }
+        long now = timers.currentTimeMillis();
+        for (int i = 0; i < sentTo.length; i++) {
+            if (sentTo[i] && !votes.contains(i) && !rejections.contains(i)) {
+                peerLatencies.missed(i, now - startMillis);
+            }
+        }
+    }
+
+    // Measures how fast a peer answered a phase, from when the phase was sent to that peer. A phase that went to
+    // everyone at once was sent to every peer at its start
+    protected void peerReplied(int index, boolean[] sentTo, long startMillis, long fallbackStartMillis) {
+        boolean first = sentTo == null || (index < sentTo.length && sentTo[index]);
+        peerLatencies.replied(index, timers.currentTimeMillis() - (first ? startMillis : fallbackStartMillis));
+    }
+
+    // The slot a read has to wait for: past every slot this leader has proposed, recovered or seen decided
+    protected int readIndex() {
+        int index = Math.max(nextLeaderInstance, nextDeliveryInstance);
+        if (!recoveredValues.isEmpty()) {
+            index = Math.max(index, recoveredValues.lastKey() + 1);
+        }
+        if (!acceptRounds.isEmpty()) {
+            index = Math.max(index, acceptRounds.lastKey() + 1);
+        }
+        if (!chosenValues.isEmpty()) {
+            index = Math.max(index, chosenValues.lastKey() + 1);
+        }
+        return index;
+    }
+
+    protected void startReadConfirmation() {
+        // A rival has to gather a phase 1 quorum of every configuration from its prepared slot onwards, which
+        // includes the latest one
+        Configuration configuration = latestConfiguration();
+        QuorumSystem quorums = configuration.quorums;
+        ReadConfirmation confirmation = new ReadConfirmation(++readSequence, leaderProposalNumber,
+                new VoteSet(configuration.voteWeights, quorums.totalWeight() - quorums.phase1Threshold() + 1),
+                new ArrayList<>(queuedReads));
+        queuedReads.clear();
+        readConfirmation = confirmation;
+        confirmation.timeout = scheduleTimeout(() -> readConfirmationTimedOut(confirmation));
+        sendToMembers(configuration, new Message(Message.MessageType.READ_INDEX, id, confirmation.proposalNumber,
+                null, confirmation.sequence));
+    }
+
+    protected synchronized void confirmReads(ReadConfirmation confirmation) {
+        if (readConfirmation != confirmation) {
+            // Timed out, or failed when this member stepped down
+            return;
+        }
+        cancel(confirmation.timeout);
+        readConfirmation = null;
+        confirmedReads.addAll(confirmation.reads);
+        serveReads();
+        if (!queuedReads.isEmpty()) {
+            startReadConfirmation();
+        }
+    }
+
+    // Acks were lost, or too few acceptors are reachable. The reads go out again with the next confirmation
+    protected synchronized void readConfirmationTimedOut(ReadConfirmation confirmation) {
+        if (readConfirmation == confirmation) {
+            readConfirmation = null;
+            queuedReads.addAll(0, confirmation.reads);
+            startReadConfirmation();
+        }
+    }
+
+    // Runs the confirmed reads whose slots have all been delivered
+    protected void serveReads() {
+        if (confirmedReads.isEmpty()) {
+            return;
+        }
+        Iterator<PendingRead> reads = confirmedReads.iterator();
+        while (reads.hasNext()) {
+            PendingRead read = reads.next();
+            if (read.readIndex <= nextDeliveryInstance) {
+                reads.remove();
+                read.serve.run();
+            }
+        }
+    }
+
+    // A member that stops leading cannot confirm its reads any more. Confirmed reads only wait for delivery and stay
+    protected void failUnconfirmedReads() {
+        List<PendingRead> failed = new ArrayList<>(queuedReads);
+        queuedReads.clear();
+        ReadConfirmation confirmation = readConfirmation;
+        if (confirmation != null) {
+            cancel(confirmation.timeout);
+            readConfirmation = null;
+            failed.addAll(confirmation.reads);
+        }
+        for (PendingRead read : failed) {
+            read.result.completeExceptionally(new IllegalStateException("Member " + id
+                    + " stopped leading before the read was confirmed"));
+        }
+    }
+
+    protected synchronized void sendHeartbeat() {
+        if (isLeader) {
+            // The instance tells followers how far the leader has delivered, so one that missed slots can catch up
+            broadcastMessage(new Message(Message.MessageType.HEARTBEAT, id, leaderProposalNumber, null,
+                    nextDeliveryInstance));
+        }
+    }
+
+    // Every proposal number seen raises the floor for our own, and a higher one than ours ends our leadership
+    protected void observeProposalNumber(int number) {
+        highestSeenProposalNumber.accumulateAndGet(number, Math::max);
+        if (isLeader && number > leaderProposalNumber) {
+            synchronized (this) {
+                if (isLeader && number > leaderProposalNumber) {
+                    stepDown();
+                }
+            }
+        }
+    }
+
+    // Acceptors do not take the member's lock. Each works on the immutable state it read and publishes its change
+    // with a compare-and-set, starting over when another handler changed the state first
+    protected void handlePrepare(Message msg) {
+        if (msg.instance < snapshotUpTo()) {
+            // The slot was decided and compacted away, the proposer is behind
+            synchronized (this) {
+                sendCatchUp(msg.senderId, msg.instance);
+            }
+            return;
+        }
+        String chosen = chosenValues.get(msg.instance);
+        if (chosen != null) {
+            // The slot is already decided, tell the proposer instead of joining another round for it
+            sendMessage(msg.senderId, new Message(Message.MessageType.LEARN, id, msg.proposalNumber, chosen, msg.instance));
+            return;
+        }
+        int leased = leasedProposalNumber(msg.senderId);
+        if (leased != -1) {
+            // Checked before the number is observed, a leader is not deposed by a PREPARE it turns down
+            sendNack(msg, leased);
+            return;
+        }
+        observeProposalNumber(msg.proposalNumber);
+        RangePromise promise;
+        while (true) {
+            RangePromise current = rangePromise.get();
+            int promised = Math.max(current.proposalNumber, slotPromisedFrom(msg.instance));
+            if (msg.proposalNumber <= promised) {
+                // Already promised this or a higher proposal number. Tell the proposer how high, unless this is a
+                // PREPARE that was already answered
+                if (msg.proposalNumber < promised) {
+                    sendNack(msg, promised);
+                }
+                return;
+            }
+            // The promise covers this instance and every later one
+            promise = new RangePromise(msg.proposalNumber, Math.min(current.fromInstance, msg.instance));
+            if (rangePromise.compareAndSet(current, promise)) {
+                break;
+            }
+        }
+        // Read after the promise is in place, an ACCEPT_REQUEST that lands in a slot after this read sees the
+        // promise and backs out (see handleAcceptRequest)
+        AcceptorSlot slot = acceptorSlot(msg.instance);
+        Message promiseMsg = new Message(
+            Message.MessageType.PROMISE,
+            id,
+            msg.proposalNumber,
+            slot.acceptedProposalNumber,
+            slot.acceptedValue,
+            msg.instance
+        );
+        // Report what was accepted after the prepared instance, a new leader has to finish those slots first
+        for (Map.Entry<Integer, AcceptorSlot> later : acceptorSlots.tailMap(msg.instance, false).entrySet()) {
+            if (later.getValue().acceptedValue != null) {
+                if (promiseMsg.entries == null) {
+                    promiseMsg.entries = new ArrayList<>();
+                }
+                promiseMsg.entries.add(new Message.Entry(later.getKey(),
+                        later.getValue().acceptedProposalNumber, later.getValue().acceptedValue));
+            }
+        }
+        if (acceptorLog == null) {
+            sendMessage(msg.senderId, promiseMsg);
+        } else {
+            // The promise is only given once it survives a restart
+            acceptorLog.appendRangePromise(promise.proposalNumber, promise.fromInstance,
+                    () -> sendMessage(msg.senderId, promiseMsg));
+        }
+    }
+
+    // Highest proposal number promised for any slot from this instance onwards
+    protected int promisedFrom(int instance) {
+        return Math.max(rangePromise.get().proposalNumber, slotPromisedFrom(instance));
+    }
+
+    protected int slotPromisedFrom(int instance) {
+        int promised = -1;
+        for (AcceptorSlot slot : acceptorSlots.tailMap(instance, true).values()) {
+            promised = Math.max(promised, slot.promisedProposalNumber);
+        }
+        return promised;
+    }
+
+    protected int promisedFor(int instance) {
+        return Math.max(acceptorSlot(instance).promisedProposalNumber, rangePromise.get().promisedFor(instance));
+    }
+
+    // Promises are counted without the lock, the one that completes the quorum takes it to start phase 2
+    protected void handlePromise(Message msg) {
+        PrepareRound round = prepareRound;
+        if (round == null || msg.instance != round.instance || msg.proposalNumber != round.proposalNumber) {
+            return;
+        }
+        // What the promise reports is recorded before its vote, so whoever completes the quorum sees it
+        if (msg.acceptedProposalNumber > -1 && msg.acceptedValue != null) {
+            Message.Entry reported = new Message.Entry(msg.instance, msg.acceptedProposalNumber, msg.acceptedValue);
+            round.highestAccepted.accumulateAndGet(reported,
+                    (known, entry) -> known == null || entry.proposalNumber > known.proposalNumber ? entry : known);
+        }
+        if (msg.entries != null) {
+            for (Message.Entry entry : msg.entries) {
+                round.recoveredEntries.merge(entry.instance, entry,
+                        (known, later) -> later.proposalNumber > known.proposalNumber ? later : known);
+            }
+        }
+        round.promisedBy.add(msg.senderId);
+        int index = memberIndex(msg.senderId);
+        if (index < 0) {
+            // A member of a configuration this member only learned of from the promises
+            if (round.waitingForQuorums) {
+                finishPrepare(round);
+            }
+            return;
+        }
+        if (!round.promises.contains(index)) {
+            peerReplied(index, round.sentTo, round.startMillis, round.fallbackStartMillis);
+        }
+        if (round.promises.add(index) || round.waitingForQuorums) {
+            // Received promises from a quorum of the prepared slot's configuration
+            finishPrepare(round);
+        }
+    }
+
+    // Configurations that take effect from the prepared slot onwards and have no phase 1 quorum among the members
+    // that promised yet: the known ones, and those decided or accepted in the prepared slot or later, as far as this
+    // member or the promises know. A rival could only have proposed in slots beyond these with a configuration
+    // decided in one of them
+    protected List<Configuration> unpreparedConfigurations(PrepareRound round) {
+        List<Configuration> later = new ArrayList<>(
+                configurations.tailMap(configurations.floorKey(round.instance)).values());
+        Map<Integer, String> values = new TreeMap<>(chosenValues.tailMap(round.instance));
+        for (Message.Entry entry : round.recoveredEntries.values()) {
+            values.putIfAbsent(entry.instance, entry.value);
+        }
+        Message.Entry highest = round.highestAccepted.get();
+        if (highest != null) {
+            values.putIfAbsent(highest.instance, highest.value);
+        }
+        for (Map.Entry<Integer, String> value : values.entrySet()) {
+            for (String decoded : ValueBatch.decode(value.getValue())) {
+                if (Configuration.isChange(decoded)) {
+                    try {
+                        later.add(Configuration.majority(value.getKey() + alpha, Configuration.decodeChange(decoded)));
+                    } catch (IllegalArgumentException e) {
+                        // Never takes effect, every member ignores it when it is delivered
+                    }
+                }
+            }
+        }
+        List<Configuration> unprepared = new ArrayList<>();
+        for (Configuration configuration : later) {
+            if (!configuration.phase1Reached(round.promisedBy)) {
+                unprepared.add(configuration);
+            }
+        }
+        return unprepared;
+    }
+
+    protected synchronized void finishPrepare(PrepareRound round) {
+        if (prepareRound != round) {
+            // The slot was decided meanwhile, or a snapshot covered it
+            return;
+        }
+        List<Configuration> unprepared = unpreparedConfigurations(round);
+        if (!unprepared.isEmpty()) {
+            // The promise is not yet safe for every slot it covers. Ask the members it still needs, the phase
+            // finishes with the promise that completes the last quorum or times out like any other
+            round.waitingForQuorums = true;
+            Message prepareMsg = new Message(Message.MessageType.PREPARE, id, round.proposalNumber, null,
+                    round.instance);
+            for (Configuration configuration : unprepared) {
+                for (int memberId : configuration.memberIds) {
+                    if (memberId != id && round.preparedMembers.add(memberId)) {
+                        sendMessage(memberId, prepareMsg);
+                    }
+                }
+            }
+            return;
+        }
+        endPrepare();
+        retryPolicy.roundTrip(timers.currentTimeMillis() - round.startMillis);
+        retryPolicy.succeeded();
+        if (metrics != null) {
+            metrics.prepareLatency().recordNanos(System.nanoTime() - round.startNanos);
+        }
+        String valueToPropose = round.value;
+        List<String> clientValues = round.clientValues;
+        // Choose the value with the highest accepted proposal number
+        Message.Entry highest = round.highestAccepted.get();
+        if (highest != null) {
+            valueToPropose = highest.value;
+            // The slot is finishing someone else's value, ours go back in the queue for the next one
+            requeue(clientValues);
+            clientValues = Collections.emptyList();
+        }
+        sendAcceptRequest(new AcceptRound(round.instance, round.proposalNumber, valueToPropose, clientValues));
+        if (stableLeader) {
+            becomeLeader(round);
+            startNextRounds();
+        }
+    }
+
+    protected void handleAcceptRequest(Message msg) {
+        observeProposalNumber(msg.proposalNumber);
+        if (msg.instance < snapshotUpTo()) {
+            synchronized (this) {
+                sendCatchUp(msg.senderId, msg.instance);
+            }
+            return;
+        }
+        AcceptorSlot accepted = new AcceptorSlot(msg.proposalNumber, msg.proposalNumber, msg.value);
+        while (true) {
+            RangePromise promise = rangePromise.get();
+            AcceptorSlot current = acceptorSlots.get(msg.instance);
+            int promised = Math.max(current == null ? -1 : current.promisedProposalNumber,
+                    promise.promisedFor(msg.instance));
+            if (msg.proposalNumber < promised) {
+                // Already promised a higher proposal number
+                sendNack(msg, promised);
+                return;
+            }
+            boolean swapped = current == null ? acceptorSlots.putIfAbsent(msg.instance, accepted) == null
+                    : acceptorSlots.replace(msg.instance, current, accepted);
+            if (!swapped) {
+                continue;
+            }
+            RangePromise now = rangePromise.get();
+            if (now != promise && msg.proposalNumber < now.promisedFor(msg.instance)) {
+                // A higher PREPARE was promised while this value went in, and may have read the slot before it
+                // did. Put the slot back unless a later ACCEPT_REQUEST already replaced it, and do not answer. A
+                // PREPARE that did see the value reports a value that was proposed with its proposal number, which
+                // is safe even though it is no longer accepted here
+                if (current == null) {
+                    acceptorSlots.remove(msg.instance, accepted);
+                } else {
+                    acceptorSlots.replace(msg.instance, accepted, current);
+                }
+                sendNack(msg, now.promisedFor(msg.instance));
+                return;
+            }
+            break;
+        }
+        grantLease(msg.senderId, msg.proposalNumber, msg.instance);
+        Message acceptedMsg = new Message(
+            Message.MessageType.ACCEPTED,
+            id,
+            accepted.acceptedProposalNumber,
+            accepted.acceptedValue,
+            msg.instance
+        );
+        if (acceptorLog == null) {
+            sendMessage(msg.senderId, acceptedMsg);
+        } else {
+            acceptorLog.appendSlot(msg.instance, accepted.promisedProposalNumber, accepted.acceptedProposalNumber,
+                    accepted.acceptedValue, () -> sendMessage(msg.senderId, acceptedMsg));
+        }
+    }
+
+    // ACCEPTEDs are counted without the lock, the one that completes the quorum takes it to learn the value
+    protected void handleAccepted(Message msg) {
+        AcceptRound round = acceptRounds.get(msg.instance);
+        if (round != null && msg.proposalNumber == round.proposalNumber) {
+            int index = memberIndex(msg.senderId);
+            if (index < 0) {
+                return;
+            }
+            if (!round.resent && !round.acceptsReceived.contains(index)) {
+                peerReplied(index, round.sentTo, round.startMillis, round.fallbackStartMillis);
+            }
+            if (round.acceptsReceived.add(index)) {
+                // Value is chosen
+                finishAccept(round);
+            }
+        }
+    }
+
+    protected synchronized void finishAccept(AcceptRound round) {
+        if (acceptRounds.get(round.instance) != round) {
+            // Decided by another proposer, or abandoned when this member stepped down
+            return;
+        }
+        if (!round.resent) {
+            retryPolicy.roundTrip(timers.currentTimeMillis() - round.startMillis);
+        }
+        retryPolicy.succeeded();
+        if (metrics != null) {
+            metrics.acceptLatency().recordNanos(System.nanoTime() - round.startNanos);
+        }
+        learnValue(round.instance, round.value);
+        // Notify all learners
+        Message learnMsg = new Message(
+            Message.MessageType.LEARN,
+            id,
+            round.proposalNumber,
+            round.value,
+            round.instance
+        );
+        broadcastMessage(learnMsg);
+        finishRound(round, round.value);
+    }
+
+    protected void sendNack(Message rejected, int promised) {
+        sendMessage(rejected.senderId, new Message(Message.MessageType.NACK, id, rejected.proposalNumber, promised,
+                null, rejected.instance));
+    }
+
+    // A NACK raises the floor for this member's next proposal number straight away. Once so many members turned a
+    // phase down that it cannot reach a quorum, the phase is given up without waiting for its timeout
+    protected void handleNack(Message msg) {
+        if (msg.acceptedProposalNumber < msg.proposalNumber) {
+            // Turned down for the lease of the member this proposal number belongs to
+            noticeLeader(msg.acceptedProposalNumber % proposalNumberStride, msg.acceptedProposalNumber);
+        } else {
+            observeProposalNumber(msg.acceptedProposalNumber);
+        }
+        int index = memberIndex(msg.senderId);
+        if (!retries || index < 0) {
+            return;
+        }
+        PrepareRound preparing = prepareRound;
+        if (preparing != null && msg.instance == preparing.instance && msg.proposalNumber == preparing.proposalNumber) {
+            if (!preparing.rejections.contains(index)) {
+                peerReplied(index, preparing.sentTo, preparing.startMillis, preparing.fallbackStartMillis);
+            }
+            if (preparing.rejections.add(index)) {
+                retryPolicy.roundTrip(timers.currentTimeMillis() - preparing.startMillis);
+                prepareRejected(preparing);
+            }
+            return;
+        }
+        AcceptRound round = acceptRounds.get(msg.instance);
+        if (round == null || msg.proposalNumber != round.proposalNumber) {
+            return;
+        }
+        if (!round.resent && !round.rejections.contains(index)) {
+            peerReplied(index, round.sentTo, round.startMillis, round.fallbackStartMillis);
+        }
+        if (round.rejections.add(index)) {
+            if (!round.resent) {
+                retryPolicy.roundTrip(timers.currentTimeMillis() - round.startMillis);
+            }
+            acceptRejected(round);
+        }
+    }
+
+    protected void handleLearn(Message msg) {
+        if (msg.instance < nextDeliveryInstance && !acceptRounds.containsKey(msg.instance)) {
+            // Already delivered, a repeated LEARN has nothing to change
+            return;
+        }
+        synchronized (this) {
+            learnValue(msg.instance, msg.value);
+            noticeProgress(msg.senderId, msg.instance);
+            AcceptRound round = acceptRounds.get(msg.instance);
+            if (round != null) {
+                // Another proposer decided a slot this member was still proposing
+                finishRound(round, msg.value);
+            }
+            PrepareRound preparing = prepareRound;
+            if (preparing != null && msg.instance == preparing.instance) {
+                // Phase 1 was for a slot that is already decided, try again for the next free one
+                endPrepare();
+                requeue(preparing.clientValues);
+                startNextRounds();
+            }
+        }
+    }
+
+    protected synchronized void handleHeartbeat(Message msg) {
+        observeProposalNumber(msg.proposalNumber);
+        if (msg.proposalNumber >= rangePromise.get().proposalNumber) {
+            // Still the leader as far as this acceptor knows
+            grantLease(msg.senderId, msg.proposalNumber, Integer.MAX_VALUE);
+        }
+        noticeLeader(msg.senderId, msg.proposalNumber);
+        noticeProgress(msg.senderId, msg.instance);
+        if (!pendingValues.isEmpty() && !latestConfiguration().contains(id)) {
+            // Values proposed here while this member was not in the council, or did not know it had joined yet
+            forwardPending(handoffTarget());
+        }
+    }
+
+    // The member was heard leading, or holding a lease, with the given proposal number
+    protected synchronized void noticeLeader(int memberId, int proposalNumber) {
+        long now = timers.currentTimeMillis();
+        if (proposalNumber >= knownLeaderProposalNumber || now - lastHeartbeatMillis >= LEADER_TIMEOUT_MILLIS) {
+            knownLeaderId = memberId;
+            knownLeaderProposalNumber = proposalNumber;
+            lastHeartbeatMillis = now;
+        }
+    }
+
+    // Acceptors answer a leader's read check without the lock. Whatever proposal number they report, they have
+    // seen it by the time the check arrived
+    protected void handleReadIndex(Message msg) {
+        observeProposalNumber(msg.proposalNumber);
+        sendMessage(msg.senderId, new Message(Message.MessageType.READ_INDEX_ACK, id, msg.proposalNumber,
+                highestSeenProposalNumber.get(), null, msg.instance));
+    }
+
+    protected void handleReadIndexAck(Message msg) {
+        ReadConfirmation confirmation = readConfirmation;
+        if (confirmation == null || msg.instance != confirmation.sequence
+                || msg.proposalNumber != confirmation.proposalNumber) {
+            return;
+        }
+        if (msg.acceptedProposalNumber > confirmation.proposalNumber) {
+            // Another member may have been promised a higher number, this member steps down and fails its reads
+            observeProposalNumber(msg.acceptedProposalNumber);
+            return;
+        }
+        int index = memberIndex(msg.senderId);
+        if (index >= 0 && confirmation.acks.add(index)) {
+            confirmReads(confirmation);
+        }
+    }
+
+    protected synchronized void handleForward(Message msg) {
+        // Proposed here, or passed on again if this member has since lost the lease to another. A member without a
+        // stable leader queues it behind its own values. A forwarded value was checked by the member a client
+        // proposed it to, or is a reconfiguration
+        proposeValue(msg.value);
+    }
+
+    // Proposal number of another member's lease that keeps the given member from preparing, -1 when it may
+    protected int leasedProposalNumber(int memberId) {
+        if (leaseMillis == 0) {
+            return -1;
+        }
+        if (isLeader) {
+            // A leader holds its own lease, its heartbeats renew it at the other acceptors
+            return memberId == id ? -1 : leaderProposalNumber;
+        }
+        Lease current = lease.get();
+        return current.holderId != memberId && isLive(current, timers.currentTimeMillis()) ? current.proposalNumber
+                : -1;
+    }
+
+    protected boolean isLive(Lease lease, long nowMillis) {
+        return nowMillis < lease.expiresMillis && lease.untilInstance >= nextDeliveryInstance
+                && !chosenValues.containsKey(lease.untilInstance);
+    }
+
+    // Leases the right to propose to the member, or renews its lease. Another member's lease is left to run out
+    protected void grantLease(int holderId, int proposalNumber, int instance) {
+        if (leaseMillis == 0) {
+            return;
+        }
+        long now = timers.currentTimeMillis();
+        lease.updateAndGet(current -> {
+            if (!isLive(current, now)) {
+                return new Lease(holderId, proposalNumber, instance, now + leaseMillis);
+            }
+            if (current.holderId != holderId) {
+                return current;
+            }
+            return new Lease(holderId, Math.max(current.proposalNumber, proposalNumber),
+                    Math.max(current.untilInstance, instance), now + leaseMillis);
+        });
+    }
+
+    // Another member has delivered up to the given slot. If this member is still behind it once the slots in flight
+    // have had time to arrive, it asks that member for what it missed
+    protected void noticeProgress(int memberId, int deliveredUpTo) {
+        if (deliveredUpTo > nextDeliveryInstance && catchUpCheck == null && isRunning) {
+            try {
+                catchUpCheck = timers.schedule(() -> checkCatchUp(memberId, deliveredUpTo), CATCH_UP_DELAY_MILLIS);
+            } catch (RejectedExecutionException e) {
+                // Member stopping
+            }
+        }
+    }
+
+    protected synchronized void checkCatchUp(int memberId, int deliveredUpTo) {
+        catchUpCheck = null;
+        if (nextDeliveryInstance < deliveredUpTo) {
+            sendMessage(memberId, new Message(Message.MessageType.CATCH_UP_REQUEST, id, 0, null,
+                    nextDeliveryInstance));
+        }
+    }
+
+    protected synchronized void handleCatchUpRequest(Message msg) {
+        if (msg.instance < nextDeliveryInstance) {
+            sendCatchUp(msg.senderId, msg.instance);
+        }
+    }
+
+    // Sends the latest snapshot when the slots the member is missing have been compacted away, followed by the
+    // chosen values after it
+    protected void sendCatchUp(int recipientId, int fromInstance) {
+        Message reply = new Message(Message.MessageType.CATCH_UP, id, nextDeliveryInstance, -1, null, fromInstance);
+        if (latestSnapshot != null && fromInstance < latestSnapshot.upTo) {
+            reply.acceptedProposalNumber = latestSnapshot.upTo;
+            reply.acceptedValue = latestSnapshot.state;
+            reply.instance = latestSnapshot.upTo;
+        }
+        for (Map.Entry<Integer, String> chosen : chosenValues.subMap(reply.instance, nextDeliveryInstance).entrySet()) {
+            if (reply.entries == null) {
+                reply.entries = new ArrayList<>();
+            } else if (reply.entries.size() == MAX_CATCH_UP_ENTRIES) {
+                break;
+            }
+            reply.entries.add(new Message.Entry(chosen.getKey(), -1, chosen.getValue()));
+        }
+        sendMessage(recipientId, reply);
+    }
+
+    protected synchronized void handleCatchUp(Message msg) {
+        if (msg.acceptedProposalNumber > nextDeliveryInstance) {
+            installSnapshot(new Snapshot(msg.acceptedProposalNumber, msg.acceptedValue));
+        }
+        if (msg.entries != null) {
+            for (Message.Entry entry : msg.entries) {
+                learnValue(entry.instance, entry.value);
+            }
+        }
+        if (nextDeliveryInstance < msg.proposalNumber && msg.entries != null
+                && msg.entries.size() == MAX_CATCH_UP_ENTRIES) {
+            // The reply was cut short, ask for the rest straight away
+            checkCatchUp(msg.senderId, msg.proposalNumber);
+        }
+    }
+
+    // The member currently acting as leader, or -1 when no leader has been heard from recently
+    public synchronized int currentLeader() {
+        if (isLeader) {
+            return id;
+        }
+        if (knownLeaderId != -1 && timers.currentTimeMillis() - lastHeartbeatMillis < LEADER_TIMEOUT_MILLIS) {
+            return knownLeaderId;
+        }
+        return -1;
+    }
+
+    protected void learnValue(int instance, String value) {
+        // A slot is decided at most once, repeated LEARNs for it are ignored
+        if (instance >= nextDeliveryInstance && chosenValues.putIfAbsent(instance, value) == null) {
+            deliverReady();
+        }
+    }
+
+    // Delivers every slot that is now complete, a slot decided early waits for the ones before it
+    protected void deliverReady() {
+        int from = nextDeliveryInstance;
+        while (chosenValues.containsKey(nextDeliveryInstance)) {
+            deliver(nextDeliveryInstance, chosenValues.get(nextDeliveryInstance));
+            nextDeliveryInstance++;
+        }
+        if (!configurations.floorKey(from).equals(configurations.floorKey(nextDeliveryInstance))) {
+            // Delivery moved into the next configuration, the members only in earlier ones are no longer peers
+            updatePeers();
+        }
+        if (isLeader && nextDeliveryInstance > from) {
+            // Delivery may have opened the reconfiguration window for slots the pipeline had room for
+            startNextRounds();
+        }
+        serveReads();
+        if (snapshotInterval > 0 && nextDeliveryInstance - snapshotUpTo() >= snapshotInterval) {
+            takeSnapshot();
+        }
+    }
+
+    protected void deliver(int instance, String value) {
+        List<String> values = ValueBatch.decode(value);
+        if (instance == 0) {
+            learnedValue = values.get(0);
+        }
+        for (String learned : values) {
+            eventLog.log(id, group, EventLog.Kind.LEARNED, -1, null, -1, instance, learned);
+            if (Configuration.isChange(learned)) {
+                // Membership is the council's own state, the state machine never sees it
+                reconfigured(instance, learned);
+            } else if (stateMachine != null) {
+                apply(learned);
+            }
+        }
+    }
+
+    protected void apply(String command) {
+        CompletableFuture<String> waiting = submittedCommands.remove(command);
+        try {
+            String result = stateMachine.apply(command);
+            if (waiting != null) {
+                waiting.complete(result);
+            }
+        } catch (RuntimeException e) {
+            // A command the state machine rejects is rejected on every member alike, the log moves on
+            if (waiting != null) {
+                waiting.completeExceptionally(e);
+            }
+        }
+    }
+
+    // The learned state a snapshot captures, behind the configurations after the initial one once the council has
+    // been reconfigured
+    protected String snapshotWithConfigurations() {
+        String state = snapshotState();
+        if (configurations.size() == 1) {
+            return state;
+        }
+        return Configuration.wrapSnapshot(configurations.tailMap(0, false).values(), state);
+    }
+
+    protected void restoreWithConfigurations(String snapshot) {
+        if (!Configuration.isWrappedSnapshot(snapshot)) {
+            restoreSnapshot(snapshot);
+            return;
+        }
+        configurations.tailMap(0, false).clear();
+        for (Configuration configuration : Configuration.snapshotHistory(snapshot).values()) {
+            addConfiguration(configuration);
+        }
+        restoreSnapshot(Configuration.snapshotState(snapshot));
+    }
+
+    // The learned state a snapshot captures. A plain council only has its first decision, a council with a state
+    // machine has that machine's state
+    protected String snapshotState() {
+        return stateMachine != null ? stateMachine.snapshot() : learnedValue;
+    }
+
+    protected void restoreSnapshot(String state) {
+        if (stateMachine != null) {
+            stateMachine.restore(state);
+        } else {
+            learnedValue = state;
+        }
+    }
+
+    protected int snapshotUpTo() {
+        return latestSnapshot == null ? 0 : latestSnapshot.upTo;
+    }
+
+    protected void takeSnapshot() {
+        Snapshot snapshot = new Snapshot(nextDeliveryInstance, snapshotWithConfigurations());
+        if (snapshotFile != null) {
+            try {
+                snapshot.write(snapshotFile);
+            } catch (IOException e) {
+                // Keep the full history until a snapshot can be written
+                e.printStackTrace();
+                return;
+            }
+        }
+        latestSnapshot = snapshot;
+        compactBelow(snapshot.upTo);
+    }
+
+    // Replaces everything before the snapshot with it, used when this member was too far behind to be sent the
+    // missing slots
+    protected void installSnapshot(Snapshot snapshot) {
+        restoreWithConfigurations(snapshot.state);
+        nextDeliveryInstance = snapshot.upTo;
+        updatePeers();
+        latestSnapshot = snapshot;
+        if (snapshotFile != null) {
+            try {
+                snapshot.write(snapshotFile);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        compactBelow(snapshot.upTo);
+        serveReads();
+        // Rounds for slots the snapshot covers can no longer be decided here, their values go back in the queue
+        for (AcceptRound round : new ArrayList<>(acceptRounds.headMap(snapshot.upTo).values())) {
+            finishRound(round, null);
+        }
+        PrepareRound preparing = prepareRound;
+        if (preparing != null && preparing.instance < snapshot.upTo) {
+            endPrepare();
+            requeue(preparing.clientValues);
+            startNextRounds();
+        }
+        // Slots after the snapshot that were decided while this member was behind can be delivered now
+        deliverReady();
+    }
+
+    protected void compactBelow(int instance) {
+        chosenValues.headMap(instance).clear();
+        acceptorSlots.headMap(instance).clear();
+        if (acceptorLog != null) {
+            try {
+                RangePromise promise = rangePromise.get();
+                acceptorLog.rewrite(promise.proposalNumber, promise.fromInstance, acceptorSlots);
+            } catch (IOException e) {
+                // The old log is still in place and still correct, only larger
+                e.printStackTrace();
+            }
+        }
+    }
+
+    // Current acceptor state of a slot, EMPTY when nothing was promised or accepted in it on its own
+    protected AcceptorSlot acceptorSlot(int instance) {
+        return acceptorSlots.getOrDefault(instance, AcceptorSlot.EMPTY);
+    }
+
+    // Position of a member in memberIds, -1 for an ID this member has not heard of as part of the council
+    protected int memberIndex(int memberId) {
+        Integer index = memberIndexes.get(memberId);
+        return index == null ? -1 : index;
+    }
+
+    // The configuration the given slot is decided in
+    protected Configuration configuration(int instance) {
+        return configurations.floorEntry(instance).getValue();
+    }
+
+    protected Configuration latestConfiguration() {
+        return configurations.lastEntry().getValue();
+    }
+
+    // Takes a configuration in, giving its new members positions and weighing every configuration's members by them
+    protected void addConfiguration(Configuration configuration) {
+        boolean grown = false;
+        for (int memberId : configuration.memberIds) {
+            if (!memberIndexes.containsKey(memberId)) {
+                memberIndexes.put(memberId, memberIds.size());
+                memberIds.add(memberId);
+                grown = true;
+            }
+        }
+        if (grown) {
+            peerLatencies = peerLatencies.grow(memberIds.size());
+        }
+        configuration.voteWeights = configuration.quorums.weights(memberIds);
+        configurations.put(configuration.fromInstance, configuration);
+        if (grown) {
+            for (Configuration other : configurations.values()) {
+                other.voteWeights = other.quorums.weights(memberIds);
+            }
+        }
+        updatePeers();
+    }
+
+    // Members of every configuration from the one the next slot to deliver is in onwards, except this member
+    protected void updatePeers() {
+        Set<Integer> peers = new LinkedHashSet<>();
+        for (Configuration configuration : configurations.tailMap(configurations.floorKey(nextDeliveryInstance))
+                .values()) {
+            peers.addAll(configuration.memberIds);
+        }
+        peers.remove(id);
+        peerIds = new ArrayList<>(peers);
+    }
+
+    // A reconfiguration decided in the given slot, it takes effect alpha slots later
+    protected void reconfigured(int instance, String change) {
+        List<Integer> newMemberIds;
+        try {
+            newMemberIds = Configuration.decodeChange(change);
+        } catch (IllegalArgumentException e) {
+            // Delivery goes on, with the council unchanged on every member
+            eventLog.log(id, group, EventLog.Kind.INVALID_RECONFIGURATION, -1, null, -1, instance, e.getMessage());
+            return;
+        }
+        Configuration configuration = Configuration.majority(instance + alpha, newMemberIds);
+        addConfiguration(configuration);
+        eventLog.log(id, group, EventLog.Kind.RECONFIGURED, -1, null, -1, configuration.fromInstance,
+                configuration.memberIds.toString());
+        if (isLeader && !configuration.contains(id)) {
+            // Removed from the council. Other members take over once its heartbeats stop
+            stepDown();
+        }
+    }
+
+    // Weight of NACKs after which a phase can no longer reach the given threshold. A proposer does not vote for
+    // itself, so the quorum has to come from the other members
+    protected int rejectionThreshold(Configuration configuration, int threshold) {
+        QuorumSystem quorums = configuration.quorums;
+        return Math.max(1, quorums.totalWeight() - quorums.weight(id) - threshold + 1);
+    }
+
+    public synchronized int firstUnchosenInstance() {
+        // Every slot before nextDeliveryInstance has been chosen
+        int instance = nextDeliveryInstance;
+        while (chosenValues.containsKey(instance)) {
+            instance++;
+        }
+        return instance;
+    }
+
+    // First slot that has not been delivered yet, every slot before it is chosen and delivered in order
+    public synchronized int deliveredUpTo() {
+        return nextDeliveryInstance;
+    }
+
+    public synchronized String chosenValue(int instance) {
+        return chosenValues.get(instance);
+    }
+
+    // The client values decided in a slot, more than one when the slot holds a batch
+    public synchronized List<String> chosenValues(int instance) {
+        String value = chosenValues.get(instance);
+        return value == null ? Collections.emptyList() : ValueBatch.decode(value);
+    }
+
+    protected void sendMessage(int recipientId, Message msg) {
+        // Helper method to send a message to a specific member
+        try {
+            transport.send(recipientId, msg);
+            if (metrics != null) {
+                metrics.messageSent(msg.type);
+            }
+        } catch (IOException e) {
+            // Handle exception (recipient may be offline)
+            eventLog.log(id, group, EventLog.Kind.SEND_FAILED, recipientId, msg.type, msg.proposalNumber,
+                    msg.instance, null);
+            if (metrics != null) {
+                metrics.sendFailed(recipientId);
+            }
+        }
+    }
+
+    protected void broadcastMessage(Message msg) {
+        // Helper method to broadcast a message to the members of the current and coming configurations except self
+        for (int memberId : peerIds) {
+            sendMessage(memberId, msg);
+        }
+    }
+
+    protected void sendToMembers(Configuration configuration, Message msg) {
+        for (int memberId : configuration.memberIds) {
             if (memberId != id) {
                 sendMessage(memberId, msg);
             }
@@ -322,8 +2221,8 @@ public class CouncilMember implements Runnable {
     }
 
     protected synchronized int generateProposalNumber() {
-        // Generate a unique proposal number
-        proposalNumber += 1;
-        return proposalNumber * 100 + id;
+        // Generate a unique proposal number, higher than any seen so far so a new round is not rejected outright
+        proposalCounter = Math.max(proposalCounter + 1, highestSeenProposalNumber.get() / proposalNumberStride + 1);
+        return proposalCounter * proposalNumberStride + id;
     }
 }
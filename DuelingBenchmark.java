@@ -0,0 +1,90 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+// Virtual time until a council of 9 decides as more members propose at once, with ballot leasing off and on. Every
+// seed is one run in the deterministic simulator with the default response profile, the proposers chosen from the
+// seed and all of them proposing at time 0, the way Main and testMultipleProposals start. Without a stable leader
+// the run ends when every member has learned the one decision. With stable leaders every proposer's value has to
+// be chosen, as each would otherwise lead and preempt the others in turn. A run that has not finished by
+// MAX_VIRTUAL_MILLIS counts as undecided and is left out of the percentiles
+public class DuelingBenchmark {
+    private static final int MEMBERS = 9;
+    private static final int SEEDS = 200;
+    private static final long MAX_VIRTUAL_MILLIS = 120000;
+
+    public static void main(String[] args) {
+        // Keep the members' event log out of the measurements
+        EventLog.shared().setLevel(EventLog.Level.OFF);
+        for (boolean stableLeader : new boolean[]{false, true}) {
+            for (int proposers = 2; proposers <= MEMBERS; proposers++) {
+                for (boolean leasing : new boolean[]{false, true}) {
+                    measure(stableLeader, proposers, leasing);
+                }
+            }
+        }
+    }
+
+    private static void measure(boolean stableLeader, int proposers, boolean leasing) {
+        List<Long> decidedAfter = new ArrayList<>();
+        for (int seed = 1; seed <= SEEDS; seed++) {
+            Simulator sim = new Simulator(seed, MEMBERS, member -> {
+                member.setStableLeader(stableLeader);
+                if (!leasing) {
+                    member.setLeaseMillis(0);
+                }
+            });
+            List<Integer> ids = new ArrayList<>();
+            for (int id = 1; id <= MEMBERS; id++) {
+                ids.add(id);
+            }
+            Collections.shuffle(ids, new Random(seed));
+            List<String> values = new ArrayList<>();
+            for (int p = 0; p < proposers; p++) {
+                String value = "Candidate_" + (char) ('A' + p);
+                values.add(value);
+                sim.member(ids.get(p)).propose(value);
+            }
+            boolean decided = sim.runUntil(() -> stableLeader ? allChosen(sim, values) : allLearned(sim),
+                    MAX_VIRTUAL_MILLIS);
+            if (decided) {
+                decidedAfter.add(sim.now());
+            }
+        }
+
+        Collections.sort(decidedAfter);
+        System.out.printf("%-14s %d proposers  leasing %-3s  decided %5.1f%%  p50 %7s  p90 %7s  p99 %7s%n",
+                stableLeader ? "stable leader" : "two phase", proposers, leasing ? "on" : "off",
+                100.0 * decidedAfter.size() / SEEDS, percentile(decidedAfter, 0.5), percentile(decidedAfter, 0.9),
+                percentile(decidedAfter, 0.99));
+    }
+
+    private static boolean allLearned(Simulator sim) {
+        for (CouncilMember member : sim.members()) {
+            if (member.learnedValue == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean allChosen(Simulator sim, List<String> values) {
+        CouncilMember member = sim.member(1);
+        Set<String> chosen = new HashSet<>();
+        for (int slot = 0; slot < member.deliveredUpTo(); slot++) {
+            chosen.addAll(member.chosenValues(slot));
+        }
+        return chosen.containsAll(values);
+    }
+
+    private static String percentile(List<Long> sorted, double fraction) {
+        int rank = (int) Math.ceil(fraction * SEEDS) - 1;
+        if (rank >= sorted.size()) {
+            return "-";
+        }
+        return String.format("%.2fs", sorted.get(rank) / 1e3);
+    }
+}
@@ -0,0 +1,359 @@
+import java.io.Closeable;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+// Structured log of protocol events. Members record events as a handful of fields in a preallocated slot of a ring
+// buffer, without locking, formatting or allocating, and a background writer hands them to a Sink in order. An event
+// below the log's level costs one comparison. When the ring is full the event is dropped and counted rather than
+// making the protocol wait for the writer.
+//
+// The ring is a bounded multi-producer single-consumer queue: every slot carries a sequence number saying whether it
+// is free for the producer claiming position p (sequence == p), filled (p + 1), or still being drained
+public class EventLog implements Closeable {
+    public enum Level {
+        DEBUG,
+        INFO,
+        WARN,
+        OFF
+    }
+
+    public enum Kind {
+        // A message was handed to the protocol handlers
+        RECEIVED(Level.DEBUG),
+        // A value was delivered from the log, one event for each client value of a batch
+        LEARNED(Level.INFO),
+        // A reconfiguration was delivered, the instance is the first slot the new members decide
+        RECONFIGURED(Level.INFO),
+        // A reconfiguration was delivered that names no valid council and changes nothing, the value is why
+        INVALID_RECONFIGURATION(Level.WARN),
+        // A message could not be handed to the transport
+        SEND_FAILED(Level.WARN),
+        // A message of a type the member does not handle
+        UNKNOWN_MESSAGE(Level.WARN),
+        // A frame arrived that the codec could not decode and was dropped, the value is why
+        MALFORMED_MESSAGE(Level.WARN);
+
+        public final Level level;
+
+        Kind(Level level) {
+            this.level = level;
+        }
+    }
+
+    // One event. The writer reuses these slots, so a sink that keeps an event beyond write() must keep a copy()
+    public static class Event {
+        public long timeMillis;
+        // The Paxos group the member belongs to, 0 for a council on its own
+        public int group;
+        public int memberId;
+        public Kind kind;
+        // The other member involved: the sender of a received message, the recipient of a failed send, else -1
+        public int peerId;
+        public Message.MessageType messageType;
+        public int proposalNumber;
+        public int instance;
+        public String value;
+
+        public Event copy() {
+            Event copy = new Event();
+            copy.timeMillis = timeMillis;
+            copy.group = group;
+            copy.memberId = memberId;
+            copy.kind = kind;
+            copy.peerId = peerId;
+            copy.messageType = messageType;
+            copy.proposalNumber = proposalNumber;
+            copy.instance = instance;
+            copy.value = value;
+            return copy;
+        }
+
+        // Appends the event as one line of text, the same wording the members used to print
+        public StringBuilder appendTo(StringBuilder line) {
+            line.append("Member ").append(memberId);
+            if (group != 0) {
+                line.append(" of group ").append(group);
+            }
+            switch (kind) {
+                case RECEIVED:
+                    line.append(" received ").append(messageType).append(" from Member ").append(peerId)
+                            .append(" (proposal ").append(proposalNumber).append(", instance ").append(instance);
+                    if (value != null) {
+                        line.append(", value ").append(value);
+                    }
+                    line.append(')');
+                    break;
+                case LEARNED:
+                    line.append(" learned value: ").append(value).append(" (instance ").append(instance).append(')');
+                    break;
+                case RECONFIGURED:
+                    line.append(" reconfigured to ").append(value).append(" from instance ").append(instance);
+                    break;
+                case INVALID_RECONFIGURATION:
+                    line.append(" ignored an invalid reconfiguration in instance ").append(instance).append(": ")
+                            .append(value);
+                    break;
+                case SEND_FAILED:
+                    line.append(" failed to send ").append(messageType).append(" to Member ").append(peerId);
+                    break;
+                case UNKNOWN_MESSAGE:
+                    line.append(" received unknown message type ").append(messageType).append(" from Member ")
+                            .append(peerId);
+                    break;
+                case MALFORMED_MESSAGE:
+                    line.append(" dropped a malformed message: ").append(value);
+                    break;
+            }
+            return line;
+        }
+
+        public String toString() {
+            return appendTo(new StringBuilder()).toString();
+        }
+    }
+
+    // Receives every event in the order it was recorded, always on the writer thread
+    public interface Sink {
+        void write(Event event);
+
+        // Called when the ring has been drained, for sinks that buffer
+        default void flush() {
+        }
+    }
+
+    // Prints each event as a line of text to whatever System.out is at the time it is written
+    public static class ConsoleSink implements Sink {
+        private final StringBuilder line = new StringBuilder();
+
+        public void write(Event event) {
+            line.setLength(0);
+            PrintStream out = System.out;
+            out.println(event.appendTo(line));
+        }
+    }
+
+    // Keeps a copy of every event, for tests that assert on what members did
+    public static class Recorder implements Sink {
+        private final List<Event> events = new ArrayList<>();
+
+        public synchronized void write(Event event) {
+            events.add(event.copy());
+        }
+
+        public synchronized List<Event> events() {
+            return new ArrayList<>(events);
+        }
+
+        // Values the member learned, in the order it delivered them
+        public synchronized List<String> learned(int memberId) {
+            List<String> values = new ArrayList<>();
+            for (Event event : events) {
+                if (event.kind == Kind.LEARNED && event.memberId == memberId) {
+                    values.add(event.value);
+                }
+            }
+            return values;
+        }
+
+        public synchronized int count(int memberId, Kind kind, Message.MessageType messageType) {
+            int count = 0;
+            for (Event event : events) {
+                if (event.memberId == memberId && event.kind == kind && event.messageType == messageType) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        public synchronized void clear() {
+            events.clear();
+        }
+    }
+
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+    // Once the ring runs dry the writer polls it every IDLE_POLL_NANOS for IDLE_POLLS rounds before it waits to be
+    // woken, so a busy log is not woken for every event and an idle one is not woken at all
+    private static final long IDLE_POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final int IDLE_POLLS = 100;
+
+    private static EventLog shared;
+
+    private final Event[] slots;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    // Next position the writer drains, only the writer moves it
+    private volatile long head = 0;
+    // Set while the writer waits for an event with the ring drained, producers wake it only then
+    private volatile boolean parked = false;
+    private final LongAdder dropped = new LongAdder();
+    private volatile Level level;
+    private final Sink sink;
+    private final Thread writer;
+    private volatile boolean closed = false;
+
+    public EventLog(Level level, Sink sink) {
+        this(DEFAULT_CAPACITY, level, sink);
+    }
+
+    // capacity is rounded up to a power of two
+    public EventLog(int capacity, Level level, Sink sink) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        slots = new Event[size];
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            slots[i] = new Event();
+            sequences.set(i, i);
+        }
+        mask = size - 1;
+        this.level = level;
+        this.sink = sink;
+        writer = new Thread(this::drainLoop, "event-log");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    // The log members use unless they are given another: INFO and above, printed to System.out. What is still in
+    // the ring when the JVM exits is written out first
+    public static synchronized EventLog shared() {
+        if (shared == null) {
+            EventLog log = new EventLog(Level.INFO, new ConsoleSink());
+            Runtime.getRuntime().addShutdownHook(new Thread(log::flush, "event-log-flush"));
+            shared = log;
+        }
+        return shared;
+    }
+
+    public void setLevel(Level level) {
+        this.level = level;
+    }
+
+    public Level level() {
+        return level;
+    }
+
+    public boolean isEnabled(Kind kind) {
+        return kind.level.compareTo(level) >= 0;
+    }
+
+    // Events lost because the ring was full
+    public long dropped() {
+        return dropped.sum();
+    }
+
+    public void log(int memberId, Kind kind, int peerId, Message.MessageType messageType, int proposalNumber,
+                    int instance, String value) {
+        log(memberId, 0, kind, peerId, messageType, proposalNumber, instance, value);
+    }
+
+    public void log(int memberId, int group, Kind kind, int peerId, Message.MessageType messageType,
+                    int proposalNumber, int instance, String value) {
+        if (!isEnabled(kind) || closed) {
+            return;
+        }
+        long position;
+        while (true) {
+            position = tail.get();
+            long sequence = sequences.get((int) position & mask);
+            if (sequence == position) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    break;
+                }
+            } else if (sequence < position) {
+                // The writer has not drained this slot from the previous lap yet
+                dropped.increment();
+                return;
+            }
+            // Another producer claimed this position first, try the next one
+        }
+        int index = (int) position & mask;
+        Event event = slots[index];
+        event.timeMillis = System.currentTimeMillis();
+        event.memberId = memberId;
+        event.group = group;
+        event.kind = kind;
+        event.peerId = peerId;
+        event.messageType = messageType;
+        event.proposalNumber = proposalNumber;
+        event.instance = instance;
+        event.value = value;
+        sequences.set(index, position + 1);
+        // The ring went from empty to non-empty while the writer waits for it
+        if (parked) {
+            LockSupport.unpark(writer);
+        }
+    }
+
+    public void received(int memberId, Message msg) {
+        if (isEnabled(Kind.RECEIVED)) {
+            log(memberId, msg.group, Kind.RECEIVED, msg.senderId, msg.type, msg.proposalNumber, msg.instance, msg.value);
+        }
+    }
+
+    // Waits until every event recorded before the call has been written, or the log is closed
+    public void flush() {
+        long target = tail.get();
+        while (head < target && writer.isAlive()) {
+            LockSupport.parkNanos(IDLE_POLL_NANOS / 10);
+        }
+    }
+
+    // Writes out what is already recorded and stops the writer. Later events are ignored
+    public void close() {
+        flush();
+        closed = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void drainLoop() {
+        long position = head;
+        int idlePolls = 0;
+        while (!closed) {
+            int drained = 0;
+            while (true) {
+                int index = (int) position & mask;
+                if (sequences.get(index) != position + 1) {
+                    break;
+                }
+                Event event = slots[index];
+                try {
+                    sink.write(event);
+                } catch (RuntimeException e) {
+                    // A broken sink must not stop the log
+                    e.printStackTrace();
+                }
+                event.value = null;
+                sequences.set(index, position + mask + 1);
+                position++;
+                drained++;
+                head = position;
+            }
+            if (drained > 0) {
+                sink.flush();
+                idlePolls = 0;
+            } else if (idlePolls < IDLE_POLLS) {
+                idlePolls++;
+                LockSupport.parkNanos(IDLE_POLL_NANOS);
+            } else {
+                // Woken by the producer of the next event or by close. The slot is checked again after the flag is
+                // set, its producer may have looked at the flag before
+                parked = true;
+                if (sequences.get((int) position & mask) != position + 1 && !closed) {
+                    LockSupport.park(this);
+                }
+                parked = false;
+            }
+        }
+    }
+}
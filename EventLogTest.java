@@ -0,0 +1,160 @@
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+
+public class EventLogTest {
+    // Holds the writer inside the sink until released, so the ring can be filled
+    private static class BlockingSink extends EventLog.Recorder {
+        final CountDownLatch release = new CountDownLatch(1);
+
+        @Override
+        public void write(EventLog.Event event) {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            super.write(event);
+        }
+    }
+
+    @Test
+    public void testEventsFromEachProducerKeepTheirOrder() throws Exception {
+        EventLog.Recorder recorder = new EventLog.Recorder();
+        // Room for every event, so none is dropped while the writer catches up
+        EventLog log = new EventLog(EventLog.DEFAULT_CAPACITY, EventLog.Level.INFO, recorder);
+        int producers = 8;
+        int eventsEach = 5000;
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 1; p <= producers; p++) {
+            int member = p;
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < eventsEach; i++) {
+                    log.log(member, EventLog.Kind.LEARNED, -1, null, -1, i, "Value_" + i);
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        log.flush();
+
+        // Assertion: every event arrived, and the events of each producer in the order it recorded them
+        Map<Integer, Integer> next = new HashMap<>();
+        List<EventLog.Event> events = recorder.events();
+        for (EventLog.Event event : events) {
+            int expected = next.getOrDefault(event.memberId, 0);
+            assertEquals(expected, event.instance);
+            assertEquals("Value_" + expected, event.value);
+            next.put(event.memberId, expected + 1);
+        }
+        assertEquals(producers * eventsEach, events.size());
+        assertEquals(0, log.dropped());
+        log.close();
+    }
+
+    // Remembers the thread that writes, to see how it waits while the log is idle
+    private static class WriterTrackingSink extends EventLog.Recorder {
+        volatile Thread writer;
+
+        @Override
+        public void write(EventLog.Event event) {
+            writer = Thread.currentThread();
+            super.write(event);
+        }
+    }
+
+    @Test
+    public void testIdleWriterWaitsUntilTheNextEvent() throws Exception {
+        WriterTrackingSink sink = new WriterTrackingSink();
+        EventLog log = new EventLog(EventLog.Level.INFO, sink);
+        // Each event comes once the writer has gone from polling the drained ring to waiting to be woken
+        for (int i = 0; i < 5; i++) {
+            log.log(1, EventLog.Kind.LEARNED, -1, null, -1, i, "Value_" + i);
+            long deadline = System.currentTimeMillis() + 5000;
+            while ((sink.events().size() <= i || sink.writer.getState() != Thread.State.WAITING)
+                    && System.currentTimeMillis() < deadline) {
+                Thread.sleep(1);
+            }
+
+            // Assertion: every event logged to an idle log is written, and the writer then waits without a timeout
+            // instead of polling the ring
+            assertEquals(i + 1, sink.events().size());
+            assertEquals(Thread.State.WAITING, sink.writer.getState());
+        }
+        log.close();
+    }
+
+    @Test
+    public void testFullRingDropsInsteadOfBlocking() throws Exception {
+        BlockingSink sink = new BlockingSink();
+        EventLog log = new EventLog(16, EventLog.Level.INFO, sink);
+        for (int i = 0; i < 100; i++) {
+            log.log(1, EventLog.Kind.LEARNED, -1, null, -1, i, "Value_" + i);
+        }
+
+        // Assertion: the producer returned straight away with the surplus counted as dropped, and what fit in the
+        // ring is written once the writer moves again
+        long dropped = log.dropped();
+        assertTrue(dropped >= 100 - 17);
+        sink.release.countDown();
+        log.flush();
+        assertEquals(100 - dropped, sink.events().size());
+        log.close();
+    }
+
+    @Test
+    public void testLevelFiltersEvents() {
+        EventLog.Recorder recorder = new EventLog.Recorder();
+        EventLog log = new EventLog(EventLog.Level.INFO, recorder);
+        Message prepare = new Message(Message.MessageType.PREPARE, 2, 102, null, 0);
+        log.received(1, prepare);
+        log.log(1, EventLog.Kind.LEARNED, -1, null, -1, 0, "Candidate_A");
+        log.setLevel(EventLog.Level.DEBUG);
+        log.received(1, prepare);
+        log.setLevel(EventLog.Level.OFF);
+        log.log(1, EventLog.Kind.SEND_FAILED, 3, Message.MessageType.PREPARE, 102, 0, null);
+        log.flush();
+
+        // Assertion: the first RECEIVED was below the level and the SEND_FAILED came after logging was turned off
+        List<EventLog.Event> events = recorder.events();
+        assertEquals(2, events.size());
+        assertEquals("Member 1 learned value: Candidate_A (instance 0)", events.get(0).toString());
+        assertEquals("Member 1 received PREPARE from Member 2 (proposal 102, instance 0)", events.get(1).toString());
+        log.close();
+    }
+
+    @Test
+    public void testMalformedFrameIsLogged() throws Exception {
+        EventLog.Recorder recorder = new EventLog.Recorder();
+        EventLog log = new EventLog(EventLog.Level.INFO, recorder);
+        SocketTransport transport = new SocketTransport(7790, Map.of(1, 7790), new BinaryMessageCodec());
+        transport.setEventLog(log);
+        transport.open(1, msg -> fail("Handed on a malformed message"));
+        transport.receiveFrame(new byte[]{BinaryMessageCodec.VERSION + 1, 0});
+        // A frame for group 3 that is cut off after the group
+        transport.receiveFrame(new byte[]{BinaryMessageCodec.VERSION, 0, 3});
+        transport.close();
+        log.flush();
+
+        // Assertion: the frames were dropped through the event log rather than printed, each with the group its
+        // header names
+        List<EventLog.Event> events = recorder.events();
+        assertEquals(2, events.size());
+        assertEquals(EventLog.Kind.MALFORMED_MESSAGE, events.get(0).kind);
+        assertEquals("Member 1 dropped a malformed message: Unsupported message version 5",
+                events.get(0).toString());
+        assertEquals(3, events.get(1).group);
+        assertEquals("Member 1 of group 3 dropped a malformed message: Truncated message frame",
+                events.get(1).toString());
+        log.close();
+    }
+}
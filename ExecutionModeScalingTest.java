@@ -0,0 +1,102 @@
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.HashMap;
+import java.util.Map;
+
+
+// Grows the council and the number of concurrent proposers in one JVM and checks that every size still reaches
+// consensus in both execution modes. The table printed at the end shows the time to consensus and the peak number
+// of platform threads for each size
+public class ExecutionModeScalingTest {
+    private static final int MAX_WAIT_TIME = 30;
+    private static final int[][] SIZES = {
+        // members, concurrent proposals
+        {9, 2},
+        {27, 6},
+        {63, 12}
+    };
+
+    @Before
+    public void setUp() {
+        // Dozens of members learning values would flood the console
+        EventLog.shared().setLevel(EventLog.Level.OFF);
+    }
+
+    @After
+    public void cleanUp() {
+        EventLog.shared().setLevel(EventLog.Level.INFO);
+    }
+
+    private long[] runCouncil(CouncilMember.ExecutionMode mode, int size, int proposals, int basePort) throws Exception {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        threads.resetPeakThreadCount();
+
+        Map<Integer, Integer> memberPorts = new HashMap<>();
+        for (int i = 1; i <= size; i++) {
+            memberPorts.put(i, basePort + i);
+        }
+        CouncilMember[] members = new CouncilMember[size];
+        for (int i = 0; i < size; i++) {
+            members[i] = new CouncilMember(i + 1, basePort + i + 1, memberPorts, new BinaryMessageCodec(), mode);
+            members[i].responseProfile = CouncilMember.ResponseProfile.DELAY_LARGE;
+            new Thread(members[i]).start();
+        }
+        Thread.sleep(500);
+
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < proposals; i++) {
+            members[size - 1 - i].propose("Candidate_" + i);
+        }
+
+        boolean allLearned = false;
+        for (int i = 0; i < MAX_WAIT_TIME * 10 && !allLearned; i++) {
+            allLearned = true;
+            for (CouncilMember member : members) {
+                if (member.learnedValue == null) {
+                    allLearned = false;
+                    break;
+                }
+            }
+            if (!allLearned) {
+                Thread.sleep(100);
+            }
+        }
+        long elapsed = System.currentTimeMillis() - start;
+
+        for (CouncilMember member : members) {
+            member.shutdown();
+        }
+
+        assertTrue(mode + " council of " + size + " did not reach consensus", allLearned);
+        String learnedCandidate = members[0].learnedValue;
+        for (CouncilMember member : members) {
+            assertEquals(learnedCandidate, member.learnedValue);
+        }
+        return new long[] {elapsed, threads.getPeakThreadCount()};
+    }
+
+    @Test
+    public void testScalingPerExecutionMode() throws Exception {
+        StringBuilder report = new StringBuilder("mode      members proposals  consensus ms  peak threads\n");
+        int basePort = 9000;
+        long[] peakThreads = new long[CouncilMember.ExecutionMode.values().length];
+        for (CouncilMember.ExecutionMode mode : CouncilMember.ExecutionMode.values()) {
+            for (int[] size : SIZES) {
+                long[] result = runCouncil(mode, size[0], size[1], basePort);
+                basePort += size[0] + 1;
+                peakThreads[mode.ordinal()] = Math.max(peakThreads[mode.ordinal()], result[1]);
+                report.append(String.format("%-9s %7d %9d %13d %13d%n", mode, size[0], size[1], result[0], result[1]));
+            }
+        }
+        System.out.print(report);
+
+        // Delayed messages park their virtual thread instead of holding a platform thread each
+        assertTrue(peakThreads[CouncilMember.ExecutionMode.VIRTUAL.ordinal()]
+                < peakThreads[CouncilMember.ExecutionMode.PLATFORM.ordinal()]);
+    }
+}
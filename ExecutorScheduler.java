@@ -0,0 +1,41 @@
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+// Wall clock scheduler running its tasks on daemon threads, a single one unless it is shared by many members
+public class ExecutorScheduler implements Scheduler {
+    private final ScheduledThreadPoolExecutor executor;
+
+    public ExecutorScheduler(String name) {
+        this(name, 1);
+    }
+
+    public ExecutorScheduler(String name, int threads) {
+        executor = new ScheduledThreadPoolExecutor(threads, runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Most phase timeouts are cancelled long before they are due, drop them from the queue straight away
+        executor.setRemoveOnCancelPolicy(true);
+    }
+
+    public Task schedule(Runnable task, long delayMillis) {
+        ScheduledFuture<?> future = executor.schedule(task, delayMillis, TimeUnit.MILLISECONDS);
+        return () -> future.cancel(false);
+    }
+
+    public Task scheduleAtFixedRate(Runnable task, long initialDelayMillis, long periodMillis) {
+        ScheduledFuture<?> future = executor.scheduleAtFixedRate(task, initialDelayMillis, periodMillis,
+                TimeUnit.MILLISECONDS);
+        return () -> future.cancel(false);
+    }
+
+    public long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
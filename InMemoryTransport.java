@@ -0,0 +1,57 @@
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.Consumer;
+
+// Transport for running many members in one JVM without sockets. All members on the same Network hand messages
+// straight to each other's receiver, which queues them on the member's protocol executor, so sending costs no more
+// than a queue insert. Messages are not copied: a receiver must treat what it is handed as read only
+public class InMemoryTransport implements Transport {
+    // Members that can reach each other, by id
+    public static class Network {
+        private final Map<Integer, Consumer<Message>> receivers = new ConcurrentHashMap<>();
+
+        void deliver(int recipientId, Message msg) throws IOException {
+            Consumer<Message> receiver = receivers.get(recipientId);
+            if (receiver == null) {
+                throw new IOException("Member " + recipientId + " is not reachable");
+            }
+            receiver.accept(msg);
+        }
+    }
+
+    private final Network network;
+    private int memberId;
+    private final CountDownLatch closed = new CountDownLatch(1);
+
+    public InMemoryTransport(Network network) {
+        this.network = network;
+    }
+
+    public void open(int memberId, Consumer<Message> receiver) {
+        this.memberId = memberId;
+        network.receivers.put(memberId, receiver);
+    }
+
+    public void run() {
+        // Messages are delivered on the sender's thread, there is nothing to serve here
+        try {
+            closed.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public void send(int recipientId, Message msg) throws IOException {
+        if (closed.getCount() == 0) {
+            throw new IOException("Transport closed");
+        }
+        network.deliver(recipientId, msg);
+    }
+
+    public void close() {
+        network.receivers.remove(memberId);
+        closed.countDown();
+    }
+}
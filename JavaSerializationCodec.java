@@ -0,0 +1,20 @@
+import java.io.*;
+
+// Codec using standard Java serialization, kept for compatibility with the original wire format
+public class JavaSerializationCodec implements MessageCodec {
+    public byte[] encode(Message msg) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(msg);
+        }
+        return bytes.toByteArray();
+    }
+
+    public Message decode(byte[] frame) throws IOException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(frame))) {
+            return (Message) in.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Frame does not contain a Message", e);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.*;
+
+// Throughput of the replicated key-value store over TCP against the size of the council. A fixed number of clients
+// on the leader's process each alternate a put and a get of a random key, waiting for each before issuing the next.
+// Gets either go through the log like puts or are served by the leader with a read index. The leader has a
+// pipeline window of 16 and batches values, every member applies every command to its own store
+public class KeyValueBenchmark {
+    private static final int[] SIZES = {3, 5, 7, 9, 15};
+    private static final int CLIENTS = 64;
+    private static final int OPS_PER_CLIENT = 200;
+    private static final int KEYS = 1024;
+    private static final int WINDOW = 16;
+
+    public static void main(String[] args) throws Exception {
+        // Keep the members' event log out of the measurements
+        EventLog.shared().setLevel(EventLog.Level.OFF);
+
+        int basePort = 7800;
+        for (boolean leaderReads : new boolean[]{false, true}) {
+            for (int size : SIZES) {
+                long[] latencies = new long[CLIENTS * OPS_PER_CLIENT];
+                double seconds = measure(size, leaderReads, basePort, latencies);
+                basePort += 20;
+                Arrays.sort(latencies);
+                System.out.printf("%2d members  gets %-12s %9.0f ops/s  p50 %8.2f ms  p99 %8.2f ms%n", size,
+                        leaderReads ? "read index" : "through log", latencies.length / seconds,
+                        latencies[latencies.length / 2] / 1e6, latencies[(int) (latencies.length * 0.99)] / 1e6);
+            }
+        }
+    }
+
+    private static double measure(int size, boolean leaderReads, int basePort, long[] latencies) throws Exception {
+        Map<Integer, Integer> memberPorts = new HashMap<>();
+        for (int i = 1; i <= size; i++) {
+            memberPorts.put(i, basePort + i);
+        }
+        CouncilMember[] members = new CouncilMember[size];
+        for (int i = 0; i < size; i++) {
+            members[i] = new CouncilMember(i + 1, basePort + i + 1, memberPorts);
+            members[i].responseProfile = CouncilMember.ResponseProfile.IMMEDIATE;
+            members[i].setStableLeader(true);
+            members[i].setStateMachine(new KeyValueStore());
+            new Thread(members[i]).start();
+        }
+        CouncilMember leader = members[0];
+        leader.setPipelineWindow(WINDOW);
+        leader.setBatching(64, 0);
+        Thread.sleep(200);
+        // The leader wins phase 1 with the first command, leader reads are only served once it leads
+        new KeyValueClient(leader, "warm-up").put("warm-up", "0").get(30, TimeUnit.SECONDS);
+
+        ExecutorService clients = Executors.newFixedThreadPool(CLIENTS);
+        long start = System.nanoTime();
+        for (int c = 0; c < CLIENTS; c++) {
+            int client = c;
+            KeyValueClient kv = new KeyValueClient(leader, "client-" + c);
+            clients.execute(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < OPS_PER_CLIENT; i++) {
+                    String key = "key-" + random.nextInt(KEYS);
+                    long opStart = System.nanoTime();
+                    try {
+                        if (i % 2 == 0) {
+                            kv.put(key, "value-" + client + "-" + i).get(30, TimeUnit.SECONDS);
+                        } else if (leaderReads) {
+                            kv.read(key).get(30, TimeUnit.SECONDS);
+                        } else {
+                            kv.get(key).get(30, TimeUnit.SECONDS);
+                        }
+                    } catch (InterruptedException e) {
+                        return;
+                    } catch (ExecutionException | TimeoutException e) {
+                        throw new IllegalStateException("Command failed", e);
+                    }
+                    latencies[client * OPS_PER_CLIENT + i] = System.nanoTime() - opStart;
+                }
+            });
+        }
+        clients.shutdown();
+        clients.awaitTermination(5, TimeUnit.MINUTES);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        for (CouncilMember member : members) {
+            member.shutdown();
+        }
+        return seconds;
+    }
+}
@@ -0,0 +1,44 @@
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Client of a replicated KeyValueStore in the same process as one of the council's members. Commands are submitted
+// through that member and complete once it has applied them, with the key's value before a put or delete and its
+// value for a get. A get goes through the log like the other commands; read goes through CouncilMember.read
+// instead, which only the leader of a stable council serves but without a consensus round.
+//
+// Request IDs are the client ID and a sequence number, so client IDs must be unique in the council
+public class KeyValueClient {
+    private final CouncilMember member;
+    private final KeyValueStore store;
+    private final String clientId;
+    private final AtomicLong sequence = new AtomicLong();
+
+    public KeyValueClient(CouncilMember member, String clientId) {
+        if (!(member.stateMachine() instanceof KeyValueStore)) {
+            throw new IllegalArgumentException("Member " + member.id + " does not apply commands to a key-value store");
+        }
+        this.member = member;
+        this.store = (KeyValueStore) member.stateMachine();
+        this.clientId = clientId;
+    }
+
+    public CompletableFuture<String> put(String key, String value) {
+        return member.submit(KeyValueStore.put(nextRequestId(), key, value));
+    }
+
+    public CompletableFuture<String> get(String key) {
+        return member.submit(KeyValueStore.get(nextRequestId(), key));
+    }
+
+    public CompletableFuture<String> delete(String key) {
+        return member.submit(KeyValueStore.delete(nextRequestId(), key));
+    }
+
+    public CompletableFuture<String> read(String key) {
+        return member.read(() -> store.value(key));
+    }
+
+    private String nextRequestId() {
+        return clientId + "-" + sequence.incrementAndGet();
+    }
+}
@@ -0,0 +1,116 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Replicated hash map. Clients put, get and delete keys by proposing commands, and every member applies the chosen
+// commands to its own copy. A command's result is the key's value before a PUT or DELETE and its current value for
+// a GET. Values in the log that are not commands are left alone, so a council can carry other values as well.
+//
+// Command encoding: the MARKER prefix, then the operation, the request ID, the key and for a PUT the value, each
+// as its length in decimal, a ':' and the field itself. The request ID keeps commands unique, so a client can tell
+// its own command apart from an identical one. A snapshot holds every key followed by its value in the same form
+public class KeyValueStore implements StateMachine {
+    public static final String MARKER = "\u0000kv:";
+    public static final String PUT = "PUT";
+    public static final String GET = "GET";
+    public static final String DELETE = "DELETE";
+
+    private final Map<String, String> entries = new HashMap<>();
+
+    public static String put(String requestId, String key, String value) {
+        return encode(MARKER, PUT, requestId, key, value);
+    }
+
+    public static String get(String requestId, String key) {
+        return encode(MARKER, GET, requestId, key);
+    }
+
+    public static String delete(String requestId, String key) {
+        return encode(MARKER, DELETE, requestId, key);
+    }
+
+    public static boolean isCommand(String value) {
+        return value != null && value.startsWith(MARKER);
+    }
+
+    public synchronized String apply(String command) {
+        if (!isCommand(command)) {
+            return null;
+        }
+        List<String> fields = decode(command, MARKER.length());
+        if (fields.size() < 3) {
+            throw new IllegalArgumentException("Malformed key-value command");
+        }
+        String key = fields.get(2);
+        switch (fields.get(0)) {
+            case PUT:
+                if (fields.size() != 4) {
+                    throw new IllegalArgumentException("PUT without a value");
+                }
+                return entries.put(key, fields.get(3));
+            case GET:
+                return entries.get(key);
+            case DELETE:
+                return entries.remove(key);
+            default:
+                throw new IllegalArgumentException("Unknown key-value operation " + fields.get(0));
+        }
+    }
+
+    // The value as this member has applied it so far, which can be behind the council. Use it through
+    // CouncilMember.read for a linearizable read
+    public synchronized String value(String key) {
+        return entries.get(key);
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized String snapshot() {
+        List<String> fields = new ArrayList<>(2 * entries.size());
+        for (Map.Entry<String, String> entry : entries.entrySet()) {
+            fields.add(entry.getKey());
+            fields.add(entry.getValue());
+        }
+        return encode("", fields.toArray(new String[0]));
+    }
+
+    public synchronized void restore(String snapshot) {
+        entries.clear();
+        if (snapshot == null) {
+            return;
+        }
+        List<String> fields = decode(snapshot, 0);
+        for (int i = 0; i + 1 < fields.size(); i += 2) {
+            entries.put(fields.get(i), fields.get(i + 1));
+        }
+    }
+
+    private static String encode(String prefix, String... fields) {
+        StringBuilder encoded = new StringBuilder(prefix);
+        for (String field : fields) {
+            encoded.append(field.length()).append(':').append(field);
+        }
+        return encoded.toString();
+    }
+
+    private static List<String> decode(String encoded, int pos) {
+        List<String> fields = new ArrayList<>();
+        while (pos < encoded.length()) {
+            int separator = encoded.indexOf(':', pos);
+            if (separator < 0) {
+                throw new IllegalArgumentException("Malformed key-value encoding");
+            }
+            int length = Integer.parseInt(encoded, pos, separator, 10);
+            int start = separator + 1;
+            if (length < 0 || start + length > encoded.length()) {
+                throw new IllegalArgumentException("Malformed key-value encoding");
+            }
+            fields.add(encoded.substring(start, start + length));
+            pos = start + length;
+        }
+        return fields;
+    }
+}
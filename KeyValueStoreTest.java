@@ -0,0 +1,150 @@
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+public class KeyValueStoreTest {
+    private static final long MAX_VIRTUAL_MILLIS = 60000;
+
+    @Before
+    public void setUp() {
+        EventLog.shared().setLevel(EventLog.Level.OFF);
+    }
+
+    @After
+    public void cleanUp() {
+        EventLog.shared().setLevel(EventLog.Level.INFO);
+    }
+
+    @Test
+    public void testAppliesCommands() {
+        KeyValueStore store = new KeyValueStore();
+
+        // Assertion: each command returns the value the key had before it
+        assertNull(store.apply(KeyValueStore.put("c-1", "colour", "blue")));
+        assertEquals("blue", store.apply(KeyValueStore.put("c-2", "colour", "red")));
+        assertEquals("red", store.apply(KeyValueStore.get("c-3", "colour")));
+        assertEquals("red", store.apply(KeyValueStore.delete("c-4", "colour")));
+        assertNull(store.apply(KeyValueStore.get("c-5", "colour")));
+
+        // Assertion: values that are not commands leave the store alone
+        assertNull(store.apply("Candidate_A"));
+        assertEquals(0, store.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsMalformedCommand() {
+        new KeyValueStore().apply(KeyValueStore.MARKER + "3:PUT");
+    }
+
+    @Test
+    public void testSnapshotRoundTrip() {
+        KeyValueStore store = new KeyValueStore();
+        store.apply(KeyValueStore.put("c-1", "a:1", "3:x"));
+        store.apply(KeyValueStore.put("c-2", "", "empty key"));
+        store.apply(KeyValueStore.put("c-3", "b", ""));
+
+        KeyValueStore restored = new KeyValueStore();
+        restored.apply(KeyValueStore.put("c-4", "stale", "gone after restore"));
+        restored.restore(store.snapshot());
+
+        // Assertion: keys and values survive the snapshot, separators in them included
+        assertEquals(3, restored.size());
+        assertEquals("3:x", restored.value("a:1"));
+        assertEquals("empty key", restored.value(""));
+        assertEquals("", restored.value("b"));
+        assertNull(restored.value("stale"));
+        restored.restore(null);
+        assertEquals(0, restored.size());
+    }
+
+    @Test
+    public void testReplicasApplyCommandsInLogOrder() throws Exception {
+        Simulator sim = new Simulator(41, 5, member -> {
+            member.setStableLeader(true);
+            member.setStateMachine(new KeyValueStore());
+            try {
+                member.enableSnapshots(2, null);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        sim.crash(5, 0);
+        KeyValueClient viaLeader = new KeyValueClient(sim.member(1), "leader-client");
+        KeyValueClient viaFollower = new KeyValueClient(sim.member(3), "follower-client");
+
+        CompletableFuture<String> first = viaLeader.put("x", "1");
+        assertTrue(sim.runUntil(first::isDone, MAX_VIRTUAL_MILLIS));
+        CompletableFuture<String> second = viaFollower.put("x", "2");
+        assertTrue(sim.runUntil(second::isDone, MAX_VIRTUAL_MILLIS));
+        CompletableFuture<String> removed = viaLeader.delete("x");
+        CompletableFuture<String> other = viaFollower.put("y", "3");
+        assertTrue(sim.runUntil(() -> removed.isDone() && other.isDone(), MAX_VIRTUAL_MILLIS));
+        CompletableFuture<String> get = viaFollower.get("y");
+        assertTrue(sim.runUntil(get::isDone, MAX_VIRTUAL_MILLIS));
+
+        // Assertion: each command saw the state left by the ones decided before it
+        assertNull(first.get());
+        assertEquals("1", second.get());
+        assertEquals("2", removed.get());
+        assertEquals("3", get.get());
+
+        // Assertion: a member that was down the whole time rebuilt the same store from a snapshot and the log tail
+        sim.restart(5, sim.now() + 10);
+        int slots = sim.member(1).deliveredUpTo();
+        assertTrue(sim.runUntil(() -> !sim.isCrashed(5) && sim.member(5).deliveredUpTo() == slots,
+                MAX_VIRTUAL_MILLIS));
+        for (CouncilMember member : sim.members()) {
+            KeyValueStore store = (KeyValueStore) member.stateMachine();
+            assertEquals(1, store.size());
+            assertEquals("3", store.value("y"));
+        }
+
+        // Assertion: a read on the leader sees the store without going through the log
+        CompletableFuture<String> read = viaLeader.read("y");
+        assertTrue(sim.runUntil(read::isDone, MAX_VIRTUAL_MILLIS));
+        assertEquals("3", read.get());
+        sim.checkSafety();
+    }
+
+    @Test
+    public void testConcurrentCommandsWithoutStableLeaderAllComplete() throws Exception {
+        Simulator sim = new Simulator(61, 5, member -> member.setStateMachine(new KeyValueStore()));
+        // One client per member, each with a client ID of its own
+        int[] memberIds = {1, 4};
+        KeyValueClient[] clients = new KeyValueClient[memberIds.length];
+        for (int c = 0; c < memberIds.length; c++) {
+            clients[c] = new KeyValueClient(sim.member(memberIds[c]), "client-" + memberIds[c]);
+        }
+        List<CompletableFuture<String>> results = new ArrayList<>();
+        // Two members propose at once, each with several commands in flight, so slots are contested
+        for (int i = 0; i < 5; i++) {
+            for (int c = 0; c < memberIds.length; c++) {
+                results.add(clients[c].put("key-" + memberIds[c], "value-" + i));
+            }
+        }
+        assertTrue(sim.runUntil(() -> results.stream().allMatch(CompletableFuture::isDone), MAX_VIRTUAL_MILLIS));
+
+        // Assertion: every command was decided in a slot of its own and applied once, so each key holds its
+        // member's last put
+        assertTrue(sim.runUntil(() -> sim.members().stream().allMatch(m -> m.deliveredUpTo() == 10),
+                sim.now() + MAX_VIRTUAL_MILLIS));
+        for (CouncilMember member : sim.members()) {
+            KeyValueStore store = (KeyValueStore) member.stateMachine();
+            assertEquals("value-4", store.value("key-1"));
+            assertEquals("value-4", store.value("key-4"));
+        }
+        for (CompletableFuture<String> result : results) {
+            assertFalse(result.isCompletedExceptionally());
+        }
+        sim.runFor(5000);
+        assertEquals(10, sim.member(1).deliveredUpTo());
+        sim.checkSafety();
+    }
+}
@@ -0,0 +1,67 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+// Commit latency of sequential proposals from one member, running both phases for every value against a stable
+// leader that skips phase 1 after its first round
+public class LeaderBenchmark {
+    private static final int COMMITS = 500;
+    private static final int WARMUP = 50;
+    private static final int MEMBERS = 9;
+    private static final long TIMEOUT_MILLIS = 30000;
+
+    public static void main(String[] args) throws Exception {
+        // Keep the members' event log out of the measurements
+        EventLog.shared().setLevel(EventLog.Level.OFF);
+
+        int basePort = 7400;
+        for (boolean stableLeader : new boolean[]{false, true}) {
+            long[] latencies = measure(stableLeader, basePort);
+            basePort += 10;
+            Arrays.sort(latencies);
+            double mean = Arrays.stream(latencies).average().orElse(0) / 1e3;
+            System.out.printf("%-14s mean %8.1f us  p50 %8.1f us  p99 %8.1f us  %8.0f commits/s%n",
+                    stableLeader ? "stable leader" : "two phase", mean,
+                    latencies[latencies.length / 2] / 1e3,
+                    latencies[(int) (latencies.length * 0.99)] / 1e3,
+                    1e6 / mean);
+        }
+    }
+
+    private static long[] measure(boolean stableLeader, int basePort) throws Exception {
+        Map<Integer, Integer> memberPorts = new HashMap<>();
+        for (int i = 1; i <= MEMBERS; i++) {
+            memberPorts.put(i, basePort + i);
+        }
+        CouncilMember[] members = new CouncilMember[MEMBERS];
+        for (int i = 0; i < MEMBERS; i++) {
+            members[i] = new CouncilMember(i + 1, basePort + i + 1, memberPorts);
+            members[i].responseProfile = CouncilMember.ResponseProfile.IMMEDIATE;
+            members[i].setStableLeader(stableLeader);
+            new Thread(members[i]).start();
+        }
+        Thread.sleep(200);
+
+        long[] latencies = new long[COMMITS];
+        CouncilMember proposer = members[0];
+        for (int i = 0; i < WARMUP + COMMITS; i++) {
+            long start = System.nanoTime();
+            proposer.propose("Value_" + i);
+            long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+            while (proposer.firstUnchosenInstance() <= i) {
+                if (System.currentTimeMillis() > deadline) {
+                    throw new IllegalStateException("Commit " + i + " timed out");
+                }
+                Thread.onSpinWait();
+            }
+            if (i >= WARMUP) {
+                latencies[i - WARMUP] = System.nanoTime() - start;
+            }
+        }
+
+        for (CouncilMember member : members) {
+            member.shutdown();
+        }
+        return latencies;
+    }
+}
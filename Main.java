@@ -9,6 +9,9 @@ public class Main {
             memberPorts.put(i, 5000 + i);
         }
 
+        // The transcript of a run includes every message each member receives
+        EventLog.shared().setLevel(EventLog.Level.DEBUG);
+
         CouncilMember[] members = new CouncilMember[9];
         
         for (int i = 0; i < 9; i++) {
@@ -35,8 +38,7 @@ public class Main {
 
         // Stop all member threads
         for (CouncilMember member : members) {
-            member.isRunning = false;
-            member.serverSocket.close();
+            member.shutdown();
         }
     }
 }
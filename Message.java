@@ -1,4 +1,5 @@
 import java.io.Serializable;
+import java.util.List;
 
 public class Message implements Serializable {
     public enum MessageType {
@@ -6,18 +7,66 @@ public class Message implements Serializable {
         PROMISE,
         ACCEPT_REQUEST,
         ACCEPTED,
-        LEARN
+        LEARN,
+        HEARTBEAT,
+        // A member that fell behind asks for the slots from its instance onwards
+        CATCH_UP_REQUEST,
+        // Reply to CATCH_UP_REQUEST. acceptedProposalNumber and acceptedValue carry a snapshot (slot it covers up to
+        // and the state) or -1 when none is needed, entries the chosen values after it, and proposalNumber the
+        // first slot the sender has not delivered, so the receiver knows whether to ask again
+        CATCH_UP,
+        // An acceptor turned down a PREPARE or ACCEPT_REQUEST. proposalNumber and instance are those of the
+        // rejected message and acceptedProposalNumber the higher number the acceptor has promised, so the proposer
+        // knows at once that it was preempted and how far to raise its next proposal number. A PREPARE turned down
+        // for another member's lease carries the lease holder's proposal number instead, which can be lower
+        NACK,
+        // A client value handed to the lease holder to propose, by a member that is not allowed to propose itself
+        FORWARD,
+        // A leader checking that it still leads before it serves reads. proposalNumber is the leader's and instance
+        // numbers the check
+        READ_INDEX,
+        // Reply to READ_INDEX, echoing its proposalNumber and instance. acceptedProposalNumber is the highest
+        // proposal number the acceptor has seen, the leader may have been replaced when it is higher than its own
+        READ_INDEX_ACK
+    }
+
+    // A value accepted in a slot, used by PROMISE to report the slots after the prepared instance
+    public static class Entry implements Serializable {
+        public int instance;
+        public int proposalNumber;
+        public String value;
+
+        public Entry(int instance, int proposalNumber, String value) {
+            this.instance = instance;
+            this.proposalNumber = proposalNumber;
+            this.value = value;
+        }
+
+        public String toString() {
+            return instance + ":" + proposalNumber + "='" + value + '\'';
+        }
     }
 
     public MessageType type;
+    // Paxos group the message belongs to, when the members of several groups share one transport. A council on
+    // its own is group 0
+    public int group;
     public int senderId;
+    // Slot of the replicated log this message is about
+    public int instance;
     public int proposalNumber;
     public String value;
     public int acceptedProposalNumber;
     public String acceptedValue;
+    public List<Entry> entries;
 
     public Message(MessageType type, int senderId, int proposalNumber, String value) {
+        this(type, senderId, proposalNumber, value, 0);
+    }
+
+    public Message(MessageType type, int senderId, int proposalNumber, String value, int instance) {
         this.type = type;
+        this.instance = instance;
         this.senderId = senderId;
         this.proposalNumber = proposalNumber;
         this.value = value;
@@ -27,7 +76,13 @@ public class Message implements Serializable {
 
     // Overloaded constructor for Promise messages
     public Message(MessageType type, int senderId, int proposalNumber, int acceptedProposalNumber, String acceptedValue) {
+        this(type, senderId, proposalNumber, acceptedProposalNumber, acceptedValue, 0);
+    }
+
+    public Message(MessageType type, int senderId, int proposalNumber, int acceptedProposalNumber, String acceptedValue,
+                   int instance) {
         this.type = type;
+        this.instance = instance;
         this.senderId = senderId;
         this.proposalNumber = proposalNumber;
         this.value = null;
@@ -38,11 +93,14 @@ public class Message implements Serializable {
     public String toString() {
         return "Message{" +
                 "type=" + type +
+                (group == 0 ? "" : ", group=" + group) +
                 ", senderId=" + senderId +
+                ", instance=" + instance +
                 ", proposalNumber=" + proposalNumber +
                 ", value='" + value + '\'' +
                 ", acceptedProposalNumber=" + acceptedProposalNumber +
                 ", acceptedValue='" + acceptedValue + '\'' +
+                (entries == null ? "" : ", entries=" + entries) +
                 '}';
     }
 }
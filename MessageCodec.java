@@ -0,0 +1,13 @@
+import java.io.IOException;
+
+// Turns a Message into the bytes of a single frame and back. All members of a council must use the same codec
+public interface MessageCodec {
+    byte[] encode(Message msg) throws IOException;
+
+    Message decode(byte[] frame) throws IOException;
+
+    // The group a frame that failed to decode was sent to, as far as its header can still be read, 0 otherwise
+    default int group(byte[] frame) {
+        return 0;
+    }
+}
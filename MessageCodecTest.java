@@ -0,0 +1,150 @@
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+
+public class MessageCodecTest {
+    private final MessageCodec binary = new BinaryMessageCodec();
+    private final MessageCodec java = new JavaSerializationCodec();
+
+    private static void assertSameMessage(Message expected, Message actual) {
+        assertEquals(expected.type, actual.type);
+        assertEquals(expected.group, actual.group);
+        assertEquals(expected.senderId, actual.senderId);
+        assertEquals(expected.instance, actual.instance);
+        assertEquals(expected.proposalNumber, actual.proposalNumber);
+        assertEquals(expected.value, actual.value);
+        assertEquals(expected.acceptedProposalNumber, actual.acceptedProposalNumber);
+        assertEquals(expected.acceptedValue, actual.acceptedValue);
+        assertEquals(expected.entries == null, actual.entries == null);
+        if (expected.entries != null) {
+            assertEquals(expected.entries.size(), actual.entries.size());
+            for (int i = 0; i < expected.entries.size(); i++) {
+                assertEquals(expected.entries.get(i).instance, actual.entries.get(i).instance);
+                assertEquals(expected.entries.get(i).proposalNumber, actual.entries.get(i).proposalNumber);
+                assertEquals(expected.entries.get(i).value, actual.entries.get(i).value);
+            }
+        }
+    }
+
+    private static Message[] sampleMessages() {
+        Message promiseWithEntries = new Message(Message.MessageType.PROMISE, 7, 412, 305, "Candidate_A", 3);
+        promiseWithEntries.entries = Arrays.asList(
+            new Message.Entry(4, 305, "Candidate_B"),
+            new Message.Entry(9, 211, null)
+        );
+        Message acceptInGroup = new Message(Message.MessageType.ACCEPT_REQUEST, 2, 502, "Candidate_E", 40);
+        acceptInGroup.group = 63;
+        Message learnInGroup = new Message(Message.MessageType.LEARN, 3, 603, "Candidate_F", 41);
+        learnInGroup.group = 1000;
+        return new Message[] {
+            new Message(Message.MessageType.PREPARE, 8, 108, null),
+            new Message(Message.MessageType.PROMISE, 1, 108, -1, null),
+            new Message(Message.MessageType.PROMISE, 4, 209, 108, "Candidate_A"),
+            new Message(Message.MessageType.ACCEPT_REQUEST, 9, 209, "Candidate_A"),
+            new Message(Message.MessageType.ACCEPTED, 2, Integer.MAX_VALUE, "Candidate_B"),
+            new Message(Message.MessageType.LEARN, 9, Integer.MIN_VALUE, "Kandidát_Ω 候选人"),
+            new Message(Message.MessageType.ACCEPT_REQUEST, 3, 103, ""),
+            new Message(Message.MessageType.PROMISE, 5, 305, 204, "Candidate_C", 1000000),
+            new Message(Message.MessageType.LEARN, 6, 106, "Candidate_D", 17),
+            new Message(Message.MessageType.HEARTBEAT, 8, 10808, null),
+            promiseWithEntries,
+            acceptInGroup,
+            learnInGroup
+        };
+    }
+
+    @Test
+    public void testBinaryRoundTrip() throws Exception {
+        for (Message msg : sampleMessages()) {
+            assertSameMessage(msg, binary.decode(binary.encode(msg)));
+        }
+    }
+
+    @Test
+    public void testJavaSerializationRoundTrip() throws Exception {
+        for (Message msg : sampleMessages()) {
+            assertSameMessage(msg, java.decode(java.encode(msg)));
+        }
+    }
+
+    @Test
+    public void testBinaryIsSmallerThanJavaSerialization() throws Exception {
+        for (Message msg : sampleMessages()) {
+            assertTrue(binary.encode(msg).length * 4 < java.encode(msg).length);
+        }
+    }
+
+    @Test
+    public void testPrepareFitsInAFewBytes() throws Exception {
+        // version, type, group, four one or two byte varints, two null strings and no entries
+        assertTrue(binary.encode(new Message(Message.MessageType.PREPARE, 8, 108, null)).length <= 11);
+    }
+
+    @Test
+    public void testReadsSingleDecreeFrames() throws Exception {
+        // version 1, LEARN, sender 9, proposal 109, accepted -1, value "A", no accepted value
+        byte[] frame = {1, 4, 18, (byte) 0xDA, 0x01, 1, 2, 'A', 0};
+        Message msg = binary.decode(frame);
+        assertEquals(Message.MessageType.LEARN, msg.type);
+        assertEquals(9, msg.senderId);
+        assertEquals(0, msg.instance);
+        assertEquals(109, msg.proposalNumber);
+        assertEquals(-1, msg.acceptedProposalNumber);
+        assertEquals("A", msg.value);
+        assertNull(msg.acceptedValue);
+    }
+
+    @Test
+    public void testReadsFramesWithoutEntries() throws Exception {
+        // version 2, ACCEPTED, sender 2, instance 5, proposal 108, accepted -1, value "A", no accepted value
+        byte[] frame = {2, 3, 4, 10, (byte) 0xD8, 0x01, 1, 2, 'A', 0};
+        Message msg = binary.decode(frame);
+        assertEquals(Message.MessageType.ACCEPTED, msg.type);
+        assertEquals(5, msg.instance);
+        assertEquals(108, msg.proposalNumber);
+        assertEquals("A", msg.value);
+        assertNull(msg.entries);
+    }
+
+    @Test
+    public void testReadsFramesWithoutGroup() throws Exception {
+        // version 3, HEARTBEAT, sender 1, instance 0, proposal 101, accepted -1, no values, no entries
+        byte[] frame = {3, 5, 2, 0, (byte) 0xCA, 0x01, 1, 0, 0, 0};
+        Message msg = binary.decode(frame);
+        assertEquals(Message.MessageType.HEARTBEAT, msg.type);
+        assertEquals(0, msg.group);
+        assertEquals(1, msg.senderId);
+        assertEquals(101, msg.proposalNumber);
+        assertNull(msg.entries);
+    }
+
+    @Test(expected = IOException.class)
+    public void testUnknownVersionRejected() throws Exception {
+        byte[] frame = binary.encode(sampleMessages()[0]);
+        frame[0] = BinaryMessageCodec.VERSION + 1;
+        binary.decode(frame);
+    }
+
+    @Test(expected = IOException.class)
+    public void testUnknownTypeRejected() throws Exception {
+        byte[] frame = binary.encode(sampleMessages()[0]);
+        frame[1] = 100;
+        binary.decode(frame);
+    }
+
+    @Test
+    public void testTruncatedFrameRejected() throws Exception {
+        byte[] frame = binary.encode(sampleMessages()[3]);
+        for (int length = 0; length < frame.length; length++) {
+            try {
+                binary.decode(Arrays.copyOf(frame, length));
+                fail("Decoded a frame truncated to " + length + " bytes");
+            } catch (IOException e) {
+                // expected
+            }
+        }
+    }
+}
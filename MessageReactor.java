@@ -0,0 +1,174 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.util.Iterator;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+// Non-blocking acceptor for a council member. A single thread accepts connections and reads the length prefixed
+// frames off all of them with one Selector, handing every complete frame to the frame handler. The handler is
+// called on the reactor thread, so it should only decode and hand the message off
+public class MessageReactor implements Runnable {
+    // Upper bound for a single frame, anything larger means the stream is corrupt
+    public static final int MAX_FRAME_LENGTH = 16 * 1024 * 1024;
+    private static final int READ_BUFFER_SIZE = 8192;
+    private static final long CLOSE_TIMEOUT_MILLIS = 5000;
+    // Connections waiting to be accepted. The default of 50 overflows when a large council dials a member all at
+    // once, and the SYNs it drops are only sent again a second or more later
+    private static final int LISTEN_BACKLOG = 1024;
+
+    private final ServerSocketChannel serverChannel;
+    private final Selector selector;
+    private final Consumer<byte[]> frameHandler;
+
+    private volatile boolean running = true;
+    private volatile Thread reactorThread;
+    private final CountDownLatch stopped = new CountDownLatch(1);
+
+    public MessageReactor(int port, Consumer<byte[]> frameHandler) throws IOException {
+        this.frameHandler = frameHandler;
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        try {
+            serverChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            serverChannel.bind(new InetSocketAddress(port), LISTEN_BACKLOG);
+            serverChannel.configureBlocking(false);
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            closeAll();
+            throw e;
+        }
+    }
+
+    public void run() {
+        reactorThread = Thread.currentThread();
+        try {
+            while (running) {
+                selector.select();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                    } else if (key.isReadable()) {
+                        read(key);
+                    }
+                }
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            if (running) {
+                e.printStackTrace();
+            }
+        } finally {
+            closeAll();
+            stopped.countDown();
+        }
+    }
+
+    // Stops the reactor and waits until the listening port has been released, so it can be bound again straight away
+    public void close() {
+        running = false;
+        Thread thread = reactorThread;
+        if (thread == null) {
+            // run() was never started, nothing else owns the channels
+            closeAll();
+            return;
+        }
+        selector.wakeup();
+        if (thread != Thread.currentThread()) {
+            try {
+                stopped.await(CLOSE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        channel.register(selector, SelectionKey.OP_READ, ByteBuffer.allocate(READ_BUFFER_SIZE));
+    }
+
+    private void read(SelectionKey key) {
+        SocketChannel channel = (SocketChannel) key.channel();
+        ByteBuffer buffer = (ByteBuffer) key.attachment();
+        try {
+            if (channel.read(buffer) < 0) {
+                // The peer hung up
+                closeKey(key);
+                return;
+            }
+            buffer.flip();
+            while (buffer.remaining() >= Integer.BYTES) {
+                int length = buffer.getInt(buffer.position());
+                if (length < 0 || length > MAX_FRAME_LENGTH) {
+                    throw new IOException("Invalid frame length " + length);
+                }
+                if (buffer.remaining() < Integer.BYTES + length) {
+                    break;
+                }
+                buffer.getInt();
+                byte[] frame = new byte[length];
+                buffer.get(frame);
+                frameHandler.accept(frame);
+            }
+            buffer.compact();
+
+            // Grow the buffer when the frame that is partially read will not fit
+            if (buffer.position() >= Integer.BYTES) {
+                int needed = Integer.BYTES + buffer.getInt(0);
+                if (needed > buffer.capacity()) {
+                    ByteBuffer larger = ByteBuffer.allocate(needed);
+                    buffer.flip();
+                    larger.put(buffer);
+                    key.attach(larger);
+                }
+            }
+        } catch (IOException e) {
+            closeKey(key);
+        }
+    }
+
+    private void closeKey(SelectionKey key) {
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException e) {
+            // already closed
+        }
+    }
+
+    private void closeAll() {
+        if (selector.isOpen()) {
+            for (SelectionKey key : selector.keys()) {
+                closeKey(key);
+            }
+            try {
+                selector.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        try {
+            serverChannel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,207 @@
+import javax.management.*;
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// Counters and phase latencies of one member. Every update is a LongAdder or atomic increment, so handler threads
+// never wait on each other to record. A member without metrics enabled has none of this and skips the updates.
+//
+// Message counts are by type: sent is every message handed to the transport, received every message this member
+// handled, dropped every message that arrived but was not handled (executor full, or dropped by the response
+// profile). The prepare latency runs from sending PREPARE to the PROMISE that completes the quorum, the accept
+// latency from sending ACCEPT_REQUEST to the ACCEPTED that completes it
+public class Metrics implements MetricsMXBean {
+    private static final Message.MessageType[] TYPES = Message.MessageType.values();
+    // Which Metrics currently holds each JMX name
+    private static final Map<ObjectName, Metrics> REGISTERED = new HashMap<>();
+
+    private final int group;
+    private final int memberId;
+    private final LongAdder[] sent = counters();
+    private final LongAdder[] received = counters();
+    private final LongAdder[] dropped = counters();
+    private final Map<Integer, LongAdder> sendFailures = new ConcurrentHashMap<>();
+    private final AtomicInteger liveHandlerThreads = new AtomicInteger();
+    private final LatencyHistogram prepareLatency = new LatencyHistogram();
+    private final LatencyHistogram acceptLatency = new LatencyHistogram();
+
+    public Metrics(int memberId) {
+        this(0, memberId);
+    }
+
+    // Metrics of the member of one Paxos group, when a process runs members of several
+    public Metrics(int group, int memberId) {
+        this.group = group;
+        this.memberId = memberId;
+    }
+
+    private static LongAdder[] counters() {
+        LongAdder[] counters = new LongAdder[TYPES.length];
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = new LongAdder();
+        }
+        return counters;
+    }
+
+    public void messageSent(Message.MessageType type) {
+        sent[type.ordinal()].increment();
+    }
+
+    public void messageReceived(Message.MessageType type) {
+        received[type.ordinal()].increment();
+    }
+
+    public void messageDropped(Message.MessageType type) {
+        dropped[type.ordinal()].increment();
+    }
+
+    public void sendFailed(int peerId) {
+        sendFailures.computeIfAbsent(peerId, peer -> new LongAdder()).increment();
+    }
+
+    public void handlerStarted() {
+        liveHandlerThreads.incrementAndGet();
+    }
+
+    public void handlerFinished() {
+        liveHandlerThreads.decrementAndGet();
+    }
+
+    public LatencyHistogram prepareLatency() {
+        return prepareLatency;
+    }
+
+    public LatencyHistogram acceptLatency() {
+        return acceptLatency;
+    }
+
+    public long sent(Message.MessageType type) {
+        return sent[type.ordinal()].sum();
+    }
+
+    public long received(Message.MessageType type) {
+        return received[type.ordinal()].sum();
+    }
+
+    public long dropped(Message.MessageType type) {
+        return dropped[type.ordinal()].sum();
+    }
+
+    public long sendFailures(int peerId) {
+        LongAdder failures = sendFailures.get(peerId);
+        return failures == null ? 0 : failures.sum();
+    }
+
+    public Map<String, Long> getMessagesSent() {
+        return byType(sent);
+    }
+
+    public Map<String, Long> getMessagesReceived() {
+        return byType(received);
+    }
+
+    public Map<String, Long> getMessagesDropped() {
+        return byType(dropped);
+    }
+
+    public Map<Integer, Long> getSendFailures() {
+        Map<Integer, Long> failures = new TreeMap<>();
+        for (Map.Entry<Integer, LongAdder> entry : sendFailures.entrySet()) {
+            failures.put(entry.getKey(), entry.getValue().sum());
+        }
+        return failures;
+    }
+
+    public int getLiveHandlerThreads() {
+        return liveHandlerThreads.get();
+    }
+
+    public Map<String, Long> getPrepareLatencyMicros() {
+        return summary(prepareLatency);
+    }
+
+    public Map<String, Long> getAcceptLatencyMicros() {
+        return summary(acceptLatency);
+    }
+
+    // Clears the counters and histograms, the number of live handler threads is a gauge and stays as it is
+    public void reset() {
+        for (int i = 0; i < TYPES.length; i++) {
+            sent[i].reset();
+            received[i].reset();
+            dropped[i].reset();
+        }
+        sendFailures.clear();
+        prepareLatency.reset();
+        acceptLatency.reset();
+    }
+
+    private static Map<String, Long> byType(LongAdder[] counters) {
+        Map<String, Long> counts = new TreeMap<>();
+        for (Message.MessageType type : TYPES) {
+            counts.put(type.name(), counters[type.ordinal()].sum());
+        }
+        return counts;
+    }
+
+    private static Map<String, Long> summary(LatencyHistogram histogram) {
+        Map<String, Long> summary = new TreeMap<>();
+        summary.put("count", histogram.count());
+        summary.put("p50", histogram.percentile(50));
+        summary.put("p90", histogram.percentile(90));
+        summary.put("p99", histogram.percentile(99));
+        summary.put("p999", histogram.percentile(99.9));
+        summary.put("max", histogram.max());
+        return summary;
+    }
+
+    public static ObjectName objectName(int memberId) {
+        return objectName(0, memberId);
+    }
+
+    // The members of different groups in one process share their member ID, the group tells them apart
+    public static ObjectName objectName(int group, int memberId) {
+        try {
+            return new ObjectName("council:type=CouncilMember,group=" + group + ",id=" + memberId);
+        } catch (MalformedObjectNameException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    // Makes the metrics visible to JMX clients such as jconsole. A member that restarts in the same JVM takes the
+    // name over from its previous incarnation
+    public void register() {
+        ObjectName name = objectName(group, memberId);
+        synchronized (REGISTERED) {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            try {
+                if (server.isRegistered(name)) {
+                    server.unregisterMBean(name);
+                }
+                server.registerMBean(this, name);
+                REGISTERED.put(name, this);
+            } catch (JMException e) {
+                // Metrics still work through the snapshot API, only the JMX view is missing
+                e.printStackTrace();
+            }
+        }
+    }
+
+    public void unregister() {
+        ObjectName name = objectName(group, memberId);
+        synchronized (REGISTERED) {
+            // Leave the name alone once a newer member with the same ID has taken it over
+            if (REGISTERED.remove(name, this)) {
+                try {
+                    ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+                } catch (JMException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,74 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+// Cost of metrics on the message path. An in-memory council with a pipelined stable leader decides the same values
+// with metrics off and on, alternating so both see the same JIT and machine state, then prints the phase latencies
+// the last run recorded
+public class MetricsBenchmark {
+    private static final int MEMBERS = 9;
+    private static final int VALUES = 20000;
+    private static final int WINDOW = 32;
+    private static final int RUNS = 3;
+
+    public static void main(String[] args) throws Exception {
+        // Keep the members' event log out of the measurements
+        EventLog.shared().setLevel(EventLog.Level.OFF);
+
+        Metrics last = null;
+        for (int run = 0; run < RUNS; run++) {
+            for (boolean enabled : new boolean[]{false, true}) {
+                CouncilMember[] members = council(enabled);
+                long start = System.nanoTime();
+                decide(members);
+                double seconds = (System.nanoTime() - start) / 1e9;
+                System.out.printf("metrics %-3s  %9.0f values/s%n", enabled ? "on" : "off", VALUES / seconds);
+                if (enabled) {
+                    last = members[0].metrics();
+                }
+                for (CouncilMember member : members) {
+                    member.shutdown();
+                }
+            }
+        }
+        System.out.println("leader accept latency (us): " + last.getAcceptLatencyMicros());
+        Map<String, Long> sent = last.getMessagesSent();
+        System.out.println("leader sent ACCEPT_REQUEST " + sent.get("ACCEPT_REQUEST") + ", LEARN "
+                + sent.get("LEARN") + ", HEARTBEAT " + sent.get("HEARTBEAT"));
+    }
+
+    private static CouncilMember[] council(boolean enabled) {
+        List<Integer> memberIds = new ArrayList<>();
+        for (int id = 1; id <= MEMBERS; id++) {
+            memberIds.add(id);
+        }
+        InMemoryTransport.Network network = new InMemoryTransport.Network();
+        CouncilMember[] members = new CouncilMember[MEMBERS];
+        for (int i = 0; i < MEMBERS; i++) {
+            members[i] = new CouncilMember(i + 1, memberIds, new InMemoryTransport(network),
+                    CouncilMember.ExecutionMode.PLATFORM);
+            members[i].responseProfile = CouncilMember.ResponseProfile.IMMEDIATE;
+            members[i].setStableLeader(true);
+            if (enabled) {
+                members[i].enableMetrics();
+            }
+            new Thread(members[i]).start();
+        }
+        members[0].setPipelineWindow(WINDOW);
+        return members;
+    }
+
+    private static void decide(CouncilMember[] members) throws InterruptedException {
+        CouncilMember leader = members[0];
+        for (int i = 0; i < VALUES; i++) {
+            leader.propose("Value_" + i);
+        }
+        long deadline = System.currentTimeMillis() + 120000;
+        while (leader.deliveredUpTo() < VALUES) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new IllegalStateException("Only " + leader.deliveredUpTo() + " values decided");
+            }
+            Thread.sleep(1);
+        }
+    }
+}
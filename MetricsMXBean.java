@@ -0,0 +1,22 @@
+import java.util.Map;
+
+// Management interface of a member's Metrics, registered as council:type=CouncilMember,group=<group>,id=<id>, with
+// group 0 for a member of a plain council. Message counts are keyed by message type, send failures by peer ID, and
+// each latency map holds count, p50, p90, p99, p999 and max in microseconds
+public interface MetricsMXBean {
+    Map<String, Long> getMessagesSent();
+
+    Map<String, Long> getMessagesReceived();
+
+    Map<String, Long> getMessagesDropped();
+
+    Map<Integer, Long> getSendFailures();
+
+    int getLiveHandlerThreads();
+
+    Map<String, Long> getPrepareLatencyMicros();
+
+    Map<String, Long> getAcceptLatencyMicros();
+
+    void reset();
+}
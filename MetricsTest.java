@@ -0,0 +1,162 @@
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+
+public class MetricsTest {
+    @Before
+    public void setUp() {
+        EventLog.shared().setLevel(EventLog.Level.OFF);
+    }
+
+    @After
+    public void cleanUp() {
+        EventLog.shared().setLevel(EventLog.Level.INFO);
+    }
+
+    @Test
+    public void testHistogramPercentilesWithinPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long micros = 1; micros <= 100000; micros++) {
+            histogram.record(micros);
+        }
+
+        // Assertion: every percentile lands within the bucket precision of the exact value
+        assertEquals(100000, histogram.count());
+        assertEquals(100000, histogram.max());
+        assertEquals(50000, histogram.percentile(50), 50000 * 0.04);
+        assertEquals(99000, histogram.percentile(99), 99000 * 0.04);
+        assertEquals(100000, histogram.percentile(100));
+        for (long value : new long[]{0, 1, 63, 64, 65, 1000, 123456789, Long.MAX_VALUE}) {
+            int bucket = LatencyHistogram.bucket(value);
+            assertTrue(LatencyHistogram.highestValue(bucket) >= value);
+            assertTrue(bucket == 0 || LatencyHistogram.highestValue(bucket - 1) < value);
+        }
+    }
+
+    @Test
+    public void testCountsMessagesAndPhaseLatencies() {
+        Simulator sim = new Simulator(5, 5, CouncilMember::enableMetrics);
+        for (CouncilMember member : sim.members()) {
+            member.responseProfile = CouncilMember.ResponseProfile.IMMEDIATE;
+        }
+        sim.member(1).propose("Candidate_A");
+        assertTrue(sim.runUntil(() -> sim.members().stream().allMatch(m -> m.learnedValue != null), 10000));
+
+        // Assertion: the proposer timed one of each phase, and every message it sent was handled by a peer
+        Metrics proposer = sim.member(1).metrics();
+        assertEquals(1, proposer.prepareLatency().count());
+        assertEquals(1, proposer.acceptLatency().count());
+        assertEquals(4, proposer.sent(Message.MessageType.PREPARE));
+        assertEquals(4, proposer.sent(Message.MessageType.ACCEPT_REQUEST));
+        assertEquals(4, proposer.received(Message.MessageType.PROMISE));
+        long acceptedSent = 0;
+        for (int id = 2; id <= 5; id++) {
+            Metrics acceptor = sim.member(id).metrics();
+            assertEquals(1, acceptor.received(Message.MessageType.PREPARE));
+            acceptedSent += acceptor.sent(Message.MessageType.ACCEPTED);
+        }
+        assertEquals(acceptedSent, proposer.received(Message.MessageType.ACCEPTED));
+        for (CouncilMember member : sim.members()) {
+            member.shutdown();
+        }
+    }
+
+    @Test
+    public void testMetricsVisibleOverJmx() throws Exception {
+        // Member 5 never joins, so every message to it fails
+        List<Integer> memberIds = List.of(1, 2, 3, 4, 5);
+        InMemoryTransport.Network network = new InMemoryTransport.Network();
+        CouncilMember[] members = new CouncilMember[4];
+        for (int i = 0; i < members.length; i++) {
+            members[i] = new CouncilMember(i + 1, memberIds, new InMemoryTransport(network),
+                    CouncilMember.ExecutionMode.PLATFORM);
+            members[i].responseProfile = CouncilMember.ResponseProfile.IMMEDIATE;
+            members[i].enableMetrics();
+            new Thread(members[i]).start();
+        }
+        members[0].propose("Candidate_A");
+        long deadline = System.currentTimeMillis() + 10000;
+        while (members[0].learnedValue == null && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals("Candidate_A", members[0].learnedValue);
+
+        // Assertion: the counters read over JMX match the snapshot API
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = Metrics.objectName(1);
+        TabularData sent = (TabularData) server.getAttribute(name, "MessagesSent");
+        CompositeData prepares = sent.get(new Object[]{"PREPARE"});
+        assertEquals(3L, prepares.get("value"));
+        TabularData failures = (TabularData) server.getAttribute(name, "SendFailures");
+        assertEquals(members[0].metrics().sendFailures(5), failures.get(new Object[]{5}).get("value"));
+        assertTrue(members[0].metrics().sendFailures(5) >= 2);
+        TabularData latency = (TabularData) server.getAttribute(name, "PrepareLatencyMicros");
+        assertEquals(1L, latency.get(new Object[]{"count"}).get("value"));
+
+        for (CouncilMember member : members) {
+            member.shutdown();
+        }
+        assertFalse(server.isRegistered(name));
+    }
+
+    @Test
+    public void testGroupsOfOneProcessKeepTheirOwnMetrics() throws Exception {
+        EventLog.Recorder recorder = new EventLog.Recorder();
+        EventLog log = new EventLog(EventLog.Level.INFO, recorder);
+        InMemoryTransport.Network network = new InMemoryTransport.Network();
+        ShardedCouncil[] councils = new ShardedCouncil[3];
+        for (int i = 0; i < councils.length; i++) {
+            councils[i] = new ShardedCouncil(i + 1, List.of(1, 2, 3), new InMemoryTransport(network), 2, member -> {
+                member.enableMetrics();
+                member.setEventLog(log);
+            });
+            new Thread(councils[i]).start();
+        }
+        // Member 1 proposes in group 0 and member 2 in group 1
+        councils[0].group(0).propose("Candidate_A");
+        councils[1].group(1).propose("Candidate_B");
+        long deadline = System.currentTimeMillis() + 10000;
+        for (ShardedCouncil council : councils) {
+            while ((council.group(0).learnedValue == null || council.group(1).learnedValue == null)
+                    && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+        }
+
+        // Assertion: each group's member 1 has its own JMX name and counts only its own group's messages
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName groupZero = Metrics.objectName(0, 1);
+        ObjectName groupOne = Metrics.objectName(1, 1);
+        assertNotEquals(groupZero, groupOne);
+        TabularData sentInZero = (TabularData) server.getAttribute(groupZero, "MessagesSent");
+        TabularData sentInOne = (TabularData) server.getAttribute(groupOne, "MessagesSent");
+        assertEquals(2L, sentInZero.get(new Object[]{"PREPARE"}).get("value"));
+        assertEquals(0L, sentInOne.get(new Object[]{"PREPARE"}).get("value"));
+        assertEquals(1, councils[1].group(1).metrics().prepareLatency().count());
+
+        // Assertion: events carry the group of the member that recorded them
+        log.flush();
+        for (EventLog.Event event : recorder.events()) {
+            if (event.kind == EventLog.Kind.LEARNED) {
+                assertEquals(event.value.equals("Candidate_A") ? 0 : 1, event.group);
+            }
+        }
+        assertEquals(6, recorder.events().stream().filter(event -> event.kind == EventLog.Kind.LEARNED).count());
+
+        for (ShardedCouncil council : councils) {
+            council.shutdown();
+        }
+        assertFalse(server.isRegistered(groupZero));
+        assertFalse(server.isRegistered(groupOne));
+        log.close();
+    }
+}
@@ -4,20 +4,24 @@ import org.junit.BeforeClass;
 import org.junit.Test;
 import static org.junit.Assert.*;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.io.ByteArrayOutputStream;
-import java.io.PrintStream;
+import java.util.function.BooleanSupplier;
 
 
 public class PaxosTest {
-    // save out the console output to a stream, rather than printing to the actual console window
-    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
-    private final PrintStream originalOut = System.out;
+    // Members record what they do in an event log kept in memory, rather than printing to the console window,
+    // and the assertions read the recorded events
+    private EventLog eventLog;
+    private EventLog.Recorder recorder;
 
     private static final int MAX_WAIT_TIME = 15;
     private static Map<Integer, Integer> memberPorts;
     private CouncilMember[] members;
+    private InMemoryTransport.Network network;
 
     @BeforeClass
     public static void setUpClass() throws Exception {
@@ -29,13 +33,16 @@ public class PaxosTest {
 
     @Before
     public void setUp() throws Exception {
-        // Capture console output during the test
-        System.setOut(new PrintStream(out));
+        recorder = new EventLog.Recorder();
+        eventLog = new EventLog(EventLog.Level.DEBUG, recorder);
 
         members = new CouncilMember[9];
 
+        // Members talk over an in-memory network, testSingleProposalOverSockets covers the TCP transport
+        network = new InMemoryTransport.Network();
         for (int i = 0; i < 9; i++) {
-            members[i] = new CouncilMember(i + 1, 5000 + i + 1, memberPorts);
+            members[i] = new CouncilMember(i + 1, memberPorts.keySet(), new InMemoryTransport(network),
+                    CouncilMember.ExecutionMode.PLATFORM);
         }
         // The default profile is a small delay for all members. However M1 will always
         // respond immediately
@@ -44,41 +51,60 @@ public class PaxosTest {
 
     @After
     public void cleanUp() {
-        System.setOut(originalOut);
+        eventLog.close();
     }
 
     public void startNodes() throws Exception {
-        // Start all member threads
+        // Start all member threads, the in-memory transport is ready as soon as the members are constructed
         for (CouncilMember member : members) {
+            member.setEventLog(eventLog);
             new Thread(member).start();
         }
-
-        // Give the threads time to start up
-        Thread.sleep(1000);
     }
 
     public void endNodes() throws Exception {
-        boolean allFinished = false;
-        // Wait for consensus
-        for (int i = 0; i < MAX_WAIT_TIME; i++) {
-            allFinished = true;
+        // Wait for consensus, members keep serving after a decision so wait until every member that is still
+        // online has learned one
+        waitFor(() -> {
             for (CouncilMember member : members) {
-                if (member.isRunning) {
-                    allFinished = false;
-                    break;
+                if (member.learnedValue == null && member.responseProfile != CouncilMember.ResponseProfile.OFFLINE) {
+                    return false;
                 }
             }
-            if (allFinished) {
-                break;
+            return true;
+        });
+
+        // Stop all member threads
+        for (CouncilMember member : members) {
+            member.shutdown();
+        }
+        // Everything the members did is in the recorder from here on
+        eventLog.flush();
+    }
+
+    // Polls the condition every 100ms for up to MAX_WAIT_TIME seconds
+    public void waitFor(BooleanSupplier condition) throws Exception {
+        for (int i = 0; i < MAX_WAIT_TIME * 10 && !condition.getAsBoolean(); i++) {
+            Thread.sleep(100);
+        }
+    }
+
+    public boolean allMembersChose(int slot) {
+        for (CouncilMember member : members) {
+            if (member.chosenValue(slot) == null) {
+                return false;
             }
-            Thread.sleep(1000);
         }
+        return true;
+    }
 
-        // Stop all member threads
+    public boolean allMembersDelivered(int slots) {
         for (CouncilMember member : members) {
-            member.isRunning = false;
-            member.serverSocket.close();
+            if (member.deliveredUpTo() < slots) {
+                return false;
+            }
         }
+        return true;
     }
 
     @Test
@@ -97,12 +123,215 @@ public class PaxosTest {
 
         endNodes();
 
-        // Assertion: The stream contains records of each member successfully learning the candidate
-        // `Member i learned value: Candidate_A`
+        // Assertion: The event log records each member successfully learning the candidate
         // Further, the learnedValue attribute of each member should be "Candidate_A"
         for (int i = 0; i < 9; i++) {
-            assertTrue(out.toString().contains("Member " + (i + 1) + " learned value: Candidate_A"));
+            assertTrue(recorder.learned(i + 1).contains("Candidate_A"));
+            assertEquals("Candidate_A", members[i].learnedValue);
+        }
+    }
+
+    @Test
+    public void testSingleProposalOverSockets() throws Exception {
+        // Same council, but every member listens on its own port
+        for (int i = 0; i < 9; i++) {
+            members[i].shutdown();
+            members[i] = new CouncilMember(i + 1, 5000 + i + 1, memberPorts);
+        }
+        members[0].responseProfile = CouncilMember.ResponseProfile.IMMEDIATE;
+
+        startNodes();
+        // Give the reactors time to start accepting connections
+        Thread.sleep(200);
+
+        // Initiate proposal
+        members[7].propose("Candidate_A");
+
+        endNodes();
+
+        // Assertion: every member learned the candidate over TCP
+        for (int i = 0; i < 9; i++) {
+            assertTrue(recorder.learned(i + 1).contains("Candidate_A"));
+            assertEquals("Candidate_A", members[i].learnedValue);
+        }
+    }
+
+    @Test
+    public void testLargeCouncilInMemory() throws Exception {
+        // Hundreds of members in one JVM, with no sockets and a virtual thread per message
+        int size = 301;
+        List<Integer> memberIds = new ArrayList<>();
+        for (int i = 1; i <= size; i++) {
+            memberIds.add(i);
+        }
+        for (CouncilMember member : members) {
+            member.shutdown();
+        }
+        members = new CouncilMember[size];
+        for (int i = 0; i < size; i++) {
+            members[i] = new CouncilMember(i + 1, memberIds, new InMemoryTransport(network),
+                    CouncilMember.ExecutionMode.VIRTUAL);
+            members[i].responseProfile = CouncilMember.ResponseProfile.IMMEDIATE;
+        }
+
+        startNodes();
+
+        members[size - 1].propose("Candidate_A");
+
+        endNodes();
+
+        // Assertion: every member of the council learned the candidate
+        for (CouncilMember member : members) {
+            assertEquals("Candidate_A", member.learnedValue);
+        }
+    }
+
+    @Test
+    public void testSequentialProposalsFillLog() throws Exception {
+        startNodes();
+
+        // Members keep serving after a decision, so later proposals fill the following slots of the log
+        String[] candidates = {"Candidate_A", "Candidate_B", "Candidate_C"};
+        for (int slot = 0; slot < candidates.length; slot++) {
+            int proposed = slot;
+            members[7].propose(candidates[slot]);
+            waitFor(() -> allMembersChose(proposed));
+        }
+
+        endNodes();
+
+        // Assertion: every member holds the candidates in the order they were proposed, and learnedValue
+        // still reports the first decision
+        for (int i = 0; i < 9; i++) {
+            for (int slot = 0; slot < candidates.length; slot++) {
+                assertEquals(candidates[slot], members[i].chosenValue(slot));
+            }
+            assertEquals("Candidate_A", members[i].learnedValue);
+        }
+    }
+
+    @Test
+    public void testStableLeaderSkipsPrepare() throws Exception {
+        for (CouncilMember member : members) {
+            member.setStableLeader(true);
+        }
+
+        startNodes();
+
+        // Only the first proposal runs phase 1, the leader sends the rest straight to phase 2
+        String[] candidates = {"Candidate_A", "Candidate_B", "Candidate_C"};
+        for (String candidate : candidates) {
+            members[7].propose(candidate);
+        }
+        waitFor(() -> allMembersChose(candidates.length - 1));
+
+        endNodes();
+
+        // Assertion: the values were committed in order by member 8 as leader, and each of the 8 other members
+        // received exactly one PREPARE
+        assertEquals(8, members[7].currentLeader());
+        for (int i = 0; i < 9; i++) {
+            for (int slot = 0; slot < candidates.length; slot++) {
+                assertEquals(candidates[slot], members[i].chosenValue(slot));
+            }
+        }
+        int prepares = 0;
+        for (int i = 0; i < 9; i++) {
+            prepares += recorder.count(i + 1, EventLog.Kind.RECEIVED, Message.MessageType.PREPARE);
+        }
+        assertEquals(8, prepares);
+    }
+
+    @Test
+    public void testBatchedProposalsShareASlot() throws Exception {
+        for (CouncilMember member : members) {
+            member.setStableLeader(true);
+        }
+        // Values proposed within 500ms of each other go out together
+        members[7].setBatching(10, 500);
+
+        startNodes();
+
+        String[] candidates = {"Candidate_A", "Candidate:B", "", "Candidate_D", "12:Candidate_E"};
+        for (String candidate : candidates) {
+            members[7].propose(candidate);
+        }
+
+        endNodes();
+
+        // Assertion: all five values were decided in the first slot, in the order they were proposed, and
+        // learnedValue reports the first of them
+        for (int i = 0; i < 9; i++) {
+            assertEquals(Arrays.asList(candidates), members[i].chosenValues(0));
             assertEquals("Candidate_A", members[i].learnedValue);
+            assertTrue(recorder.learned(i + 1).contains("Candidate_D"));
+        }
+    }
+
+    @Test
+    public void testPipelinedProposalsDeliveredInOrder() throws Exception {
+        for (CouncilMember member : members) {
+            member.setStableLeader(true);
+        }
+        // Up to four slots are proposed at once once member 8 is leader
+        members[7].setPipelineWindow(4);
+
+        startNodes();
+
+        String[] candidates = {"Candidate_A", "Candidate_B", "Candidate_C", "Candidate_D", "Candidate_E",
+                "Candidate_F"};
+        for (String candidate : candidates) {
+            members[7].propose(candidate);
+        }
+        // The last slot can be decided before the ones ahead of it, wait until every slot has been delivered
+        waitFor(() -> allMembersDelivered(candidates.length));
+
+        endNodes();
+
+        // Assertion: the slots can be decided in any order, but every member delivers them in the order they were
+        // proposed
+        for (int i = 0; i < 9; i++) {
+            for (int slot = 0; slot < candidates.length; slot++) {
+                assertEquals(candidates[slot], members[i].chosenValue(slot));
+            }
+            assertEquals(candidates.length, members[i].deliveredUpTo());
+            assertEquals(Arrays.asList(candidates), recorder.learned(i + 1));
+        }
+    }
+
+    @Test
+    public void testOfflineMemberCatchesUpFromSnapshot() throws Exception {
+        for (CouncilMember member : members) {
+            member.setStableLeader(true);
+            // Snapshot every two slots, kept in memory only
+            member.enableSnapshots(2, null);
+        }
+        // Member 9 misses every slot while offline
+        members[8].responseProfile = CouncilMember.ResponseProfile.OFFLINE;
+
+        startNodes();
+
+        String[] candidates = {"Candidate_A", "Candidate_B", "Candidate_C", "Candidate_D", "Candidate_E"};
+        for (String candidate : candidates) {
+            members[7].propose(candidate);
+        }
+        waitFor(() -> members[7].deliveredUpTo() >= candidates.length);
+
+        // Back online, the leader's heartbeats show member 9 how far behind it is
+        members[8].responseProfile = CouncilMember.ResponseProfile.IMMEDIATE;
+        waitFor(() -> members[8].deliveredUpTo() >= candidates.length);
+
+        endNodes();
+
+        // Assertion: member 9 installed the snapshot of the first four slots and learned the last one from the
+        // tail, and every member compacted the slots its snapshot covers
+        assertEquals(candidates.length, members[8].deliveredUpTo());
+        assertEquals("Candidate_A", members[8].learnedValue);
+        assertEquals("Candidate_E", members[8].chosenValue(4));
+        assertFalse(recorder.learned(9).contains("Candidate_B"));
+        assertTrue(recorder.learned(9).contains("Candidate_E"));
+        for (int i = 0; i < 9; i++) {
+            assertNull(members[i].chosenValue(0));
         }
     }
 
@@ -118,12 +347,11 @@ public class PaxosTest {
 
         endNodes();
 
-        // Assertion: The stream contains records of each member successfully learning the candidate
-        // `Member i learned value: Candidate_A`
+        // Assertion: The event log records each member successfully learning the candidate
         // Further, the learnedValue attribute of each member should be "Candidate_A"
         for (int i = 0; i < 9; i++) {
             if (i == 1) { continue; }
-            assertTrue(out.toString().contains("Member " + (i + 1) + " learned value: Candidate_A"));
+            assertTrue(recorder.learned(i + 1).contains("Candidate_A"));
             assertEquals("Candidate_A", members[i].learnedValue);
         }
     }
@@ -140,12 +368,11 @@ public class PaxosTest {
 
         endNodes();
 
-        // Assertion: The stream contains records of each member successfully learning the candidate
-        // `Member i learned value: Candidate_A`
+        // Assertion: The event log records each member successfully learning the candidate
         // Further, the learnedValue attribute of each member should be "Candidate_A"
         for (int i = 0; i < 9; i++) {
             if (i == 2) { continue; }
-            assertTrue(out.toString().contains("Member " + (i + 1) + " learned value: Candidate_A"));
+            assertTrue(recorder.learned(i + 1).contains("Candidate_A"));
             assertEquals("Candidate_A", members[i].learnedValue);
         }
     }
@@ -160,14 +387,13 @@ public class PaxosTest {
 
         endNodes();
 
-        // Assertion: The stream contains records of each member successfully learning the candidate
-        // `Member i learned value: Candidate_A` and `Member i learned value: Candidate_B`
+        // Assertion: The event log records each member successfully learning the candidate
         // Further, the learnedValue attribute of each member should be "Candidate_A" or "Candidate_B"
         // and this should be consistent across all members
         String learnedCandidate = members[0].learnedValue;
         assertTrue(learnedCandidate.equals("Candidate_A") || learnedCandidate.equals("Candidate_B"));
         for (int i = 0; i < 9; i++) {
-            assertTrue(out.toString().contains("Member " + (i + 1) + " learned value: " + learnedCandidate));
+            assertTrue(recorder.learned(i + 1).contains(learnedCandidate));
             assertEquals(learnedCandidate, members[i].learnedValue);
         }
     }
@@ -186,8 +412,7 @@ public class PaxosTest {
 
         endNodes();
 
-        // Assertion: The stream contains records of each member successfully learning the candidate
-        // `Member i learned value: Candidate_X` where X is the candidate with the most votes
+        // Assertion: The event log records each member successfully learning the candidate
         // Further, the learnedValue attribute of each member should be the candidate with the most votes
         // and this should be consistent across all members
         String learnedCandidate = members[0].learnedValue;
@@ -195,7 +420,7 @@ public class PaxosTest {
                 learnedCandidate.equals("Candidate_C") || learnedCandidate.equals("Candidate_D") ||
                 learnedCandidate.equals("Candidate_E") || learnedCandidate.equals("Candidate_F"));
         for (int i = 0; i < 9; i++) {
-            assertTrue(out.toString().contains("Member " + (i + 1) + " learned value: " + learnedCandidate));
+            assertTrue(recorder.learned(i + 1).contains(learnedCandidate));
             assertEquals(learnedCandidate, members[i].learnedValue);
         }
     }
@@ -214,8 +439,7 @@ public class PaxosTest {
 
         endNodes();
 
-        // Assertion: The stream contains records of each member successfully learning the candidate
-        // `Member i learned value: Candidate_A` and `Member i learned value: Candidate_B`
+        // Assertion: The event log records each member successfully learning the candidate
         // Further, the learnedValue attribute of each member should be "Candidate_A" or "Candidate_B"
         // and this should be consistent across all members
         String learnedCandidate = members[0].learnedValue;
@@ -229,7 +453,7 @@ public class PaxosTest {
                 }
                 continue;
             }
-            assertTrue(out.toString().contains("Member " + (i + 1) + " learned value: " + learnedCandidate));
+            assertTrue(recorder.learned(i + 1).contains(learnedCandidate));
             assertEquals(learnedCandidate, members[i].learnedValue);
         }
     }
@@ -385,14 +609,13 @@ public class PaxosTest {
 
         endNodes();
 
-        // Assertion: The stream contains records of each member successfully learning the candidate
-        // `Member i learned value: Candidate_A` and `Member i learned value: Candidate_B`
+        // Assertion: The event log records each member successfully learning the candidate
         // Further, the learnedValue attribute of each member should be "Candidate_A" or "Candidate_B"
         // and this should be consistent across all members
         String learnedCandidate = members[0].learnedValue;
         assertTrue(learnedCandidate.equals("Candidate_A") || learnedCandidate.equals("Candidate_B"));
         for (int i = 0; i < 9; i++) {
-            assertTrue(out.toString().contains("Member " + (i + 1) + " learned value: " + learnedCandidate));
+            assertTrue(recorder.learned(i + 1).contains(learnedCandidate));
             assertEquals(learnedCandidate, members[i].learnedValue);
         }
     }
@@ -521,14 +744,13 @@ public class PaxosTest {
 
         endNodes();
 
-        // Assertion: The stream contains records of each member successfully learning the candidate
-        // `Member i learned value: Candidate_A` and `Member i learned value: Candidate_B`
+        // Assertion: The event log records each member successfully learning the candidate
         // Further, the learnedValue attribute of each member should be "Candidate_A" or "Candidate_B"
         // and this should be consistent across all members
         String learnedCandidate = members[0].learnedValue;
         assertTrue(learnedCandidate.equals("Candidate_A") || learnedCandidate.equals("Candidate_B"));
         for (int i = 0; i < 9; i++) {
-            assertTrue(out.toString().contains("Member " + (i + 1) + " learned value: " + learnedCandidate));
+            assertTrue(recorder.learned(i + 1).contains(learnedCandidate));
             assertEquals(learnedCandidate, members[i].learnedValue);
         }
     }
@@ -548,14 +770,13 @@ public class PaxosTest {
 
         endNodes();
 
-        // Assertion: The stream contains records of each member successfully learning the candidate
-        // `Member i learned value: Candidate_A` and `Member i learned value: Candidate_B`
+        // Assertion: The event log records each member successfully learning the candidate
         // Further, the learnedValue attribute of each member should be "Candidate_A" or "Candidate_B"
         // and this should be consistent across all members
         String learnedCandidate = members[0].learnedValue;
         assertTrue(learnedCandidate.equals("Candidate_A") || learnedCandidate.equals("Candidate_B"));
         for (int i = 0; i < 9; i++) {
-            assertTrue(out.toString().contains("Member " + (i + 1) + " learned value: " + learnedCandidate));
+            assertTrue(recorder.learned(i + 1).contains(learnedCandidate));
             assertEquals(learnedCandidate, members[i].learnedValue);
         }
     }
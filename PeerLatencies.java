@@ -0,0 +1,98 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// How fast each peer of a proposer answers its phases, by member index. Thrifty messaging sends a phase only to the
+// peers ranked fastest here, and a leader removed from the council hands its values to the fastest.
+//
+// Every reply updates its peer's estimate with the smoothing RetryPolicy applies to round trips. A peer that has
+// not answered by the time the proposer stops waiting for it is set back to at least the time waited, so a peer
+// that went offline drops to the end of the ranking at once instead of over several phases. Peers without an
+// estimate rank first so every peer gets measured. A peer ranked slow is only measured again when a phase falls
+// back to it. Estimates are updated with a compare-and-set, replies are counted without a lock and so are these
+public class PeerLatencies {
+    public static final long MIN_FALLBACK_MILLIS = 50;
+    private static final double UNKNOWN = -1;
+
+    // Estimate of each peer in milliseconds as double bits, UNKNOWN until its first reply
+    private final AtomicLongArray estimates;
+
+    public PeerLatencies(int members) {
+        estimates = new AtomicLongArray(members);
+        for (int i = 0; i < members; i++) {
+            estimates.set(i, Double.doubleToLongBits(UNKNOWN));
+        }
+    }
+
+    // A copy with room for members, for a council that has grown
+    public PeerLatencies grow(int members) {
+        PeerLatencies grown = new PeerLatencies(members);
+        for (int i = 0; i < Math.min(members, estimates.length()); i++) {
+            grown.estimates.set(i, estimates.get(i));
+        }
+        return grown;
+    }
+
+    // The peer at index answered this long after the phase was sent to it
+    public void replied(int index, long millis) {
+        if (index >= estimates.length()) {
+            return;
+        }
+        estimates.getAndUpdate(index, bits -> {
+            double estimate = Double.longBitsToDouble(bits);
+            return Double.doubleToLongBits(estimate == UNKNOWN ? millis : 0.875 * estimate + 0.125 * millis);
+        });
+    }
+
+    // The peer at index had not answered after waitedMillis
+    public void missed(int index, long waitedMillis) {
+        if (index >= estimates.length()) {
+            return;
+        }
+        estimates.getAndUpdate(index, bits -> Double.doubleToLongBits(
+                Math.max(Double.longBitsToDouble(bits), waitedMillis)));
+    }
+
+    // Estimate of the peer at index in milliseconds, negative before its first reply
+    public double estimate(int index) {
+        if (index >= estimates.length()) {
+            return UNKNOWN;
+        }
+        return Double.longBitsToDouble(estimates.get(index));
+    }
+
+    // The fewest peers, fastest first, whose weights reach threshold, leaving out the member at self and members
+    // whose votes carry no weight. All of those when even together they fall short. The result is by index
+    public boolean[] fastest(int[] weights, int threshold, int self) {
+        List<Integer> candidates = new ArrayList<>();
+        double[] snapshot = new double[weights.length];
+        for (int i = 0; i < weights.length; i++) {
+            snapshot[i] = estimate(i);
+            if (i != self && weights[i] > 0) {
+                candidates.add(i);
+            }
+        }
+        // Ties go to the lower index, so proposers with the same view pick the same peers
+        candidates.sort((a, b) -> snapshot[a] != snapshot[b] ? Double.compare(snapshot[a], snapshot[b])
+                : Integer.compare(a, b));
+        boolean[] chosen = new boolean[weights.length];
+        int weight = 0;
+        for (int i = 0; i < candidates.size() && weight < threshold; i++) {
+            chosen[candidates.get(i)] = true;
+            weight += weights[candidates.get(i)];
+        }
+        return chosen;
+    }
+
+    // How long to wait for the given peers before sending to the others as well: twice the slowest estimate among
+    // them, and at least MIN_FALLBACK_MILLIS
+    public long fallbackMillis(boolean[] peers) {
+        double slowest = 0;
+        for (int i = 0; i < peers.length; i++) {
+            if (peers[i]) {
+                slowest = Math.max(slowest, estimate(i));
+            }
+        }
+        return Math.max(MIN_FALLBACK_MILLIS, Math.round(2 * slowest));
+    }
+}
@@ -0,0 +1,90 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.*;
+
+// Sweeps the pipeline window of a stable leader without batching. A fixed number of clients each propose a value and
+// wait for it to be delivered before proposing the next, so with a window of one every value pays a full round trip
+// to a majority and with a larger window the rounds overlap
+public class PipelineBenchmark {
+    private static final int[] WINDOWS = {1, 2, 4, 8, 16, 32};
+    private static final int CLIENTS = 64;
+    private static final int VALUES_PER_CLIENT = 40;
+    private static final int MEMBERS = 9;
+
+    public static void main(String[] args) throws Exception {
+        // Keep the members' event log out of the measurements
+        EventLog.shared().setLevel(EventLog.Level.OFF);
+
+        int basePort = 7600;
+        for (int window : WINDOWS) {
+            long start = System.nanoTime();
+            long[] latencies = measure(window, basePort);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            basePort += 10;
+            Arrays.sort(latencies);
+            System.out.printf("window %3d  %9.0f values/s  p50 %8.2f ms  p99 %8.2f ms%n",
+                    window, latencies.length / seconds,
+                    latencies[latencies.length / 2] / 1e6,
+                    latencies[(int) (latencies.length * 0.99)] / 1e6);
+        }
+    }
+
+    private static long[] measure(int window, int basePort) throws Exception {
+        Map<Integer, Integer> memberPorts = new HashMap<>();
+        for (int i = 1; i <= MEMBERS; i++) {
+            memberPorts.put(i, basePort + i);
+        }
+        // Clients wait on a latch that the leader releases when it delivers their value
+        Map<String, CountDownLatch> waiting = new ConcurrentHashMap<>();
+        CouncilMember[] members = new CouncilMember[MEMBERS];
+        for (int i = 0; i < MEMBERS; i++) {
+            members[i] = new CouncilMember(i + 1, basePort + i + 1, memberPorts) {
+                @Override
+                protected void deliver(int instance, String value) {
+                    super.deliver(instance, value);
+                    CountDownLatch latch = waiting.remove(value);
+                    if (latch != null) {
+                        latch.countDown();
+                    }
+                }
+            };
+            members[i].responseProfile = CouncilMember.ResponseProfile.IMMEDIATE;
+            members[i].setStableLeader(true);
+            new Thread(members[i]).start();
+        }
+        CouncilMember leader = members[0];
+        leader.setPipelineWindow(window);
+        Thread.sleep(200);
+
+        long[] latencies = new long[CLIENTS * VALUES_PER_CLIENT];
+        ExecutorService clients = Executors.newFixedThreadPool(CLIENTS);
+        for (int c = 0; c < CLIENTS; c++) {
+            int client = c;
+            clients.execute(() -> {
+                for (int i = 0; i < VALUES_PER_CLIENT; i++) {
+                    String value = "Client_" + client + "_" + i;
+                    CountDownLatch latch = new CountDownLatch(1);
+                    waiting.put(value, latch);
+                    long start = System.nanoTime();
+                    leader.propose(value);
+                    try {
+                        if (!latch.await(30, TimeUnit.SECONDS)) {
+                            throw new IllegalStateException(value + " was not decided");
+                        }
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    latencies[client * VALUES_PER_CLIENT + i] = System.nanoTime() - start;
+                }
+            });
+        }
+        clients.shutdown();
+        clients.awaitTermination(5, TimeUnit.MINUTES);
+
+        for (CouncilMember member : members) {
+            member.shutdown();
+        }
+        return latencies;
+    }
+}
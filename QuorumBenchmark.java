@@ -0,0 +1,70 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Commit latency of a stable leader under different quorum systems, in the deterministic simulator with the
+// members of Main: member 1 answers at once, member 2 drops half its messages, member 3 is offline and the rest
+// answer after a small delay. Member 8 leads and proposes its values one after the other. The first value includes
+// phase 1, the later ones only phase 2
+public class QuorumBenchmark {
+    private static final int MEMBERS = 9;
+    private static final int SEEDS = 50;
+    private static final int SLOTS = 100;
+    private static final long MAX_VIRTUAL_MILLIS = 120000;
+
+    public static void main(String[] args) {
+        // Keep the members' event log out of the measurements
+        EventLog.shared().setLevel(EventLog.Level.OFF);
+        List<Integer> memberIds = new ArrayList<>();
+        Map<Integer, Integer> withoutSlow = new LinkedHashMap<>();
+        for (int id = 1; id <= MEMBERS; id++) {
+            memberIds.add(id);
+            // Members 2 and 3 carry no weight, the 7 others make up the council's votes
+            withoutSlow.put(id, id == 2 || id == 3 ? 0 : 1);
+        }
+
+        Map<String, QuorumSystem> systems = new LinkedHashMap<>();
+        systems.put("majority 5/5", QuorumSystem.majority(memberIds));
+        systems.put("flexible 7/3", QuorumSystem.flexible(memberIds, 7, 3));
+        systems.put("weighted 4/4", new QuorumSystem(withoutSlow, 4, 4));
+        systems.put("weighted 5/3", new QuorumSystem(withoutSlow, 5, 3));
+        for (Map.Entry<String, QuorumSystem> system : systems.entrySet()) {
+            measure(system.getKey(), system.getValue());
+        }
+    }
+
+    private static void measure(String name, QuorumSystem quorums) {
+        List<Long> first = new ArrayList<>();
+        List<Long> later = new ArrayList<>();
+        for (int seed = 1; seed <= SEEDS; seed++) {
+            Simulator sim = new Simulator(seed, MEMBERS, member -> {
+                member.setStableLeader(true);
+                member.setQuorumSystem(quorums);
+            });
+            sim.member(1).responseProfile = CouncilMember.ResponseProfile.IMMEDIATE;
+            sim.member(2).responseProfile = CouncilMember.ResponseProfile.SLOW;
+            sim.member(3).responseProfile = CouncilMember.ResponseProfile.OFFLINE;
+            CouncilMember leader = sim.member(8);
+            for (int slot = 0; slot < SLOTS; slot++) {
+                int next = slot + 1;
+                long start = sim.now();
+                leader.propose("Value_" + slot);
+                if (!sim.runUntil(() -> leader.deliveredUpTo() == next, sim.now() + MAX_VIRTUAL_MILLIS)) {
+                    throw new IllegalStateException(name + ": slot " + slot + " not decided, seed " + seed);
+                }
+                (slot == 0 ? first : later).add(sim.now() - start);
+            }
+        }
+
+        Collections.sort(first);
+        Collections.sort(later);
+        System.out.printf("%-13s first value p50 %6d ms  p90 %6d ms   later values p50 %4d ms  p99 %4d ms%n", name,
+                percentile(first, 0.5), percentile(first, 0.9), percentile(later, 0.5), percentile(later, 0.99));
+    }
+
+    private static long percentile(List<Long> sorted, double fraction) {
+        return sorted.get((int) Math.ceil(fraction * sorted.size()) - 1);
+    }
+}
@@ -0,0 +1,109 @@
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Which sets of members form a quorum in each phase. Every member's vote carries a weight, and a phase is decided
+// once the members that voted for it carry at least that phase's threshold.
+//
+// Following Flexible Paxos the two phases can have different thresholds. Safety only needs every phase 1 quorum to
+// intersect every phase 2 quorum, which holds whenever the two thresholds add up to more than the total weight.
+// Phase 2 quorums need not intersect each other, so a stable leader can decide its slots with a small phase 2
+// quorum of fast members and leave the larger quorum to the rare phase 1. Weights let members that are known to be
+// slow or often offline count for less, or nothing at all.
+//
+// A proposer does not vote for itself, so a system is only usable when every member can reach both thresholds with
+// the votes of the others. The constructor checks the thresholds and their intersection, and validate checks the
+// system against the members of a council
+public class QuorumSystem {
+    private final Map<Integer, Integer> weights;
+    private final int totalWeight;
+    private final int phase1Threshold;
+    private final int phase2Threshold;
+
+    public QuorumSystem(Map<Integer, Integer> weights, int phase1Threshold, int phase2Threshold) {
+        int total = 0;
+        for (Map.Entry<Integer, Integer> weight : weights.entrySet()) {
+            if (weight.getValue() < 0) {
+                throw new IllegalArgumentException("Member " + weight.getKey() + " has a negative weight");
+            }
+            total += weight.getValue();
+        }
+        if (phase1Threshold < 1 || phase1Threshold > total || phase2Threshold < 1 || phase2Threshold > total) {
+            throw new IllegalArgumentException("Quorum thresholds " + phase1Threshold + " and " + phase2Threshold
+                    + " must be between 1 and the total weight " + total);
+        }
+        if (phase1Threshold + phase2Threshold <= total) {
+            throw new IllegalArgumentException("Phase 1 threshold " + phase1Threshold + " and phase 2 threshold "
+                    + phase2Threshold + " do not add up to more than the total weight " + total
+                    + ", so a phase 1 quorum could miss a value chosen by a phase 2 quorum");
+        }
+        this.weights = Collections.unmodifiableMap(new LinkedHashMap<>(weights));
+        this.totalWeight = total;
+        this.phase1Threshold = phase1Threshold;
+        this.phase2Threshold = phase2Threshold;
+    }
+
+    // A majority of the members in both phases, every vote counting the same
+    public static QuorumSystem majority(Collection<Integer> memberIds) {
+        return flexible(memberIds, memberIds.size() / 2 + 1, memberIds.size() / 2 + 1);
+    }
+
+    // Any phase1Size members for phase 1 and any phase2Size members for phase 2
+    public static QuorumSystem flexible(Collection<Integer> memberIds, int phase1Size, int phase2Size) {
+        Map<Integer, Integer> weights = new LinkedHashMap<>();
+        for (int memberId : memberIds) {
+            weights.put(memberId, 1);
+        }
+        return new QuorumSystem(weights, phase1Size, phase2Size);
+    }
+
+    // Checks that the system weighs exactly the given members and that each of them can gather a quorum in both
+    // phases from the others' votes
+    public void validate(Collection<Integer> memberIds) {
+        if (!weights.keySet().equals(new HashSet<>(memberIds))) {
+            throw new IllegalArgumentException("Quorum system weighs members " + weights.keySet()
+                    + " but the council is " + memberIds);
+        }
+        for (int memberId : memberIds) {
+            int others = totalWeight - weight(memberId);
+            if (others < Math.max(phase1Threshold, phase2Threshold)) {
+                throw new IllegalArgumentException("Member " + memberId + " can never gather a quorum, the other "
+                        + "members weigh " + others + " of the " + Math.max(phase1Threshold, phase2Threshold)
+                        + " needed");
+            }
+        }
+    }
+
+    public int weight(int memberId) {
+        Integer weight = weights.get(memberId);
+        return weight == null ? 0 : weight;
+    }
+
+    public int totalWeight() {
+        return totalWeight;
+    }
+
+    public int phase1Threshold() {
+        return phase1Threshold;
+    }
+
+    public int phase2Threshold() {
+        return phase2Threshold;
+    }
+
+    // Weights in the order of the given members, the form VoteSet counts them in
+    public int[] weights(List<Integer> memberIds) {
+        int[] byIndex = new int[memberIds.size()];
+        for (int i = 0; i < byIndex.length; i++) {
+            byIndex[i] = weight(memberIds.get(i));
+        }
+        return byIndex;
+    }
+
+    public String toString() {
+        return "phase 1 " + phase1Threshold + ", phase 2 " + phase2Threshold + " of " + totalWeight + " " + weights;
+    }
+}
@@ -0,0 +1,115 @@
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+
+public class QuorumSystemTest {
+    private static final long MAX_VIRTUAL_MILLIS = 60000;
+
+    @Before
+    public void setUp() {
+        EventLog.shared().setLevel(EventLog.Level.OFF);
+    }
+
+    @After
+    public void cleanUp() {
+        EventLog.shared().setLevel(EventLog.Level.INFO);
+    }
+
+    private static List<Integer> council(int size) {
+        List<Integer> memberIds = new ArrayList<>();
+        for (int id = 1; id <= size; id++) {
+            memberIds.add(id);
+        }
+        return memberIds;
+    }
+
+    @Test
+    public void testMajorityOfNine() {
+        QuorumSystem quorums = QuorumSystem.majority(council(9));
+        assertEquals(9, quorums.totalWeight());
+        assertEquals(5, quorums.phase1Threshold());
+        assertEquals(5, quorums.phase2Threshold());
+        quorums.validate(council(9));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testQuorumsThatDoNotIntersectAreRejected() {
+        // A phase 1 quorum of 4 could consist only of members outside a phase 2 quorum of 5
+        QuorumSystem.flexible(council(9), 4, 5);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testThresholdAboveTotalWeightIsRejected() {
+        QuorumSystem.flexible(council(9), 10, 3);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSystemForAnotherCouncilIsRejected() {
+        Simulator sim = new Simulator(1, 9);
+        sim.member(1).setQuorumSystem(QuorumSystem.majority(council(8)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMemberThatCanNeverGatherAQuorumIsRejected() {
+        // Member 1 carries 4 of the 12, the other members only reach 8 of the 9 phase 1 needs without it
+        Map<Integer, Integer> weights = new LinkedHashMap<>();
+        for (int id = 1; id <= 9; id++) {
+            weights.put(id, id == 1 ? 4 : 1);
+        }
+        new QuorumSystem(weights, 9, 4).validate(council(9));
+    }
+
+    @Test
+    public void testSmallPhase2QuorumDecidesWithoutSlowMembers() {
+        // Phase 1 needs 7 of the 9, phase 2 only 3
+        Simulator sim = new Simulator(19, 9, member -> {
+            member.setStableLeader(true);
+            member.setQuorumSystem(QuorumSystem.flexible(council(9), 7, 3));
+        });
+        for (CouncilMember member : sim.members()) {
+            member.responseProfile = CouncilMember.ResponseProfile.IMMEDIATE;
+        }
+        sim.member(1).propose("Value_0");
+        assertTrue(sim.runUntil(() -> sim.member(1).deliveredUpTo() == 1, MAX_VIRTUAL_MILLIS));
+
+        // Members 5 to 9 stop answering, a majority would no longer be reached
+        for (int id = 5; id <= 9; id++) {
+            sim.member(id).responseProfile = CouncilMember.ResponseProfile.OFFLINE;
+        }
+        for (int round = 1; round <= 3; round++) {
+            sim.member(1).propose("Value_" + round);
+        }
+
+        // Assertion: the leader went on deciding slots with the phase 2 votes of members 2 to 4
+        assertTrue(sim.runUntil(() -> sim.member(1).deliveredUpTo() == 4, MAX_VIRTUAL_MILLIS));
+        assertEquals(1, sim.member(1).currentLeader());
+        assertEquals("Value_3", sim.member(2).acceptorSlot(3).acceptedValue);
+        sim.checkSafety();
+    }
+
+    @Test
+    public void testMembersWithoutWeightAreNotWaitedFor() {
+        // Members 6 to 9 are offline and carry no weight, 3 of the 5 that remain decide
+        Map<Integer, Integer> weights = new LinkedHashMap<>();
+        for (int id = 1; id <= 9; id++) {
+            weights.put(id, id <= 5 ? 1 : 0);
+        }
+        Simulator sim = new Simulator(23, 9, member -> member.setQuorumSystem(new QuorumSystem(weights, 3, 3)));
+        for (int id = 6; id <= 9; id++) {
+            sim.member(id).responseProfile = CouncilMember.ResponseProfile.OFFLINE;
+        }
+        sim.member(1).propose("Candidate_A");
+
+        // Assertion: member 1 decided with 4 of the other 8 members answering, fewer than a majority of the council
+        assertTrue(sim.runUntil(() -> sim.member(1).learnedValue != null, MAX_VIRTUAL_MILLIS));
+        assertEquals("Candidate_A", sim.member(1).learnedValue);
+        sim.checkSafety();
+    }
+}
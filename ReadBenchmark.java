@@ -0,0 +1,104 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.*;
+
+// Linearizable reads on a stable leader over TCP, served with a READ_INDEX confirmation against a full consensus
+// round per read, where the read is proposed as a value and answered once it is delivered. A fixed number of clients
+// each issue a read and wait for it before issuing the next. The leader has a pipeline window of 16 either way
+public class ReadBenchmark {
+    private static final int CLIENTS = 64;
+    private static final int READS_PER_CLIENT = 100;
+    private static final int MEMBERS = 9;
+    private static final int WINDOW = 16;
+
+    public static void main(String[] args) throws Exception {
+        // Keep the members' event log out of the measurements
+        EventLog.shared().setLevel(EventLog.Level.OFF);
+
+        int basePort = 7700;
+        for (boolean readIndex : new boolean[]{false, true}) {
+            long[] latencies = new long[CLIENTS * READS_PER_CLIENT];
+            double seconds = measure(readIndex, basePort, latencies);
+            basePort += 10;
+            Arrays.sort(latencies);
+            System.out.printf("%-16s %9.0f reads/s  p50 %8.2f ms  p99 %8.2f ms%n",
+                    readIndex ? "read index" : "consensus round", latencies.length / seconds,
+                    latencies[latencies.length / 2] / 1e6, latencies[(int) (latencies.length * 0.99)] / 1e6);
+        }
+    }
+
+    private static double measure(boolean readIndex, int basePort, long[] latencies) throws Exception {
+        Map<Integer, Integer> memberPorts = new HashMap<>();
+        for (int i = 1; i <= MEMBERS; i++) {
+            memberPorts.put(i, basePort + i);
+        }
+        // Clients reading through consensus wait on a latch that the leader releases when it delivers their value
+        Map<String, CountDownLatch> waiting = new ConcurrentHashMap<>();
+        CouncilMember[] members = new CouncilMember[MEMBERS];
+        for (int i = 0; i < MEMBERS; i++) {
+            members[i] = new CouncilMember(i + 1, basePort + i + 1, memberPorts) {
+                @Override
+                protected void deliver(int instance, String value) {
+                    super.deliver(instance, value);
+                    for (String delivered : ValueBatch.decode(value)) {
+                        CountDownLatch latch = waiting.remove(delivered);
+                        if (latch != null) {
+                            latch.countDown();
+                        }
+                    }
+                }
+            };
+            members[i].responseProfile = CouncilMember.ResponseProfile.IMMEDIATE;
+            members[i].setStableLeader(true);
+            new Thread(members[i]).start();
+        }
+        CouncilMember leader = members[0];
+        leader.setPipelineWindow(WINDOW);
+        Thread.sleep(200);
+        // The leader wins phase 1 with the first value, reads are only served once it leads
+        CountDownLatch elected = new CountDownLatch(1);
+        waiting.put("Value_0", elected);
+        leader.propose("Value_0");
+        if (!elected.await(30, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("No value was decided");
+        }
+
+        ExecutorService clients = Executors.newFixedThreadPool(CLIENTS);
+        long start = System.nanoTime();
+        for (int c = 0; c < CLIENTS; c++) {
+            int client = c;
+            clients.execute(() -> {
+                for (int i = 0; i < READS_PER_CLIENT; i++) {
+                    long readStart = System.nanoTime();
+                    try {
+                        if (readIndex) {
+                            leader.readLearnedValue().get(30, TimeUnit.SECONDS);
+                        } else {
+                            String read = "Read_" + client + "_" + i;
+                            CountDownLatch latch = new CountDownLatch(1);
+                            waiting.put(read, latch);
+                            leader.propose(read);
+                            if (!latch.await(30, TimeUnit.SECONDS)) {
+                                throw new IllegalStateException(read + " was not decided");
+                            }
+                        }
+                    } catch (InterruptedException e) {
+                        return;
+                    } catch (ExecutionException | TimeoutException e) {
+                        throw new IllegalStateException("Read failed", e);
+                    }
+                    latencies[client * READS_PER_CLIENT + i] = System.nanoTime() - readStart;
+                }
+            });
+        }
+        clients.shutdown();
+        clients.awaitTermination(5, TimeUnit.MINUTES);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        for (CouncilMember member : members) {
+            member.shutdown();
+        }
+        return seconds;
+    }
+}
@@ -0,0 +1,129 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Throughput around a membership change, in the deterministic simulator. A council of 5 with a stable leader takes
+// a steady stream of client values, member 2 is slow. Halfway through, member 6 is started and the council is
+// reconfigured to replace member 2 with it, or to replace the leader itself. Values are counted as member 3, which
+// is in both councils, delivers them, in buckets of virtual time. Reports the steady throughput before the change,
+// the worst bucket before it for the noise and in the first seconds after it, the outage: the values missing against
+// the steady throughput in the seconds after the change as that much time without any, and the commit latency
+// before and after. Averaged over several seeds, for two reconfiguration windows
+public class ReconfigurationBenchmark {
+    private static final int MEMBERS = 5;
+    private static final int SEEDS = 20;
+    private static final long INTERVAL_MILLIS = 10;
+    private static final long BUCKET_MILLIS = 500;
+    private static final long WORST_WITHIN_MILLIS = 3000;
+    private static final long OUTAGE_WITHIN_MILLIS = 5000;
+    private static final long CHANGE_AT_MILLIS = 10000;
+    private static final long RUN_MILLIS = 20000;
+    private static final int[] ALPHAS = {8, 64};
+
+    public static void main(String[] args) {
+        // Keep the members' event log out of the measurements
+        EventLog.shared().setLevel(EventLog.Level.OFF);
+        for (boolean replaceLeader : new boolean[]{false, true}) {
+            for (int alpha : ALPHAS) {
+                measure(replaceLeader, alpha);
+            }
+        }
+    }
+
+    private static void measure(boolean replaceLeader, int alpha) {
+        int buckets = (int) (RUN_MILLIS / BUCKET_MILLIS);
+        long[] delivered = new long[buckets];
+        List<Long> before = new ArrayList<>();
+        List<Long> after = new ArrayList<>();
+        for (int seed = 1; seed <= SEEDS; seed++) {
+            run(seed, replaceLeader, alpha, delivered, before, after);
+        }
+
+        int changeBucket = (int) (CHANGE_AT_MILLIS / BUCKET_MILLIS);
+        // The first second is the leader's election and the pipeline filling
+        int from = (int) (1000 / BUCKET_MILLIS);
+        double steady = 0;
+        double worstBefore = Double.MAX_VALUE;
+        for (int b = from; b < changeBucket; b++) {
+            steady += rate(delivered[b]);
+            worstBefore = Math.min(worstBefore, rate(delivered[b]));
+        }
+        steady /= changeBucket - from;
+        double worstAfter = Double.MAX_VALUE;
+        for (int b = changeBucket; b < changeBucket + WORST_WITHIN_MILLIS / BUCKET_MILLIS; b++) {
+            worstAfter = Math.min(worstAfter, rate(delivered[b]));
+        }
+        // Values missing against the steady throughput after the change, as that many milliseconds without any
+        long missing = 0;
+        for (int b = changeBucket; b < changeBucket + OUTAGE_WITHIN_MILLIS / BUCKET_MILLIS; b++) {
+            missing += Math.round(steady * BUCKET_MILLIS / 1000 - rate(delivered[b]) * BUCKET_MILLIS / 1000);
+        }
+        Collections.sort(before);
+        Collections.sort(after);
+        System.out.printf("replace %-8s alpha %2d   steady %4.0f values/s  worst %4.0f before, %4.0f after  "
+                        + "outage %5.0f ms   latency p50 %4d -> %4d ms%n",
+                replaceLeader ? "leader" : "member 2", alpha, steady, worstBefore, worstAfter,
+                missing * 1000 / steady, percentile(before, 0.5), percentile(after, 0.5));
+    }
+
+    // Values per second in a bucket, averaged over the seeds
+    private static double rate(long delivered) {
+        return delivered * 1000.0 / BUCKET_MILLIS / SEEDS;
+    }
+
+    private static void run(int seed, boolean replaceLeader, int alpha, long[] delivered, List<Long> before,
+                            List<Long> after) {
+        Simulator sim = new Simulator(seed, MEMBERS, member -> {
+            member.setStableLeader(true);
+            member.setReconfigurationWindow(alpha);
+            member.setPipelineWindow(8);
+            member.setBatching(16, 0);
+        });
+        sim.member(2).responseProfile = CouncilMember.ResponseProfile.SLOW;
+        CouncilMember observer = sim.member(3);
+        Map<String, Long> proposedAt = new HashMap<>();
+        int leader = 1;
+        int counted = 0;
+        int next = 0;
+        boolean changed = false;
+        while (sim.now() < RUN_MILLIS) {
+            if (!changed && sim.now() >= CHANGE_AT_MILLIS) {
+                changed = true;
+                sim.addMember(6);
+                List<Integer> members = replaceLeader ? Arrays.asList(2, 3, 4, 5, 6) : Arrays.asList(1, 3, 4, 5, 6);
+                sim.member(leader).reconfigure(members);
+            }
+            // Clients send their values to whichever member leads, or the one they last knew while there is none
+            for (CouncilMember member : sim.members()) {
+                if (member.isLeader && !sim.isCrashed(member.id)) {
+                    leader = member.id;
+                }
+            }
+            String value = "Value_" + next++;
+            proposedAt.put(value, sim.now());
+            sim.member(leader).propose(value);
+            sim.runFor(INTERVAL_MILLIS);
+
+            int bucket = (int) Math.min(delivered.length - 1, sim.now() / BUCKET_MILLIS);
+            for (; counted < observer.deliveredUpTo(); counted++) {
+                for (String decided : observer.chosenValues(counted)) {
+                    Long start = proposedAt.remove(decided);
+                    if (start == null) {
+                        // A reconfiguration, or a value decided twice after a leader change
+                        continue;
+                    }
+                    delivered[bucket]++;
+                    (start < CHANGE_AT_MILLIS ? before : after).add(sim.now() - start);
+                }
+            }
+        }
+        sim.checkSafety();
+    }
+
+    private static long percentile(List<Long> sorted, double fraction) {
+        return sorted.get((int) Math.ceil(fraction * sorted.size()) - 1);
+    }
+}
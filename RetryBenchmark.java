@@ -0,0 +1,63 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// Virtual time until a value is chosen in the deterministic simulator, with proposer retries off and on. Every
+// seed is one run of 9 members, proposers with the IMMEDIATE profile and everyone else with the profile under test.
+// With two proposers both propose at once and preempt each other. A run that has not chosen a value by
+// MAX_VIRTUAL_MILLIS counts as undecided and is left out of the percentiles
+public class RetryBenchmark {
+    private static final int MEMBERS = 9;
+    private static final int SEEDS = 200;
+    private static final long MAX_VIRTUAL_MILLIS = 120000;
+
+    public static void main(String[] args) {
+        // Keep the members' event log out of the measurements
+        EventLog.shared().setLevel(EventLog.Level.OFF);
+        for (int proposers = 1; proposers <= 2; proposers++) {
+            for (CouncilMember.ResponseProfile profile : new CouncilMember.ResponseProfile[]{
+                    CouncilMember.ResponseProfile.DELAY_LARGE, CouncilMember.ResponseProfile.SLOW}) {
+                for (boolean retries : new boolean[]{false, true}) {
+                    measure(proposers, profile, retries);
+                }
+            }
+        }
+    }
+
+    private static void measure(int proposers, CouncilMember.ResponseProfile profile, boolean retries) {
+        List<Long> decidedAfter = new ArrayList<>();
+        for (int seed = 1; seed <= SEEDS; seed++) {
+            Simulator sim = new Simulator(seed, MEMBERS, member -> member.setRetries(retries));
+            for (CouncilMember member : sim.members()) {
+                member.responseProfile = member.id <= proposers ? CouncilMember.ResponseProfile.IMMEDIATE : profile;
+            }
+            for (int id = 1; id <= proposers; id++) {
+                sim.member(id).propose("Candidate_" + id);
+            }
+            boolean decided = sim.runUntil(() -> {
+                for (int id = 1; id <= proposers; id++) {
+                    if (sim.member(id).learnedValue == null) {
+                        return false;
+                    }
+                }
+                return true;
+            }, MAX_VIRTUAL_MILLIS);
+            if (decided) {
+                decidedAfter.add(sim.now());
+            }
+        }
+
+        Collections.sort(decidedAfter);
+        System.out.printf("%d proposer%s %-12s retries %-3s  decided %5.1f%%  p50 %8s  p90 %8s%n", proposers,
+                proposers == 1 ? " " : "s", profile, retries ? "on" : "off", 100.0 * decidedAfter.size() / SEEDS,
+                percentile(decidedAfter, 0.5), percentile(decidedAfter, 0.9));
+    }
+
+    private static String percentile(List<Long> sorted, double fraction) {
+        int rank = (int) Math.ceil(fraction * SEEDS) - 1;
+        if (rank >= sorted.size()) {
+            return "-";
+        }
+        return String.format("%.1fs", sorted.get(rank) / 1e3);
+    }
+}
@@ -0,0 +1,73 @@
+import java.util.Random;
+
+// When a proposer gives up on a phase and how long it waits before trying again.
+//
+// The timeout follows measured round trips the way TCP sets its retransmission timeout (RFC 6298): the smoothed
+// round trip plus four times its mean deviation, with INITIAL_TIMEOUT_MILLIS until the first one is measured. A
+// phase that times out without a single reply doubles the timeout, as the estimate is evidently too low, until the
+// next round trip is measured. A phase that did get replies, just not enough of them, lost them to the network and
+// leaves the timeout alone.
+//
+// Before a retry the proposer waits a random time of up to one round trip, doubled for every rejection since the
+// last phase that reached its quorum, so proposers that preempted each other come back at different times instead
+// of colliding again. Timeouts do not grow the wait, a phase that lost its replies gains nothing from waiting longer
+public class RetryPolicy {
+    public static final long INITIAL_TIMEOUT_MILLIS = 3000;
+    public static final long MIN_TIMEOUT_MILLIS = 50;
+    public static final long MAX_TIMEOUT_MILLIS = 30000;
+    private static final int MAX_DOUBLINGS = 6;
+
+    private final Random random;
+    private double smoothedRoundTrip = -1;
+    private double roundTripDeviation = 0;
+    private int timeoutDoublings = 0;
+    private int rejections = 0;
+
+    public RetryPolicy(Random random) {
+        this.random = random;
+    }
+
+    // A phase settled, by reaching its quorum or by being rejected, this long after it was sent. Phases that were
+    // sent more than once are not measured, as there is no telling which attempt the replies answered
+    public synchronized void roundTrip(long millis) {
+        if (smoothedRoundTrip < 0) {
+            smoothedRoundTrip = millis;
+            roundTripDeviation = millis / 2.0;
+        } else {
+            roundTripDeviation = 0.75 * roundTripDeviation + 0.25 * Math.abs(smoothedRoundTrip - millis);
+            smoothedRoundTrip = 0.875 * smoothedRoundTrip + 0.125 * millis;
+        }
+        timeoutDoublings = 0;
+    }
+
+    // A phase reached its quorum
+    public synchronized void succeeded() {
+        rejections = 0;
+    }
+
+    // A phase did not reach its quorum in time, answered tells whether any member replied to it
+    public synchronized void timedOut(boolean answered) {
+        if (!answered) {
+            timeoutDoublings++;
+        }
+    }
+
+    // So many members turned a phase down that it could not reach its quorum
+    public synchronized void rejected() {
+        rejections++;
+    }
+
+    public synchronized long timeoutMillis() {
+        long timeout = INITIAL_TIMEOUT_MILLIS;
+        if (smoothedRoundTrip >= 0) {
+            timeout = Math.max(MIN_TIMEOUT_MILLIS, Math.round(smoothedRoundTrip + 4 * roundTripDeviation));
+        }
+        return Math.min(MAX_TIMEOUT_MILLIS, timeout << Math.min(timeoutDoublings, MAX_DOUBLINGS));
+    }
+
+    public synchronized long backoffMillis() {
+        long roundTrip = smoothedRoundTrip < 0 ? INITIAL_TIMEOUT_MILLIS / 2 : Math.max(1, Math.round(smoothedRoundTrip));
+        long bound = Math.min(MAX_TIMEOUT_MILLIS, roundTrip << Math.min(rejections, MAX_DOUBLINGS));
+        return (long) (random.nextDouble() * bound);
+    }
+}
@@ -0,0 +1,16 @@
+// Timers and the clock of a council member. Members run on an ExecutorScheduler with real time, the simulator
+// replaces it with virtual time so that heartbeats, batch windows and catch-up checks become reproducible events
+public interface Scheduler {
+    interface Task {
+        void cancel();
+    }
+
+    Task schedule(Runnable task, long delayMillis);
+
+    Task scheduleAtFixedRate(Runnable task, long initialDelayMillis, long periodMillis);
+
+    long currentTimeMillis();
+
+    // Cancels everything scheduled, later calls to schedule fail with RejectedExecutionException
+    void shutdown();
+}
@@ -0,0 +1,97 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+
+// Throughput of a replicated key-value store partitioned over a growing number of Paxos groups. Three processes,
+// simulated by three ShardedCouncils over TCP in this JVM, each run a member of every group. The leaders are spread
+// over the three, and a fixed number of clients each put random keys, one at a time, through the process that leads
+// the key's group. Every group has a pipeline window of 16 and batches values, as in KeyValueBenchmark. With a
+// single group every command goes through one lock and one acceptor state per process, more groups let the cores
+// work on different groups at the same time
+public class ShardedBenchmark {
+    private static final int MEMBERS = 3;
+    private static final int[] GROUPS = {1, 2, 4, 8, 16, 32, 64};
+    private static final int CLIENTS = 128;
+    private static final int OPS_PER_CLIENT = 200;
+    private static final int KEYS = 4096;
+    private static final int WINDOW = 16;
+
+    public static void main(String[] args) throws Exception {
+        // Keep the members' event log out of the measurements
+        EventLog.shared().setLevel(EventLog.Level.OFF);
+
+        System.out.println(Runtime.getRuntime().availableProcessors() + " cores");
+        int basePort = 7900;
+        for (int groups : GROUPS) {
+            long[] latencies = new long[CLIENTS * OPS_PER_CLIENT];
+            double seconds = measure(groups, basePort, latencies);
+            basePort += 10;
+            Arrays.sort(latencies);
+            System.out.printf("%2d groups  %9.0f ops/s  p50 %8.2f ms  p99 %8.2f ms%n", groups,
+                    latencies.length / seconds, latencies[latencies.length / 2] / 1e6,
+                    latencies[(int) (latencies.length * 0.99)] / 1e6);
+        }
+    }
+
+    private static double measure(int groups, int basePort, long[] latencies) throws Exception {
+        Map<Integer, Integer> memberPorts = new HashMap<>();
+        for (int i = 1; i <= MEMBERS; i++) {
+            memberPorts.put(i, basePort + i);
+        }
+        List<Integer> memberIds = Arrays.asList(1, 2, 3);
+        ShardedCouncil[] councils = new ShardedCouncil[MEMBERS];
+        for (int i = 0; i < MEMBERS; i++) {
+            councils[i] = new ShardedCouncil(i + 1, memberIds,
+                    new SocketTransport(basePort + i + 1, memberPorts, new BinaryMessageCodec()), groups, member -> {
+                        member.setStableLeader(true);
+                        member.setStateMachine(new KeyValueStore());
+                        member.setPipelineWindow(WINDOW);
+                        member.setBatching(64, 0);
+                    });
+            new Thread(councils[i]).start();
+        }
+        Thread.sleep(200);
+        // The first command of each group makes the member that proposes it the group's leader
+        for (int group = 0; group < groups; group++) {
+            leader(councils, group).group(group).submit(KeyValueStore.put("warm-up-" + group, "warm-up", "0"))
+                    .get(30, TimeUnit.SECONDS);
+        }
+
+        ExecutorService clients = Executors.newFixedThreadPool(CLIENTS);
+        long start = System.nanoTime();
+        for (int c = 0; c < CLIENTS; c++) {
+            int client = c;
+            clients.execute(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < OPS_PER_CLIENT; i++) {
+                    String key = "key-" + random.nextInt(KEYS);
+                    String command = KeyValueStore.put("client-" + client + "-" + i, key, "value-" + client + "-" + i);
+                    long opStart = System.nanoTime();
+                    try {
+                        leader(councils, councils[0].groupOf(key)).submit(key, command).get(30, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        return;
+                    } catch (ExecutionException | TimeoutException e) {
+                        throw new IllegalStateException("Command failed", e);
+                    }
+                    latencies[client * OPS_PER_CLIENT + i] = System.nanoTime() - opStart;
+                }
+            });
+        }
+        clients.shutdown();
+        clients.awaitTermination(5, TimeUnit.MINUTES);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        for (ShardedCouncil council : councils) {
+            council.shutdown();
+        }
+        return seconds;
+    }
+
+    // The process that leads a group, the leaders are spread over the processes by group
+    private static ShardedCouncil leader(ShardedCouncil[] councils, int group) {
+        return councils[group % MEMBERS];
+    }
+}
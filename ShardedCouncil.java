@@ -0,0 +1,98 @@
+import java.util.Collection;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+// One process's members of many independent Paxos groups, for partitioning a workload that a single council would
+// serialize behind one lock and one acceptor state. Every process runs a ShardedCouncil with the same member IDs
+// and number of groups, and group g of each process is a council of its own: its own log, acceptor state, lock and
+// leader. The groups of a process share its transport, through a SharedTransport that tells their messages apart by
+// group, a pool of protocol threads and a timer scheduler.
+//
+// Values are routed to a group by the hash of their key. String.hashCode is the same in every JVM, so every process
+// agrees on the group of a key. Which member leads a group is decided as in any stable council: the first member to
+// propose in it takes it and the others forward their values to it. Spreading the first proposal of each group over
+// the processes spreads the leaders, and with them the work of leading
+public class ShardedCouncil implements Runnable {
+    public final int id;
+    private final SharedTransport transport;
+    private final ThreadPoolExecutor protocolExecutor;
+    private final ExecutorScheduler timers;
+    private final CouncilMember[] groups;
+
+    public ShardedCouncil(int id, Collection<Integer> memberIds, Transport transport, int groups) {
+        this(id, memberIds, transport, groups, member -> {});
+    }
+
+    // setup configures the member of each group before it handles any message. Members respond immediately, a
+    // simulated response delay would hold a protocol thread that every group shares
+    public ShardedCouncil(int id, Collection<Integer> memberIds, Transport transport, int groups,
+                          Consumer<CouncilMember> setup) {
+        if (groups < 1) {
+            throw new IllegalArgumentException("At least one group is needed");
+        }
+        this.id = id;
+        this.transport = new SharedTransport(id, transport);
+        // Enough threads for every core, the queue bounded per group as it is for a member with a pool of its own
+        int threads = Math.max(CouncilMember.PROTOCOL_THREADS, Runtime.getRuntime().availableProcessors());
+        protocolExecutor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(CouncilMember.PROTOCOL_QUEUE_SIZE * groups), runnable -> {
+                    Thread thread = new Thread(runnable, "member-" + id + "-protocol");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        protocolExecutor.allowCoreThreadTimeOut(true);
+        timers = new ExecutorScheduler("member-" + id + "-timer", Runtime.getRuntime().availableProcessors());
+        this.groups = new CouncilMember[groups];
+        for (int group = 0; group < groups; group++) {
+            CouncilMember member = new CouncilMember(id, memberIds, this.transport.channel(group), protocolExecutor,
+                    new SharedScheduler(timers));
+            member.setGroup(group);
+            member.setResponseProfile(CouncilMember.ResponseProfile.IMMEDIATE);
+            setup.accept(member);
+            this.groups[group] = member;
+        }
+    }
+
+    public void run() {
+        // The shared transport delivers inbound messages for every group until the council is stopped
+        transport.run();
+    }
+
+    public int groups() {
+        return groups.length;
+    }
+
+    public CouncilMember group(int group) {
+        return groups[group];
+    }
+
+    public int groupOf(String key) {
+        return Math.floorMod(key.hashCode(), groups.length);
+    }
+
+    // This process's member of the group that key belongs to
+    public CouncilMember member(String key) {
+        return groups[groupOf(key)];
+    }
+
+    public void propose(String key, String value) {
+        member(key).propose(value);
+    }
+
+    // Submits command to the state machine of key's group, see CouncilMember.submit
+    public CompletableFuture<String> submit(String key, String command) {
+        return member(key).submit(command);
+    }
+
+    public void shutdown() {
+        for (CouncilMember member : groups) {
+            member.shutdown();
+        }
+        transport.close();
+        protocolExecutor.shutdownNow();
+        timers.shutdown();
+    }
+}
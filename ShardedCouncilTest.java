@@ -0,0 +1,130 @@
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+public class ShardedCouncilTest {
+    private static final int MEMBERS = 3;
+    private static final int GROUPS = 4;
+    private static final int MAX_WAIT_SECONDS = 30;
+
+    private final List<ShardedCouncil> councils = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        EventLog.shared().setLevel(EventLog.Level.OFF);
+    }
+
+    @After
+    public void cleanUp() {
+        for (ShardedCouncil council : councils) {
+            council.shutdown();
+        }
+        EventLog.shared().setLevel(EventLog.Level.INFO);
+    }
+
+    private ShardedCouncil[] startCouncils() {
+        InMemoryTransport.Network network = new InMemoryTransport.Network();
+        ShardedCouncil[] started = new ShardedCouncil[MEMBERS];
+        for (int i = 0; i < MEMBERS; i++) {
+            started[i] = new ShardedCouncil(i + 1, Arrays.asList(1, 2, 3), new InMemoryTransport(network), GROUPS,
+                    member -> {
+                        member.setStableLeader(true);
+                        member.setStateMachine(new KeyValueStore());
+                    });
+            councils.add(started[i]);
+            new Thread(started[i]).start();
+        }
+        return started;
+    }
+
+    @Test
+    public void testGroupsDecideIndependentlyWithTheirOwnLeaders() throws Exception {
+        ShardedCouncil[] councils = startCouncils();
+
+        // The first command of group g goes through member g % 3 + 1, which takes the lead of that group
+        for (int group = 0; group < GROUPS; group++) {
+            councils[group % MEMBERS].group(group).submit(KeyValueStore.put("warm-up-" + group, "warm-up", "0"))
+                    .get(MAX_WAIT_SECONDS, TimeUnit.SECONDS);
+        }
+
+        List<CompletableFuture<String>> puts = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            String key = "key-" + i;
+            // Clients of every member, so some commands are forwarded to their group's leader
+            puts.add(councils[i % MEMBERS].submit(key, KeyValueStore.put("put-" + i, key, "value-" + i)));
+        }
+        for (CompletableFuture<String> put : puts) {
+            assertNull(put.get(MAX_WAIT_SECONDS, TimeUnit.SECONDS));
+        }
+
+        // Assertion: each group is led by the member that proposed in it first
+        for (int group = 0; group < GROUPS; group++) {
+            for (ShardedCouncil council : councils) {
+                assertEquals(group % MEMBERS + 1, council.group(group).currentLeader());
+            }
+        }
+
+        // Assertion: a key is stored in its own group only, once every member has applied the puts
+        int[] sizes = new int[GROUPS];
+        for (int i = 0; i < 40; i++) {
+            sizes[councils[0].groupOf("key-" + i)]++;
+        }
+        long deadline = System.currentTimeMillis() + MAX_WAIT_SECONDS * 1000;
+        for (ShardedCouncil council : councils) {
+            for (int group = 0; group < GROUPS; group++) {
+                KeyValueStore store = (KeyValueStore) council.group(group).stateMachine();
+                while (store.size() < sizes[group] + 1 && System.currentTimeMillis() < deadline) {
+                    Thread.sleep(20);
+                }
+                assertEquals(sizes[group] + 1, store.size());
+            }
+            for (int i = 0; i < 40; i++) {
+                String key = "key-" + i;
+                assertEquals("value-" + i, ((KeyValueStore) council.member(key).stateMachine()).value(key));
+            }
+        }
+        for (int group = 0; group < GROUPS; group++) {
+            assertTrue(sizes[group] > 0);
+        }
+    }
+
+    @Test
+    public void testSharedTransportKeepsGroupsApart() throws Exception {
+        InMemoryTransport.Network network = new InMemoryTransport.Network();
+        SharedTransport first = new SharedTransport(1, new InMemoryTransport(network));
+        SharedTransport second = new SharedTransport(2, new InMemoryTransport(network));
+        List<Message> groupZero = new ArrayList<>();
+        List<Message> groupSeven = new ArrayList<>();
+        Transport sender = first.channel(7);
+        sender.open(1, msg -> fail("Member 1 sent itself a message"));
+        second.channel(0).open(2, groupZero::add);
+        Transport receiver = second.channel(7);
+        receiver.open(2, groupSeven::add);
+
+        sender.send(2, new Message(Message.MessageType.PREPARE, 1, 101, null, 5));
+        // Assertion: the message reaches the member of its own group only
+        assertEquals(1, groupSeven.size());
+        assertEquals(7, groupSeven.get(0).group);
+        assertTrue(groupZero.isEmpty());
+
+        // Assertion: a closed group's messages are dropped and a channel cannot be opened twice
+        receiver.close();
+        sender.send(2, new Message(Message.MessageType.PREPARE, 1, 201, null, 5));
+        assertEquals(1, groupSeven.size());
+        try {
+            second.channel(0).open(2, msg -> {});
+            fail("Opened a second member of group 0");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        first.close();
+        second.close();
+    }
+}
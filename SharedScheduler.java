@@ -0,0 +1,84 @@
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+
+// A member's share of a scheduler that runs the timers of many members, like the members of the Paxos groups in
+// one process. Tasks go to the scheduler underneath, shutdown cancels only the ones scheduled through this share
+// and leaves the scheduler running for the others
+public class SharedScheduler implements Scheduler {
+    private final Scheduler scheduler;
+    // Tasks that are still pending, a one-off task leaves once it has run
+    private final Set<TrackedTask> tasks = ConcurrentHashMap.newKeySet();
+    private volatile boolean shutdown = false;
+
+    public SharedScheduler(Scheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    private class TrackedTask implements Task {
+        private volatile Task scheduled;
+        private volatile boolean cancelled = false;
+
+        public void cancel() {
+            cancelled = true;
+            tasks.remove(this);
+            Task task = scheduled;
+            if (task != null) {
+                task.cancel();
+            }
+        }
+    }
+
+    public Task schedule(Runnable task, long delayMillis) {
+        TrackedTask tracked = track();
+        tracked.scheduled = scheduler.schedule(() -> {
+            tasks.remove(tracked);
+            if (!tracked.cancelled) {
+                task.run();
+            }
+        }, delayMillis);
+        return scheduled(tracked);
+    }
+
+    public Task scheduleAtFixedRate(Runnable task, long initialDelayMillis, long periodMillis) {
+        TrackedTask tracked = track();
+        tracked.scheduled = scheduler.scheduleAtFixedRate(() -> {
+            if (!tracked.cancelled) {
+                task.run();
+            }
+        }, initialDelayMillis, periodMillis);
+        return scheduled(tracked);
+    }
+
+    public long currentTimeMillis() {
+        return scheduler.currentTimeMillis();
+    }
+
+    public void shutdown() {
+        shutdown = true;
+        for (TrackedTask task : tasks) {
+            task.cancel();
+        }
+    }
+
+    private TrackedTask track() {
+        if (shutdown) {
+            throw new RejectedExecutionException("Scheduler shut down");
+        }
+        TrackedTask tracked = new TrackedTask();
+        tasks.add(tracked);
+        if (shutdown) {
+            // Shut down in between, possibly without seeing this task
+            tracked.cancel();
+        }
+        return tracked;
+    }
+
+    // Cancels the task underneath too when the share was shut down while it was being scheduled
+    private Task scheduled(TrackedTask tracked) {
+        if (tracked.cancelled) {
+            tracked.scheduled.cancel();
+        }
+        return tracked;
+    }
+}
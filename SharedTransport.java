@@ -0,0 +1,89 @@
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.Consumer;
+
+// One transport carrying the messages of many Paxos groups, for a process that runs a member of each. Every group's
+// member opens the channel of its group instead of a transport of its own. Messages are stamped with the group on
+// the way out and handed to that group's member on the way in, so the groups share the connections, reader thread
+// and senders of the transport underneath. A message for a group with no member open here is dropped.
+//
+// The transport underneath is opened, served and closed by whoever created this one, not by the members
+public class SharedTransport {
+    private final int memberId;
+    private final Transport transport;
+    private final Map<Integer, Consumer<Message>> receivers = new ConcurrentHashMap<>();
+
+    public SharedTransport(int memberId, Transport transport) {
+        this.memberId = memberId;
+        this.transport = transport;
+        transport.open(memberId, this::receive);
+    }
+
+    public Transport channel(int group) {
+        if (group < 0) {
+            throw new IllegalArgumentException("Group must not be negative");
+        }
+        return new Channel(group);
+    }
+
+    // Serves inbound messages for every group until the transport is closed
+    public void run() {
+        transport.run();
+    }
+
+    public void close() {
+        transport.close();
+    }
+
+    private void receive(Message msg) {
+        Consumer<Message> receiver = receivers.get(msg.group);
+        if (receiver != null) {
+            receiver.accept(msg);
+        }
+    }
+
+    private class Channel implements Transport {
+        private final int group;
+        private final CountDownLatch closed = new CountDownLatch(1);
+
+        Channel(int group) {
+            this.group = group;
+        }
+
+        public void open(int memberId, Consumer<Message> receiver) {
+            if (memberId != SharedTransport.this.memberId) {
+                throw new IllegalArgumentException("Member " + memberId + " cannot open a channel of member "
+                        + SharedTransport.this.memberId + "'s transport");
+            }
+            if (receivers.putIfAbsent(group, receiver) != null) {
+                throw new IllegalStateException("Group " + group + " already has a member on this transport");
+            }
+        }
+
+        public void run() {
+            // The shared transport serves inbound messages, there is nothing to serve here
+            try {
+                closed.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        public void send(int recipientId, Message msg) throws IOException {
+            if (closed.getCount() == 0) {
+                throw new IOException("Channel closed");
+            }
+            msg.group = group;
+            transport.send(recipientId, msg);
+        }
+
+        public void close() {
+            if (closed.getCount() > 0) {
+                receivers.remove(group);
+                closed.countDown();
+            }
+        }
+    }
+}
@@ -0,0 +1,48 @@
+
+// Consensus rounds per second of wall clock time in the deterministic simulator, on the calling thread only. Every
+// round proposes one value and runs until all 9 members have delivered it
+public class SimulationBenchmark {
+    private static final int ROUNDS = 20000;
+    private static final int WARMUP = 2000;
+    private static final int MEMBERS = 9;
+
+    public static void main(String[] args) throws Exception {
+        // Keep the members' event log out of the measurements
+        EventLog.shared().setLevel(EventLog.Level.OFF);
+        for (boolean stableLeader : new boolean[]{false, true}) {
+            for (CouncilMember.ResponseProfile profile : new CouncilMember.ResponseProfile[]{
+                    CouncilMember.ResponseProfile.IMMEDIATE, CouncilMember.ResponseProfile.DELAY_LARGE}) {
+                Simulator sim = new Simulator(1, MEMBERS, member -> member.setStableLeader(stableLeader));
+                for (CouncilMember member : sim.members()) {
+                    member.responseProfile = profile;
+                }
+                run(sim, 0, WARMUP);
+                long start = System.nanoTime();
+                long virtualStart = sim.now();
+                run(sim, WARMUP, ROUNDS);
+                double seconds = (System.nanoTime() - start) / 1e9;
+                System.out.printf("%-14s %-12s %9.0f rounds/s  %8.1f virtual s simulated%n",
+                        stableLeader ? "stable leader" : "two phase", profile, ROUNDS / seconds,
+                        (sim.now() - virtualStart) / 1e3);
+            }
+        }
+    }
+
+    private static void run(Simulator sim, int first, int rounds) {
+        for (int round = first; round < first + rounds; round++) {
+            int slot = round;
+            sim.member(1).propose("Value_" + round);
+            boolean decided = sim.runUntil(() -> {
+                for (CouncilMember member : sim.members()) {
+                    if (member.deliveredUpTo() <= slot) {
+                        return false;
+                    }
+                }
+                return true;
+            }, sim.now() + 60000);
+            if (!decided) {
+                throw new IllegalStateException("Round " + round + " did not finish, seed " + sim.seed());
+            }
+        }
+    }
+}
@@ -0,0 +1,457 @@
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+
+
+// Runs the protocol in the deterministic simulator. The randomized scenarios cover many seeds in virtual time; a
+// failure names its seed, and running with -Dsimulation.seed=<seed> replays only that one
+public class SimulationTest {
+    private static final int SEEDS = 300;
+    private static final long MAX_VIRTUAL_MILLIS = 60000;
+    private static final CouncilMember.ResponseProfile[] PROFILES = {
+        CouncilMember.ResponseProfile.IMMEDIATE,
+        CouncilMember.ResponseProfile.DELAY_SMALL,
+        CouncilMember.ResponseProfile.DELAY_LARGE,
+        CouncilMember.ResponseProfile.SLOW
+    };
+
+    @Before
+    public void setUp() {
+        // Thousands of rounds of learned values would flood the console
+        EventLog.shared().setLevel(EventLog.Level.OFF);
+    }
+
+    @After
+    public void cleanUp() {
+        EventLog.shared().setLevel(EventLog.Level.INFO);
+    }
+
+    private static boolean allLearned(Simulator sim) {
+        for (CouncilMember member : sim.members()) {
+            if (member.learnedValue == null && !sim.isCrashed(member.id)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // A council of 9 with random response profiles, competing proposers, lost messages and a member that crashes
+    // and restarts, all chosen from the seed
+    private static Simulator randomScenario(long seed) {
+        Random scenario = new Random(seed);
+        boolean stableLeader = scenario.nextBoolean();
+        Simulator sim = new Simulator(seed, 9, member -> member.setStableLeader(stableLeader));
+        for (CouncilMember member : sim.members()) {
+            member.responseProfile = PROFILES[scenario.nextInt(PROFILES.length)];
+        }
+        sim.setMessageLoss(scenario.nextDouble() * 0.1);
+
+        int proposers = 1 + scenario.nextInt(3);
+        for (int p = 0; p < proposers; p++) {
+            int proposer = 1 + scenario.nextInt(9);
+            String value = "Candidate_" + (char) ('A' + p);
+            sim.at(scenario.nextInt(1000), () -> sim.member(proposer).propose(value));
+        }
+        int victim = 1 + scenario.nextInt(9);
+        long crashAt = scenario.nextInt(2000);
+        sim.crash(victim, crashAt);
+        sim.restart(victim, crashAt + scenario.nextInt(3000));
+        return sim;
+    }
+
+    @Test
+    public void testRandomScenariosStaySafe() {
+        String replay = System.getProperty("simulation.seed");
+        List<Long> seeds = new ArrayList<>();
+        if (replay != null) {
+            seeds.add(Long.parseLong(replay));
+        } else {
+            for (long seed = 1; seed <= SEEDS; seed++) {
+                seeds.add(seed);
+            }
+        }
+        for (long seed : seeds) {
+            Simulator sim = randomScenario(seed);
+            sim.runUntil(() -> false, MAX_VIRTUAL_MILLIS);
+            try {
+                sim.checkSafety();
+            } catch (IllegalStateException e) {
+                fail(e.getMessage() + ", replay with -Dsimulation.seed=" + seed);
+            }
+        }
+    }
+
+    @Test
+    public void testSameSeedReplaysIdentically() {
+        Simulator first = randomScenario(42);
+        Simulator second = randomScenario(42);
+        first.runUntil(() -> false, MAX_VIRTUAL_MILLIS);
+        second.runUntil(() -> false, MAX_VIRTUAL_MILLIS);
+
+        // Assertion: both runs processed the same events and every member ended with the same log
+        assertEquals(first.eventsProcessed(), second.eventsProcessed());
+        for (int id = 1; id <= 9; id++) {
+            assertEquals(first.member(id).chosenValues, second.member(id).chosenValues);
+            assertEquals(first.member(id).highestSeenProposalNumber.get(),
+                    second.member(id).highestSeenProposalNumber.get());
+        }
+    }
+
+    @Test
+    public void testDelaysCostNoWallClockTime() {
+        // Large delays everywhere, which take several seconds per decision on a real council
+        Simulator sim = new Simulator(7, 9, member -> member.setStableLeader(true));
+        for (CouncilMember member : sim.members()) {
+            member.responseProfile = CouncilMember.ResponseProfile.DELAY_LARGE;
+        }
+        long start = System.currentTimeMillis();
+        for (int round = 0; round < 100; round++) {
+            int slot = round;
+            sim.member(1).propose("Value_" + round);
+            assertTrue(sim.runUntil(() -> {
+                for (CouncilMember member : sim.members()) {
+                    if (member.deliveredUpTo() <= slot) {
+                        return false;
+                    }
+                }
+                return true;
+            }, sim.now() + MAX_VIRTUAL_MILLIS));
+        }
+
+        // Assertion: minutes of virtual time passed in a fraction of that on the wall clock
+        assertTrue(sim.now() > 100 * 1000);
+        assertTrue(System.currentTimeMillis() - start < sim.now() / 10);
+        sim.checkSafety();
+    }
+
+    @Test
+    public void testCrashedMemberCatchesUpAfterRestart() {
+        Simulator sim = new Simulator(3, 9, member -> member.setStableLeader(true));
+        for (CouncilMember member : sim.members()) {
+            member.responseProfile = CouncilMember.ResponseProfile.IMMEDIATE;
+        }
+        sim.crash(9, 0);
+        for (int round = 0; round < 5; round++) {
+            String value = "Value_" + round;
+            sim.at(10 + round, () -> sim.member(1).propose(value));
+        }
+        sim.restart(9, 1000);
+
+        // Assertion: the restarted member lost its log in the crash and fetched it again from the leader
+        assertTrue(sim.runUntil(() -> !sim.isCrashed(9) && sim.member(9).deliveredUpTo() == 5, MAX_VIRTUAL_MILLIS));
+        assertEquals("Value_0", sim.member(9).learnedValue);
+        sim.checkSafety();
+        assertTrue(allLearned(sim));
+    }
+
+    @Test
+    public void testProposerRetriesThroughLostReplies() {
+        // Every other member drops half of what it receives, so a single attempt rarely gathers a quorum
+        Simulator sim = new Simulator(11, 9);
+        for (CouncilMember member : sim.members()) {
+            member.responseProfile = CouncilMember.ResponseProfile.SLOW;
+        }
+        sim.member(1).responseProfile = CouncilMember.ResponseProfile.IMMEDIATE;
+        sim.member(1).propose("Candidate_A");
+
+        // Assertion: the proposer kept retrying until the value was chosen
+        assertTrue(sim.runUntil(() -> sim.member(1).learnedValue != null, MAX_VIRTUAL_MILLIS));
+        assertEquals("Candidate_A", sim.member(1).learnedValue);
+        sim.checkSafety();
+    }
+
+    @Test
+    public void testNackLetsPreemptedProposerRetryAtOnce() {
+        Simulator sim = new Simulator(13, 5);
+        for (CouncilMember member : sim.members()) {
+            member.responseProfile = CouncilMember.ResponseProfile.IMMEDIATE;
+        }
+        // Members 2 to 5 have promised a proposal number far above anything member 1 has seen
+        for (int id = 2; id <= 5; id++) {
+            sim.member(id).processMessage(new Message(Message.MessageType.PREPARE, 5, 905, null, 0));
+        }
+        sim.member(1).propose("Candidate_A");
+
+        // Assertion: the NACKs sent member 1 past proposal number 905 without waiting for its phase 1 timeout
+        assertTrue(sim.runUntil(() -> sim.member(1).learnedValue != null, RetryPolicy.INITIAL_TIMEOUT_MILLIS));
+        assertEquals("Candidate_A", sim.member(1).learnedValue);
+        assertTrue(sim.member(2).acceptorSlot(0).acceptedProposalNumber > 905);
+        sim.checkSafety();
+    }
+
+    @Test
+    public void testLeaseHolderIsNotPreempted() {
+        Simulator sim = new Simulator(17, 5);
+        for (CouncilMember member : sim.members()) {
+            member.responseProfile = CouncilMember.ResponseProfile.IMMEDIATE;
+        }
+        // Member 1 reached phase 2 at members 2 to 5, which leases it the right to propose
+        for (int id = 2; id <= 5; id++) {
+            sim.member(id).processMessage(new Message(Message.MessageType.ACCEPT_REQUEST, 1, 101, "Candidate_A", 0));
+        }
+        sim.member(3).propose("Candidate_B");
+        sim.runFor(sim.member(3).leaseMillis / 2);
+
+        // Assertion: member 3 deferred to the lease holder rather than preempting its accepted value
+        assertEquals(1, sim.member(3).currentLeader());
+        assertEquals(101, sim.member(2).acceptorSlot(0).acceptedProposalNumber);
+        assertEquals(101, sim.member(2).promisedFor(0));
+
+        // Once the lease runs out member 3 proposes again, and has to choose the value member 1 left accepted
+        assertTrue(sim.runUntil(() -> sim.member(3).learnedValue != null, MAX_VIRTUAL_MILLIS));
+        assertEquals("Candidate_A", sim.member(3).learnedValue);
+        sim.checkSafety();
+    }
+
+    @Test
+    public void testThriftyLeaderSendsPhase2ToQuorumOnly() {
+        Simulator sim = new Simulator(29, 9, member -> {
+            member.setStableLeader(true);
+            member.setThrifty(true);
+        });
+        for (CouncilMember member : sim.members()) {
+            member.responseProfile = CouncilMember.ResponseProfile.IMMEDIATE;
+        }
+        CouncilMember leader = sim.member(1);
+        leader.propose("Value_0");
+        assertTrue(sim.runUntil(() -> leader.deliveredUpTo() == 1, MAX_VIRTUAL_MILLIS));
+
+        long sent = sim.messagesSent(Message.MessageType.ACCEPT_REQUEST);
+        leader.propose("Value_1");
+        assertTrue(sim.runUntil(() -> leader.deliveredUpTo() == 2, MAX_VIRTUAL_MILLIS));
+        // Assertion: the ACCEPT_REQUEST went to the 5 members a majority needs, not to all 8
+        assertEquals(5, sim.messagesSent(Message.MessageType.ACCEPT_REQUEST) - sent);
+
+        // Members 2 to 4 stop answering, the next slot is only decided once the leader falls back to the others
+        for (int id = 2; id <= 4; id++) {
+            sim.member(id).responseProfile = CouncilMember.ResponseProfile.OFFLINE;
+        }
+        leader.propose("Value_2");
+        assertTrue(sim.runUntil(() -> leader.deliveredUpTo() == 3, MAX_VIRTUAL_MILLIS));
+
+        // Assertion: the members that missed it are ranked last, the slot after goes to the 5 that answer
+        long start = sim.now();
+        sent = sim.messagesSent(Message.MessageType.ACCEPT_REQUEST);
+        leader.propose("Value_3");
+        assertTrue(sim.runUntil(() -> leader.deliveredUpTo() == 4, MAX_VIRTUAL_MILLIS));
+        assertTrue(sim.now() - start < PeerLatencies.MIN_FALLBACK_MILLIS);
+        assertEquals(5, sim.messagesSent(Message.MessageType.ACCEPT_REQUEST) - sent);
+        // Members left out of the phase still learn the slot
+        assertTrue(sim.runUntil(() -> sim.member(9).deliveredUpTo() == 4, MAX_VIRTUAL_MILLIS));
+        assertEquals(Collections.singletonList("Value_3"), sim.member(9).chosenValues(3));
+        sim.checkSafety();
+    }
+
+    @Test
+    public void testLeaderReadsWithoutConsensusRound() throws Exception {
+        Simulator sim = new Simulator(31, 5, member -> member.setStableLeader(true));
+        CouncilMember leader = sim.member(1);
+        leader.propose("Value_0");
+        assertTrue(sim.runUntil(() -> leader.deliveredUpTo() == 1, MAX_VIRTUAL_MILLIS));
+
+        // A read issued while a slot is in flight waits for it, the write started before the read
+        leader.propose("Value_1");
+        long accepts = sim.messagesSent(Message.MessageType.ACCEPT_REQUEST);
+        CompletableFuture<Integer> read = leader.read(leader::deliveredUpTo);
+        assertTrue(sim.runUntil(read::isDone, MAX_VIRTUAL_MILLIS));
+
+        // Assertion: the read saw both values and went through no phase 2 of its own
+        assertEquals(2, (int) read.get());
+        assertEquals(accepts, sim.messagesSent(Message.MessageType.ACCEPT_REQUEST));
+        CompletableFuture<String> first = leader.readLearnedValue();
+        assertTrue(sim.runUntil(first::isDone, MAX_VIRTUAL_MILLIS));
+        assertEquals("Value_0", first.get());
+
+        // Assertion: a follower does not serve reads
+        assertTrue(sim.member(2).readLearnedValue().isCompletedExceptionally());
+    }
+
+    @Test
+    public void testReplacedLeaderFailsItsReads() {
+        Simulator sim = new Simulator(37, 5, member -> {
+            member.setStableLeader(true);
+            member.setLeaseMillis(0);
+        });
+        CouncilMember leader = sim.member(1);
+        leader.propose("Value_0");
+        assertTrue(sim.runUntil(() -> leader.deliveredUpTo() == 1, MAX_VIRTUAL_MILLIS));
+
+        // Members 2 to 5 promise member 2 a higher proposal number, which member 1 has not heard of yet
+        for (int id = 2; id <= 5; id++) {
+            sim.member(id).processMessage(new Message(Message.MessageType.PREPARE, 2, 1002, null, 1));
+        }
+        CompletableFuture<String> read = leader.readLearnedValue();
+        assertTrue(sim.runUntil(read::isDone, MAX_VIRTUAL_MILLIS));
+
+        // Assertion: the confirmation told member 1 it may have been replaced, so it did not serve the read
+        assertTrue(read.isCompletedExceptionally());
+        assertNotEquals(1, leader.currentLeader());
+    }
+
+    @Test
+    public void testReconfigurationReplacesMemberWhileProposing() {
+        Simulator sim = new Simulator(43, 5, member -> {
+            member.setStableLeader(true);
+            member.setReconfigurationWindow(4);
+        });
+        CouncilMember leader = sim.member(1);
+        leader.setPipelineWindow(4);
+        sim.addMember(6);
+        for (int i = 0; i < 10; i++) {
+            leader.propose("Value_" + i);
+        }
+        // Member 6 replaces member 2 while the values are in flight
+        leader.reconfigure(Arrays.asList(1, 3, 4, 5, 6));
+        for (int i = 10; i < 20; i++) {
+            leader.propose("Value_" + i);
+        }
+        assertTrue(sim.runUntil(() -> leader.deliveredUpTo() == 21, MAX_VIRTUAL_MILLIS));
+
+        // Assertion: with members 2 and 3 down only the new council still has a quorum, and the leader uses it
+        sim.crash(2, sim.now());
+        sim.crash(3, sim.now());
+        leader.propose("Value_20");
+        assertTrue(sim.runUntil(() -> leader.deliveredUpTo() == 22, sim.now() + MAX_VIRTUAL_MILLIS));
+
+        // Assertion: the new member caught up on everything decided before it joined
+        assertTrue(sim.runUntil(() -> sim.member(6).deliveredUpTo() == 22, sim.now() + MAX_VIRTUAL_MILLIS));
+        assertEquals(Arrays.asList("Value_0"), sim.member(6).chosenValues(0));
+        assertEquals(Arrays.asList(1, 3, 4, 5, 6), sim.member(6).members());
+        sim.checkSafety();
+    }
+
+    @Test
+    public void testNewLeaderPreparesWithReconfiguredCouncil() {
+        Simulator sim = new Simulator(47, 5, member -> {
+            member.setStableLeader(true);
+            member.setReconfigurationWindow(2);
+        });
+        for (CouncilMember member : sim.members()) {
+            member.responseProfile = CouncilMember.ResponseProfile.IMMEDIATE;
+        }
+        sim.addMember(6).responseProfile = CouncilMember.ResponseProfile.IMMEDIATE;
+        CouncilMember leader = sim.member(1);
+        leader.reconfigure(Arrays.asList(1, 3, 4, 5, 6));
+        for (int i = 0; i < 3; i++) {
+            leader.propose("Value_" + i);
+        }
+        assertTrue(sim.runUntil(() -> sim.member(4).deliveredUpTo() == 4, MAX_VIRTUAL_MILLIS));
+
+        // Members 3, 5 and 6 are the only others of the new council left, a quorum of it but not of the old one
+        sim.crash(1, sim.now());
+        sim.crash(2, sim.now());
+        sim.runFor(1000);
+        sim.member(4).propose("Value_3");
+
+        // Assertion: member 4 took over with the new council's quorums
+        assertTrue(sim.runUntil(() -> sim.member(4).deliveredUpTo() == 5, sim.now() + MAX_VIRTUAL_MILLIS));
+        assertEquals(Arrays.asList("Value_3"), sim.member(4).chosenValues(4));
+        sim.checkSafety();
+    }
+
+    @Test
+    public void testClientsCannotProposeReservedValues() {
+        Simulator sim = new Simulator(53, 3, member -> {
+            member.setStableLeader(true);
+            member.setStateMachine(new KeyValueStore());
+        });
+        CouncilMember member = sim.member(1);
+        for (String value : new String[]{Configuration.encodeChange(Arrays.asList(1, 2)),
+                ValueBatch.encode(Arrays.asList("A", "B")), Configuration.SNAPSHOT_MARKER + "\nN"}) {
+            try {
+                member.propose(value);
+                fail("Proposed reserved value " + value);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+            try {
+                member.submit(value);
+                fail("Submitted reserved value " + value);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+
+        // Assertion: nothing was proposed and the council is unchanged
+        sim.runFor(5000);
+        assertEquals(0, member.deliveredUpTo());
+        assertEquals(Arrays.asList(1, 2, 3), member.members());
+    }
+
+    @Test
+    public void testInvalidReconfigurationIsIgnored() {
+        EventLog.Recorder recorder = new EventLog.Recorder();
+        EventLog log = new EventLog(EventLog.Level.INFO, recorder);
+        Simulator sim = new Simulator(59, 3, member -> {
+            member.setStableLeader(true);
+            member.setReconfigurationWindow(2);
+            member.setEventLog(log);
+        });
+        CouncilMember leader = sim.member(1);
+        // Changes that only a faulty member could put in the log, reconfigure rejects them all
+        String[] invalid = {Configuration.MARKER + "1,x", Configuration.MARKER, Configuration.MARKER + "1,1,2",
+                Configuration.MARKER + "1"};
+        synchronized (leader) {
+            for (String change : invalid) {
+                leader.proposeValue(change);
+            }
+        }
+        leader.propose("Value_0");
+        leader.propose("Value_1");
+        assertTrue(sim.runUntil(() -> {
+            for (CouncilMember member : sim.members()) {
+                if (member.deliveredUpTo() < 2 || !member.chosenValues(member.deliveredUpTo() - 1).contains("Value_1")) {
+                    return false;
+                }
+            }
+            return true;
+        }, MAX_VIRTUAL_MILLIS));
+
+        // Assertion: every member delivered past the invalid changes and kept the council as it was
+        for (CouncilMember member : sim.members()) {
+            assertEquals(Arrays.asList(1, 2, 3), member.members());
+        }
+        log.flush();
+        int ignored = 0;
+        for (EventLog.Event event : recorder.events()) {
+            if (event.kind == EventLog.Kind.INVALID_RECONFIGURATION) {
+                ignored++;
+            }
+        }
+        assertEquals(invalid.length * 3, ignored);
+        log.close();
+        sim.checkSafety();
+    }
+
+    @Test
+    public void testForwardedValueIsDecidedWithoutStableLeader() {
+        Simulator sim = new Simulator(67, 3);
+        CouncilMember member = sim.member(2);
+        // A value forwarded by a member that still takes member 2 for the lease holder
+        member.handleForward(new Message(Message.MessageType.FORWARD, 1, 0, "Value_F"));
+        member.propose("Value_0");
+        assertTrue(sim.runUntil(() -> {
+            for (CouncilMember m : sim.members()) {
+                if (m.deliveredUpTo() < 2) {
+                    return false;
+                }
+            }
+            return true;
+        }, MAX_VIRTUAL_MILLIS));
+
+        // Assertion: member 2 queued the forwarded value with its own instead of dropping it
+        for (CouncilMember m : sim.members()) {
+            assertEquals("Value_F", m.chosenValue(0));
+            assertEquals("Value_0", m.chosenValue(1));
+        }
+        sim.checkSafety();
+    }
+}
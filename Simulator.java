@@ -0,0 +1,275 @@
+import java.util.*;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+// Deterministic discrete-event simulation of a council. Members run the normal protocol handlers, but every message
+// delivery, response delay, drop, timer and crash is an event on a single virtual clock, and every random choice
+// comes from one Random seeded by the caller. Running the same seed with the same script always produces the same
+// execution, so a failing seed can be replayed exactly.
+//
+// Response profiles keep their meaning: the delay or drop for a message is drawn from the recipient's
+// responseDelayMillis, on top of NETWORK_LATENCY_MILLIS. Nothing sleeps, so a run takes as long as the handlers need
+// to execute, not as long as the delays it simulates.
+//
+// A crash stops the member and drops every message sent to it. A restart replaces it with a fresh member that keeps
+// only what would survive on disk: the acceptor state and the highest proposal number seen
+public class Simulator {
+    public static final long NETWORK_LATENCY_MILLIS = 1;
+
+    private final long seed;
+    private final Random random;
+    // The council every member is constructed with, members that join later learn the rest from the log
+    private final List<Integer> memberIds = new ArrayList<>();
+    private final Map<Integer, CouncilMember> members = new TreeMap<>();
+    private final Set<Integer> crashed = new HashSet<>();
+    // Applied to every member when it is created and again when it restarts
+    private final Consumer<CouncilMember> setup;
+    private double messageLoss = 0;
+    // Messages members handed to the network by type, whether or not they arrived
+    private final Map<Message.MessageType, Long> messagesSent = new EnumMap<>(Message.MessageType.class);
+
+    private final PriorityQueue<Event> events = new PriorityQueue<>();
+    private long now = 0;
+    private long sequence = 0;
+    private long eventsProcessed = 0;
+
+    private static class Event implements Comparable<Event> {
+        final long time;
+        final long sequence;
+        final Runnable action;
+
+        Event(long time, long sequence, Runnable action) {
+            this.time = time;
+            this.sequence = sequence;
+            this.action = action;
+        }
+
+        public int compareTo(Event other) {
+            // Events at the same time run in the order they were scheduled
+            int byTime = Long.compare(time, other.time);
+            return byTime != 0 ? byTime : Long.compare(sequence, other.sequence);
+        }
+    }
+
+    public Simulator(long seed, int size) {
+        this(seed, size, member -> { });
+    }
+
+    public Simulator(long seed, int size, Consumer<CouncilMember> setup) {
+        this.seed = seed;
+        this.random = new Random(seed);
+        this.setup = setup;
+        for (int id = 1; id <= size; id++) {
+            memberIds.add(id);
+        }
+        for (int id : memberIds) {
+            members.put(id, createMember(id));
+        }
+    }
+
+    public long seed() {
+        return seed;
+    }
+
+    public long now() {
+        return now;
+    }
+
+    public long eventsProcessed() {
+        return eventsProcessed;
+    }
+
+    public long messagesSent(Message.MessageType type) {
+        return messagesSent.getOrDefault(type, 0L);
+    }
+
+    public CouncilMember member(int id) {
+        return members.get(id);
+    }
+
+    public Collection<CouncilMember> members() {
+        return members.values();
+    }
+
+    // Probability that the network loses a message, on top of the drops of the recipient's response profile
+    public void setMessageLoss(double messageLoss) {
+        this.messageLoss = messageLoss;
+    }
+
+    // Runs an action, such as a client proposing a value, at the given virtual time
+    public void at(long timeMillis, Runnable action) {
+        schedule(timeMillis, action);
+    }
+
+    public void crash(int id, long atMillis) {
+        schedule(atMillis, () -> {
+            if (crashed.add(id)) {
+                members.get(id).shutdown();
+            }
+        });
+    }
+
+    public void restart(int id, long atMillis) {
+        schedule(atMillis, () -> {
+            if (crashed.remove(id)) {
+                CouncilMember old = members.get(id);
+                CouncilMember restarted = createMember(id);
+                // Only the durable acceptor state survives the crash. Its records are immutable, so they are shared
+                restarted.acceptorSlots.putAll(old.acceptorSlots);
+                restarted.rangePromise.set(old.rangePromise.get());
+                restarted.highestSeenProposalNumber.set(old.highestSeenProposalNumber.get());
+                restarted.responseProfile = old.responseProfile;
+                members.put(id, restarted);
+            }
+        });
+    }
+
+    // Starts a member that is not in the council yet, to be added to it with a reconfiguration
+    public CouncilMember addMember(int id) {
+        if (members.containsKey(id)) {
+            throw new IllegalArgumentException("Member " + id + " already exists");
+        }
+        CouncilMember member = createMember(id);
+        members.put(id, member);
+        return member;
+    }
+
+    public boolean isCrashed(int id) {
+        return crashed.contains(id);
+    }
+
+    // Processes events in order until the condition holds, returning false if virtual time passes maxMillis or
+    // nothing is left to happen first
+    public boolean runUntil(BooleanSupplier condition, long maxMillis) {
+        while (!condition.getAsBoolean()) {
+            Event event = events.peek();
+            if (event == null || event.time > maxMillis) {
+                now = Math.max(now, maxMillis);
+                return false;
+            }
+            events.poll();
+            now = event.time;
+            eventsProcessed++;
+            event.action.run();
+        }
+        return true;
+    }
+
+    // Processes every event up to the given virtual time
+    public void runFor(long millis) {
+        runUntil(() -> false, now + millis);
+    }
+
+    // Fails when two members hold different values for the same slot, the one thing Paxos must never allow
+    public void checkSafety() {
+        Map<Integer, String> agreed = new HashMap<>();
+        for (CouncilMember member : members.values()) {
+            for (Map.Entry<Integer, String> chosen : member.chosenValues.entrySet()) {
+                String other = agreed.putIfAbsent(chosen.getKey(), chosen.getValue());
+                if (other != null && !other.equals(chosen.getValue())) {
+                    throw new IllegalStateException("Seed " + seed + ": slot " + chosen.getKey() + " chosen as '"
+                            + other + "' and '" + chosen.getValue() + "' at " + now + "ms");
+                }
+            }
+        }
+    }
+
+    private void schedule(long time, Runnable action) {
+        events.add(new Event(time, sequence++, action));
+    }
+
+    private CouncilMember createMember(int id) {
+        CouncilMember member = new CouncilMember(id, memberIds, new SimulatedTransport(id),
+                CouncilMember.ExecutionMode.PLATFORM, new SimulatedScheduler());
+        // Retry backoffs are random too, drawn from the seed like everything else
+        member.retryPolicy = new RetryPolicy(new Random(random.nextLong()));
+        setup.accept(member);
+        return member;
+    }
+
+    private void send(int recipientId, Message msg) {
+        messagesSent.merge(msg.type, 1L, Long::sum);
+        if (random.nextDouble() < messageLoss) {
+            return;
+        }
+        CouncilMember recipient = members.get(recipientId);
+        if (recipient == null) {
+            // Not started yet, like a host that is not up
+            return;
+        }
+        long delay = recipient.responseDelayMillis(random);
+        if (delay < 0) {
+            return;
+        }
+        schedule(now + NETWORK_LATENCY_MILLIS + delay, () -> {
+            // Delivered to whichever member holds the ID by then, a restarted member gets what was in flight
+            if (!crashed.contains(recipientId)) {
+                members.get(recipientId).processMessage(msg);
+            }
+        });
+    }
+
+    // Hands messages to the simulator instead of a network
+    private class SimulatedTransport implements Transport {
+        private final int memberId;
+        private boolean closed = false;
+
+        SimulatedTransport(int memberId) {
+            this.memberId = memberId;
+        }
+
+        public void open(int memberId, Consumer<Message> receiver) {
+            // Deliveries go straight to the member's handlers, not through its executor
+        }
+
+        public void run() {
+        }
+
+        public void send(int recipientId, Message msg) {
+            if (!closed) {
+                Simulator.this.send(recipientId, msg);
+            }
+        }
+
+        public void close() {
+            closed = true;
+        }
+    }
+
+    // Timers of one member on the virtual clock. Once the member shuts down or crashes its timers stop firing
+    private class SimulatedScheduler implements Scheduler {
+        private boolean shutdown = false;
+
+        public Task schedule(Runnable task, long delayMillis) {
+            return scheduleTask(task, delayMillis, -1);
+        }
+
+        public Task scheduleAtFixedRate(Runnable task, long initialDelayMillis, long periodMillis) {
+            return scheduleTask(task, initialDelayMillis, periodMillis);
+        }
+
+        private Task scheduleTask(Runnable task, long delayMillis, long periodMillis) {
+            boolean[] cancelled = {false};
+            Runnable[] fire = new Runnable[1];
+            fire[0] = () -> {
+                if (cancelled[0] || shutdown) {
+                    return;
+                }
+                task.run();
+                if (periodMillis > 0) {
+                    Simulator.this.schedule(now + periodMillis, fire[0]);
+                }
+            };
+            Simulator.this.schedule(now + delayMillis, fire[0]);
+            return () -> cancelled[0] = true;
+        }
+
+        public long currentTimeMillis() {
+            return now;
+        }
+
+        public void shutdown() {
+            shutdown = true;
+        }
+    }
+}
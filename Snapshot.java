@@ -0,0 +1,73 @@
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.zip.CRC32;
+
+// Learned state of a member up to, but not including, slot upTo. Once a snapshot is taken the chosen values and
+// acceptor slots below upTo are no longer needed and are dropped from memory and from the acceptor log.
+//
+// File layout: int upTo, state as an int holding the UTF-8 length plus one (zero for null) followed by the bytes,
+// then an int CRC32 of everything before it. The file is replaced atomically, so a crash while writing leaves the
+// previous snapshot in place
+public class Snapshot {
+    public final int upTo;
+    public final String state;
+
+    public Snapshot(int upTo, String state) {
+        this.upTo = upTo;
+        this.state = state;
+    }
+
+    public void write(Path file) throws IOException {
+        byte[] bytes = state == null ? null : state.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.allocate(3 * Integer.BYTES + (bytes == null ? 0 : bytes.length));
+        buffer.putInt(upTo);
+        if (bytes == null) {
+            buffer.putInt(0);
+        } else {
+            buffer.putInt(bytes.length + 1).put(bytes);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 0, buffer.position());
+        buffer.putInt((int) crc.getValue());
+        buffer.flip();
+
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Returns null when there is no snapshot yet
+    public static Snapshot read(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+        try {
+            int upTo = buffer.getInt();
+            int length = buffer.getInt() - 1;
+            String state = null;
+            if (length >= 0) {
+                state = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+                buffer.position(buffer.position() + length);
+            }
+            CRC32 crc = new CRC32();
+            crc.update(buffer.array(), 0, buffer.position());
+            if ((int) crc.getValue() != buffer.getInt()) {
+                throw new IOException("Corrupt snapshot " + file);
+            }
+            return new Snapshot(upTo, state);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IOException("Truncated snapshot " + file);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+// Memory footprint and restart time of a member as its history grows, with and without snapshots. A single member
+// accepts and learns every slot of the history with its acceptor state in a group-committed log, is stopped, and is
+// restarted from its log (and snapshot). Replies are not sent anywhere, only the member's own cost is measured
+public class SnapshotBenchmark {
+    private static final int[] HISTORY_LENGTHS = {1000, 10000, 100000};
+    private static final int SNAPSHOT_INTERVAL = 1000;
+    private static final int PORT = 7700;
+
+    public static void main(String[] args) throws Exception {
+        // Keep the members' event log out of the measurements
+        EventLog.shared().setLevel(EventLog.Level.OFF);
+        for (int history : HISTORY_LENGTHS) {
+            for (boolean snapshots : new boolean[]{false, true}) {
+                Path dir = Files.createTempDirectory("snapshot-bench");
+                try {
+                    System.out.println(measure(history, snapshots, dir));
+                } finally {
+                    for (Path file : Files.list(dir).toArray(Path[]::new)) {
+                        Files.delete(file);
+                    }
+                    Files.delete(dir);
+                }
+            }
+        }
+    }
+
+    private static CouncilMember open(Path dir, boolean snapshots) throws Exception {
+        Map<Integer, Integer> memberPorts = new HashMap<>();
+        memberPorts.put(1, PORT + 1);
+        memberPorts.put(2, PORT + 2);
+        CouncilMember member = new CouncilMember(1, PORT + 1, memberPorts) {
+            @Override
+            protected void sendMessage(int recipientId, Message msg) {
+            }
+        };
+        if (snapshots) {
+            member.enableSnapshots(SNAPSHOT_INTERVAL, dir.resolve("snapshot"));
+        }
+        member.openAcceptorLog(dir.resolve("acceptor.wal"), true);
+        return member;
+    }
+
+    private static String measure(int history, boolean snapshots, Path dir) throws Exception {
+        long heapBefore = usedHeap();
+        CouncilMember member = open(dir, snapshots);
+        for (int instance = 0; instance < history; instance++) {
+            String value = "Value_" + instance;
+            member.handleAcceptRequest(new Message(Message.MessageType.ACCEPT_REQUEST, 2, 102, value, instance));
+            member.learnValue(instance, value);
+        }
+        long heap = usedHeap() - heapBefore;
+        member.shutdown();
+        long logSize = Files.size(dir.resolve("acceptor.wal"));
+
+        long start = System.nanoTime();
+        CouncilMember restarted = open(dir, snapshots);
+        long restartNanos = System.nanoTime() - start;
+        restarted.shutdown();
+
+        return String.format("history %7d  snapshots %-3s  heap %8.2f MB  log %9.1f KB  restart %8.2f ms",
+                history, snapshots ? "on" : "off", heap / 1e6, logSize / 1e3, restartNanos / 1e6);
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
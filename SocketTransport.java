@@ -0,0 +1,301 @@
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+// TCP transport for real deployments. Inbound frames are read by a MessageReactor on the member's port and decoded
+// with the codec; outbound messages go over connections to the ports in memberPorts
+public class SocketTransport implements Transport {
+    protected final Map<Integer, Integer> memberPorts;
+    protected final MessageCodec codec;
+    protected final MessageReactor reactor;
+    protected int memberId;
+    protected Consumer<Message> receiver;
+    protected EventLog eventLog = EventLog.shared();
+    protected volatile boolean closed = false;
+
+    // Outbound connections to the other members, opened on first use and kept for the lifetime of the transport.
+    // Setting persistentConnections to false falls back to opening a new socket for every message
+    protected boolean persistentConnections = true;
+    protected final Map<Integer, PeerConnection> peerConnections = new ConcurrentHashMap<>();
+
+    // Every peer has a bounded queue of outbound frames, written by a sender task that runs only while frames are
+    // queued, so a peer that is offline or slow to read holds up only its own messages and a broadcast costs the
+    // caller one encode and queue insert per peer. A frame that finds its queue full is dropped. A peer the sender
+    // failed to reach is reported unreachable for RECONNECT_DELAY_MILLIS without being dialled again. The frames that
+    // failed are written again if the sender reconnects within MAX_WRITE_ATTEMPTS tries, and dropped after that, as
+    // an unreliable network would, so a peer that is down for long neither fills its queue with stale messages nor
+    // gets them ahead of current ones when it is back. Setting outboundQueues to false writes on the caller's thread
+    // instead, one peer after the other
+    protected static final int OUTBOUND_QUEUE_SIZE = 1024;
+    protected static final int MAX_WRITE_ATTEMPTS = 3;
+    // Senders of every transport in the JVM run on virtual threads, so a council of N members costs no platform
+    // thread per peer, and a sender blocked on a peer that is down parks instead of holding an OS thread
+    protected static final ExecutorService SENDERS = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("transport-send-", 0).factory());
+    // Long enough for the SYN that is sent again after 1 second when a peer's listen backlog dropped the first one
+    protected static final int CONNECT_TIMEOUT_MILLIS = 2000;
+    protected int connectTimeoutMillis = CONNECT_TIMEOUT_MILLIS;
+    protected static final long RECONNECT_DELAY_MILLIS = 200;
+    protected boolean outboundQueues = true;
+
+    public SocketTransport(int port, Map<Integer, Integer> memberPorts, MessageCodec codec) throws IOException {
+        this.memberPorts = new ConcurrentHashMap<>(memberPorts);
+        this.codec = codec;
+        reactor = new MessageReactor(port, this::receiveFrame);
+    }
+
+    public void open(int memberId, Consumer<Message> receiver) {
+        this.memberId = memberId;
+        this.receiver = receiver;
+    }
+
+    public void run() {
+        // The reactor accepts connections and reads frames until the transport is closed
+        reactor.run();
+    }
+
+    // Where a member that joined the council after this transport was created listens
+    public void addPeer(int memberId, int port) {
+        memberPorts.put(memberId, port);
+    }
+
+    public void setEventLog(EventLog eventLog) {
+        this.eventLog = eventLog;
+    }
+
+    public void setPersistentConnections(boolean persistentConnections) {
+        this.persistentConnections = persistentConnections;
+    }
+
+    public void setOutboundQueues(boolean outboundQueues) {
+        this.outboundQueues = outboundQueues;
+    }
+
+    public void setConnectTimeoutMillis(int connectTimeoutMillis) {
+        this.connectTimeoutMillis = connectTimeoutMillis;
+    }
+
+    protected void receiveFrame(byte[] frame) {
+        Message msg;
+        try {
+            msg = codec.decode(frame);
+        } catch (IOException e) {
+            eventLog.log(memberId, codec.group(frame), EventLog.Kind.MALFORMED_MESSAGE, -1, null, -1, -1,
+                    e.getMessage());
+            return;
+        }
+        receiver.accept(msg);
+    }
+
+    public void send(int recipientId, Message msg) throws IOException {
+        if (closed) {
+            throw new IOException("Transport closed");
+        }
+        if (!memberPorts.containsKey(recipientId)) {
+            throw new IOException("No address for member " + recipientId);
+        }
+        byte[] frame = codec.encode(msg);
+        PeerConnection connection = peerConnections.computeIfAbsent(recipientId, PeerConnection::new);
+        if (outboundQueues) {
+            connection.enqueue(frame);
+        } else {
+            connection.write(Collections.singletonList(frame));
+        }
+    }
+
+    public void close() {
+        closed = true;
+        reactor.close();
+        for (PeerConnection connection : peerConnections.values()) {
+            connection.shutdown();
+        }
+        peerConnections.clear();
+    }
+
+    // Outbound connection to a single peer, with its queue and sender task. Writes are serialized on the
+    // connection, and a broken connection is re-dialled on the next write, so a peer that restarts is picked up
+    // again without any extra bookkeeping
+    protected class PeerConnection {
+        private final int peerId;
+        // Read without the lock by shutdown, to unblock a write that is stuck on a peer that stopped reading
+        private volatile Socket socket;
+        private DataOutputStream out;
+        // A ReentrantLock rather than synchronized, a virtual thread blocked on the socket under a monitor would pin
+        // its carrier
+        private final ReentrantLock lock = new ReentrantLock();
+        private final BlockingQueue<byte[]> outbound = new ArrayBlockingQueue<>(OUTBOUND_QUEUE_SIZE);
+        // Set while a sender task is queued or running, there is at most one per peer
+        private final AtomicBoolean draining = new AtomicBoolean();
+        private volatile Thread sender;
+        private volatile long unreachableUntilMillis = 0;
+
+        public PeerConnection(int peerId) {
+            this.peerId = peerId;
+        }
+
+        public void enqueue(byte[] frame) throws IOException {
+            if (System.currentTimeMillis() < unreachableUntilMillis) {
+                throw new IOException("Member " + peerId + " was unreachable moments ago");
+            }
+            if (!outbound.offer(frame)) {
+                throw new IOException("Outbound queue to member " + peerId + " is full");
+            }
+            startSender();
+        }
+
+        private void startSender() {
+            if (draining.compareAndSet(false, true)) {
+                try {
+                    SENDERS.execute(this::drain);
+                } catch (RejectedExecutionException e) {
+                    draining.set(false);
+                }
+            }
+        }
+
+        // Writes whatever has queued up since the last write in one go, until the queue is empty. Frames whose write
+        // failed are written again after RECONNECT_DELAY_MILLIS, ahead of the ones queued since, up to
+        // MAX_WRITE_ATTEMPTS tries in all. A write that broke off part way may send some of them twice, which the
+        // protocol tolerates like any duplicated message
+        private void drain() {
+            sender = Thread.currentThread();
+            List<byte[]> frames = new ArrayList<>();
+            int attempts = 0;
+            try {
+                while (!closed) {
+                    outbound.drainTo(frames, OUTBOUND_QUEUE_SIZE - frames.size());
+                    if (frames.isEmpty()) {
+                        draining.set(false);
+                        // A frame queued after the drain but before the flag was cleared found a sender running
+                        if (outbound.isEmpty() || !draining.compareAndSet(false, true)) {
+                            return;
+                        }
+                        continue;
+                    }
+                    try {
+                        write(frames);
+                        frames.clear();
+                        attempts = 0;
+                    } catch (IOException e) {
+                        if (++attempts >= MAX_WRITE_ATTEMPTS) {
+                            // The peer has been down too long for these to be of use when it is back
+                            frames.clear();
+                            attempts = 0;
+                        }
+                        unreachableUntilMillis = System.currentTimeMillis() + RECONNECT_DELAY_MILLIS;
+                        Thread.sleep(RECONNECT_DELAY_MILLIS);
+                    }
+                }
+            } catch (InterruptedException e) {
+                // The transport is closing
+            } finally {
+                sender = null;
+            }
+        }
+
+        public void write(List<byte[]> frames) throws IOException {
+            lock.lock();
+            try {
+                writeLocked(frames);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void writeLocked(List<byte[]> frames) throws IOException {
+            if (!persistentConnections) {
+                for (byte[] frame : frames) {
+                    try (Socket single = dial();
+                         DataOutputStream singleOut = new DataOutputStream(
+                                 new BufferedOutputStream(single.getOutputStream()))) {
+                        writeFrames(singleOut, Collections.singletonList(frame));
+                    }
+                }
+                return;
+            }
+            if (socket == null) {
+                connect();
+                writeFrames(out, frames);
+                return;
+            }
+            try {
+                writeFrames(out, frames);
+            } catch (IOException e) {
+                // The peer dropped the connection since the last write, dial again once
+                close();
+                connect();
+                writeFrames(out, frames);
+            }
+        }
+
+        private void connect() throws IOException {
+            Socket newSocket = dial();
+            socket = newSocket;
+            out = new DataOutputStream(new BufferedOutputStream(newSocket.getOutputStream()));
+        }
+
+        private Socket dial() throws IOException {
+            Socket newSocket = new Socket();
+            try {
+                newSocket.setTcpNoDelay(true);
+                newSocket.connect(new InetSocketAddress("localhost", memberPorts.get(peerId)), connectTimeoutMillis);
+            } catch (IOException e) {
+                newSocket.close();
+                throw e;
+            }
+            return newSocket;
+        }
+
+        // Called with the lock held
+        private void close() {
+            if (socket != null) {
+                try {
+                    socket.close();
+                } catch (IOException e) {
+                    // nothing left to clean up
+                }
+            }
+            socket = null;
+            out = null;
+        }
+
+        // Stops the sender, frames still queued are dropped as the transport is closing
+        public void shutdown() {
+            Thread running = sender;
+            if (running != null) {
+                running.interrupt();
+            }
+            outbound.clear();
+            Socket current = socket;
+            if (current != null) {
+                try {
+                    current.close();
+                } catch (IOException e) {
+                    // nothing left to clean up
+                }
+            }
+        }
+    }
+
+    // Frames are written as a length prefix followed by the encoded message, and flushed once after the last
+    protected static void writeFrames(DataOutputStream out, List<byte[]> frames) throws IOException {
+        for (byte[] frame : frames) {
+            out.writeInt(frame.length);
+            out.write(frame);
+        }
+        out.flush();
+    }
+}
@@ -0,0 +1,89 @@
+import org.junit.After;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+public class SocketTransportTest {
+    private static final int MAX_WAIT_MILLIS = 10000;
+
+    private final List<SocketTransport> transports = new ArrayList<>();
+
+    @After
+    public void cleanUp() {
+        for (SocketTransport transport : transports) {
+            transport.close();
+        }
+    }
+
+    private SocketTransport start(int memberId, int port, Map<Integer, Integer> memberPorts, List<Message> received)
+            throws IOException {
+        SocketTransport transport = new SocketTransport(port, memberPorts, new BinaryMessageCodec());
+        transport.open(memberId, received::add);
+        transports.add(transport);
+        new Thread(transport::run).start();
+        return transport;
+    }
+
+    // Sends msg once the peer is no longer reported unreachable
+    private void send(SocketTransport transport, int recipientId, Message msg) throws Exception {
+        long deadline = System.currentTimeMillis() + MAX_WAIT_MILLIS;
+        while (true) {
+            try {
+                transport.send(recipientId, msg);
+                return;
+            } catch (IOException e) {
+                if (System.currentTimeMillis() > deadline) {
+                    throw e;
+                }
+                Thread.sleep(50);
+            }
+        }
+    }
+
+    private void waitForMessages(List<Message> received, int count) throws Exception {
+        long deadline = System.currentTimeMillis() + MAX_WAIT_MILLIS;
+        while (received.size() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+    }
+
+    @Test
+    public void testFramesAreWrittenAgainAfterShortOutage() throws Exception {
+        Map<Integer, Integer> ports = Map.of(1, 7791, 2, 7792);
+        SocketTransport sender = start(1, 7791, ports, new CopyOnWriteArrayList<>());
+        sender.send(2, new Message(Message.MessageType.PREPARE, 1, 101, null, 1));
+
+        // Member 2 comes up before the sender has given up on the frame
+        List<Message> received = new CopyOnWriteArrayList<>();
+        start(2, 7792, ports, received);
+        waitForMessages(received, 1);
+
+        // Assertion: the frame that failed while member 2 was down reaches it once it is back
+        assertEquals(1, received.size());
+        assertEquals(1, received.get(0).instance);
+    }
+
+    @Test
+    public void testFramesAreDroppedAfterLongOutage() throws Exception {
+        Map<Integer, Integer> ports = Map.of(1, 7793, 2, 7794);
+        SocketTransport sender = start(1, 7793, ports, new CopyOnWriteArrayList<>());
+        sender.send(2, new Message(Message.MessageType.PREPARE, 1, 101, null, 1));
+
+        // Member 2 stays down for longer than the sender's tries take
+        Thread.sleep((SocketTransport.MAX_WRITE_ATTEMPTS + 2) * SocketTransport.RECONNECT_DELAY_MILLIS);
+        List<Message> received = new CopyOnWriteArrayList<>();
+        start(2, 7794, ports, received);
+        send(sender, 2, new Message(Message.MessageType.PREPARE, 1, 201, null, 2));
+        waitForMessages(received, 1);
+        Thread.sleep(200);
+
+        // Assertion: the stale frame was dropped, member 2 gets only the one sent after it came back
+        assertEquals(1, received.size());
+        assertEquals(2, received.get(0).instance);
+    }
+}
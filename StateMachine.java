@@ -0,0 +1,15 @@
+// Service state built from the replicated log. A member applies every chosen client value to its state machine in
+// log order, so the state machines of all members go through the same states. Implementations must be
+// deterministic: the result and the new state can only depend on the current state and the value.
+//
+// Values are applied under the member's lock. Snapshots capture the state when the log is compacted and restore it
+// on a member that restarts or catches up from a snapshot
+public interface StateMachine {
+    // Applies one chosen value and returns its result, null when there is none
+    String apply(String command);
+
+    String snapshot();
+
+    // Replaces the state with a snapshot, null for the initial state
+    void restore(String snapshot);
+}
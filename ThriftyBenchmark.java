@@ -0,0 +1,68 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// Messages sent and commit latency of a stable leader with thrifty messaging off and on, in the deterministic
+// simulator. Member 8 leads a council of 9 and proposes its values one after the other. In the uniform council
+// every other member has the default profile. In the Main council member 1 answers at once, member 2 drops half its
+// messages, member 3 is offline and the rest have the default profile. Messages are counted per decided value over
+// the whole run: the PREPAREs and ACCEPT_REQUESTs thrifty messaging cuts down, and the replies to them. Heartbeats
+// and LEARNs go to everyone either way
+public class ThriftyBenchmark {
+    private static final int MEMBERS = 9;
+    private static final int SEEDS = 50;
+    private static final int SLOTS = 100;
+    private static final long MAX_VIRTUAL_MILLIS = 120000;
+
+    public static void main(String[] args) {
+        // Keep the members' event log out of the measurements
+        EventLog.shared().setLevel(EventLog.Level.OFF);
+        for (boolean main : new boolean[]{false, true}) {
+            for (boolean thrifty : new boolean[]{false, true}) {
+                measure(main, thrifty);
+            }
+        }
+    }
+
+    private static void measure(boolean main, boolean thrifty) {
+        List<Long> latencies = new ArrayList<>();
+        long phaseMessages = 0;
+        long replies = 0;
+        for (int seed = 1; seed <= SEEDS; seed++) {
+            Simulator sim = new Simulator(seed, MEMBERS, member -> {
+                member.setStableLeader(true);
+                member.setThrifty(thrifty);
+            });
+            if (main) {
+                sim.member(1).responseProfile = CouncilMember.ResponseProfile.IMMEDIATE;
+                sim.member(2).responseProfile = CouncilMember.ResponseProfile.SLOW;
+                sim.member(3).responseProfile = CouncilMember.ResponseProfile.OFFLINE;
+            }
+            CouncilMember leader = sim.member(8);
+            for (int slot = 0; slot < SLOTS; slot++) {
+                int next = slot + 1;
+                long start = sim.now();
+                leader.propose("Value_" + slot);
+                if (!sim.runUntil(() -> leader.deliveredUpTo() == next, sim.now() + MAX_VIRTUAL_MILLIS)) {
+                    throw new IllegalStateException("Slot " + slot + " not decided, seed " + seed);
+                }
+                latencies.add(sim.now() - start);
+            }
+            phaseMessages += sim.messagesSent(Message.MessageType.PREPARE)
+                    + sim.messagesSent(Message.MessageType.ACCEPT_REQUEST);
+            replies += sim.messagesSent(Message.MessageType.PROMISE) + sim.messagesSent(Message.MessageType.ACCEPTED)
+                    + sim.messagesSent(Message.MessageType.NACK);
+        }
+
+        Collections.sort(latencies);
+        double values = (double) SEEDS * SLOTS;
+        System.out.printf("%-7s council  thrifty %-3s  phase messages %5.2f  replies %5.2f per value   "
+                        + "latency p50 %4d ms  p99 %5d ms%n", main ? "Main" : "uniform", thrifty ? "on" : "off",
+                phaseMessages / values, replies / values, percentile(latencies, 0.5),
+                percentile(latencies, 0.99));
+    }
+
+    private static long percentile(List<Long> sorted, double fraction) {
+        return sorted.get((int) Math.ceil(fraction * sorted.size()) - 1);
+    }
+}
@@ -0,0 +1,17 @@
+import java.io.IOException;
+import java.util.function.Consumer;
+
+// Carries messages between council members. A member opens its transport once with the receiver its inbound
+// messages are handed to, calls run() on its own thread for as long as it serves, and closes it on shutdown.
+// Delivery is unreliable: a message may be dropped, but the receiver is never handed a corrupt one
+public interface Transport {
+    void open(int memberId, Consumer<Message> receiver);
+
+    // Serves inbound messages until the transport is closed
+    void run();
+
+    // Fails when the recipient cannot be reached right now
+    void send(int recipientId, Message msg) throws IOException;
+
+    void close();
+}
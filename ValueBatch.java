@@ -0,0 +1,56 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// Several client values carried as the value of a single slot. The batch is encoded into one string so acceptors,
+// promises and the log keep dealing with a plain value; only proposers and learners look inside it.
+//
+// Encoding: the MARKER prefix, then for every value its length in decimal, a ':' and the value itself
+public final class ValueBatch {
+    public static final String MARKER = "\u0000batch:";
+
+    private ValueBatch() {
+    }
+
+    public static boolean isBatch(String value) {
+        return value != null && value.startsWith(MARKER);
+    }
+
+    // A single value is left as it is, so an unbatched log looks exactly like before
+    public static String encode(List<String> values) {
+        if (values.size() == 1) {
+            return values.get(0);
+        }
+        int length = MARKER.length();
+        for (String value : values) {
+            length += value.length() + 11;
+        }
+        StringBuilder batch = new StringBuilder(length).append(MARKER);
+        for (String value : values) {
+            batch.append(value.length()).append(':').append(value);
+        }
+        return batch.toString();
+    }
+
+    public static List<String> decode(String value) {
+        if (!isBatch(value)) {
+            return Collections.singletonList(value);
+        }
+        List<String> values = new ArrayList<>();
+        int pos = MARKER.length();
+        while (pos < value.length()) {
+            int separator = value.indexOf(':', pos);
+            if (separator < 0) {
+                throw new IllegalArgumentException("Malformed value batch");
+            }
+            int length = Integer.parseInt(value, pos, separator, 10);
+            int start = separator + 1;
+            if (length < 0 || start + length > value.length()) {
+                throw new IllegalArgumentException("Malformed value batch");
+            }
+            values.add(value.substring(start, start + length));
+            pos = start + length;
+        }
+        return values;
+    }
+}
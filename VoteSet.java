@@ -0,0 +1,67 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Votes collected for one phase of a round, one bit per member index. Adding a vote is a single atomic OR on the
+// word holding its bit, so replies from different members are counted without a lock, a repeated reply from the
+// same member is not counted twice, and exactly one caller learns that the quorum has been reached. Votes can carry
+// weights, the quorum is then reached once the votes weigh at least the threshold. A member whose index is past the
+// members the set was created for, one that joined the council since, carries no weight in it
+public class VoteSet {
+    private static final VarHandle WORDS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    private final long[] words;
+    // Weight of each member's vote by index, null when every vote counts once
+    private final int[] weights;
+    private final AtomicInteger weight = new AtomicInteger();
+    private final int quorum;
+
+    public VoteSet(int members, int quorum) {
+        this(members, null, quorum);
+    }
+
+    public VoteSet(int[] weights, int quorum) {
+        this(weights.length, weights, quorum);
+    }
+
+    private VoteSet(int members, int[] weights, int quorum) {
+        this.words = new long[(members + 63) >>> 6];
+        this.weights = weights;
+        this.quorum = quorum;
+    }
+
+    // True only for the vote that makes the weight reach the quorum. Votes arriving after that are still recorded
+    public boolean add(int index) {
+        if (index >>> 6 >= words.length || (weights != null && index >= weights.length)) {
+            return false;
+        }
+        long bit = 1L << index;
+        long previous = (long) WORDS.getAndBitwiseOr(words, index >>> 6, bit);
+        if ((previous & bit) != 0) {
+            return false;
+        }
+        int added = weights == null ? 1 : weights[index];
+        int total = weight.addAndGet(added);
+        return total >= quorum && total - added < quorum;
+    }
+
+    public boolean contains(int index) {
+        if (index >>> 6 >= words.length) {
+            return false;
+        }
+        return ((long) WORDS.getVolatile(words, index >>> 6) & (1L << index)) != 0;
+    }
+
+    // Number of members that voted, whatever their weight
+    public int size() {
+        int size = 0;
+        for (int i = 0; i < words.length; i++) {
+            size += Long.bitCount((long) WORDS.getVolatile(words, i));
+        }
+        return size;
+    }
+
+    public boolean reached() {
+        return weight.get() >= quorum;
+    }
+}
@@ -0,0 +1,61 @@
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.concurrent.*;
+
+// Durable acceptor writes with an fsync for every record against group commit. A number of concurrent repliers each
+// append a record and wait for it to be durable before appending the next, as acceptors answering a pipelined
+// leader would. The log lives in the directory given as the first argument, or the temp directory
+public class WalBenchmark {
+    private static final int[] REPLIERS = {1, 8, 64};
+    private static final int RECORDS_PER_REPLIER = 200;
+
+    public static void main(String[] args) throws Exception {
+        Path dir = args.length > 0 ? Paths.get(args[0]) : Paths.get(System.getProperty("java.io.tmpdir"));
+        for (int repliers : REPLIERS) {
+            for (boolean groupCommit : new boolean[]{false, true}) {
+                Path file = Files.createTempFile(dir, "acceptor", ".wal");
+                try {
+                    measure(file, groupCommit, repliers);
+                } finally {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+    private static void measure(Path file, boolean groupCommit, int repliers) throws Exception {
+        AcceptorLog log = new AcceptorLog(file, groupCommit, "bench");
+        long[] latencies = new long[repliers * RECORDS_PER_REPLIER];
+        ExecutorService threads = Executors.newFixedThreadPool(repliers);
+        long start = System.nanoTime();
+        for (int r = 0; r < repliers; r++) {
+            int replier = r;
+            threads.execute(() -> {
+                for (int i = 0; i < RECORDS_PER_REPLIER; i++) {
+                    CountDownLatch durable = new CountDownLatch(1);
+                    long begin = System.nanoTime();
+                    log.appendSlot(i, 100 + replier, 100 + replier, "Value_" + replier + "_" + i, durable::countDown);
+                    try {
+                        durable.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    latencies[replier * RECORDS_PER_REPLIER + i] = System.nanoTime() - begin;
+                }
+            });
+        }
+        threads.shutdown();
+        threads.awaitTermination(10, TimeUnit.MINUTES);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        log.close();
+
+        Arrays.sort(latencies);
+        System.out.printf("%-13s %3d repliers  %8.0f records/s  %6.1f records/fsync  p50 %7.2f ms  p99 %7.2f ms%n",
+                groupCommit ? "group commit" : "fsync each", repliers, latencies.length / seconds,
+                (double) log.records() / log.syncs(),
+                latencies[latencies.length / 2] / 1e6,
+                latencies[(int) (latencies.length * 0.99)] / 1e6);
+    }
+}
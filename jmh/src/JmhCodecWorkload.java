@@ -0,0 +1,48 @@
+import jmh.CodecWorkload;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class JmhCodecWorkload implements CodecWorkload {
+    private MessageCodec codec;
+    private Message message;
+    private byte[] frame;
+
+    public void setUp(String codec, String message) throws Exception {
+        this.codec = "binary".equals(codec) ? new BinaryMessageCodec() : new JavaSerializationCodec();
+        switch (message) {
+            case "PREPARE":
+                this.message = new Message(Message.MessageType.PREPARE, 8, 108, null, 12);
+                break;
+            case "PROMISE":
+                this.message = new Message(Message.MessageType.PROMISE, 4, 209, 108, "Candidate_A", 12);
+                break;
+            case "ACCEPT_REQUEST":
+                this.message = new Message(Message.MessageType.ACCEPT_REQUEST, 9, 209, "Candidate_A", 12);
+                break;
+            case "LEARN":
+                this.message = new Message(Message.MessageType.LEARN, 9, 209, "Candidate_A", 12);
+                break;
+            case "PROMISE_WITH_ENTRIES":
+                // A new leader learning about ten slots accepted after the one it prepared
+                this.message = new Message(Message.MessageType.PROMISE, 4, 209, 108, "Candidate_A", 12);
+                List<Message.Entry> entries = new ArrayList<>();
+                for (int i = 13; i < 23; i++) {
+                    entries.add(new Message.Entry(i, 108, "Candidate_" + i));
+                }
+                this.message.entries = entries;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown message " + message);
+        }
+        frame = this.codec.encode(this.message);
+    }
+
+    public byte[] encode() throws Exception {
+        return codec.encode(message);
+    }
+
+    public Object decode() throws Exception {
+        return codec.decode(frame);
+    }
+}
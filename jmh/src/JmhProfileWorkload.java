@@ -0,0 +1,27 @@
+import jmh.ProfileWorkload;
+
+public class JmhProfileWorkload implements ProfileWorkload {
+    // Virtual time a round gets before it counts as stalled
+    private static final long ROUND_TIMEOUT_MILLIS = 10000;
+
+    private Simulator sim;
+
+    public void setUp(String profile) {
+        // Keep the event log out of the measurements
+        EventLog.shared().setLevel(EventLog.Level.OFF);
+        sim = new Simulator(1, 9);
+        for (CouncilMember member : sim.members()) {
+            if (member.id != 1) {
+                member.responseProfile = CouncilMember.ResponseProfile.valueOf(profile);
+            }
+        }
+        sim.member(1).responseProfile = CouncilMember.ResponseProfile.IMMEDIATE;
+    }
+
+    public boolean round() {
+        CouncilMember proposer = sim.member(1);
+        int slot = proposer.deliveredUpTo();
+        proposer.propose("Value_" + slot);
+        return sim.runUntil(() -> proposer.deliveredUpTo() > slot, sim.now() + ROUND_TIMEOUT_MILLIS);
+    }
+}
@@ -0,0 +1,69 @@
+import jmh.QuorumWorkload;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+public class JmhQuorumWorkload implements QuorumWorkload {
+    private static final int PROPOSAL_NUMBER = 101;
+
+    private CouncilMember proposer;
+    private int majority;
+
+    public void setUp(int members) {
+        // Keep the event log out of the measurements
+        EventLog.shared().setLevel(EventLog.Level.OFF);
+        List<Integer> memberIds = new ArrayList<>();
+        for (int id = 1; id <= members; id++) {
+            memberIds.add(id);
+        }
+        // Replies are fed in directly, whatever the proposer sends is dropped
+        Transport discard = new Transport() {
+            public void open(int memberId, Consumer<Message> receiver) {
+            }
+
+            public void run() {
+            }
+
+            public void send(int recipientId, Message msg) {
+            }
+
+            public void close() {
+            }
+        };
+        proposer = new CouncilMember(1, memberIds, discard, CouncilMember.ExecutionMode.PLATFORM);
+        try {
+            // Keeps the learned log from growing over millions of rounds
+            proposer.enableSnapshots(1000, null);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        majority = members / 2 + 1;
+    }
+
+    public void prepareRound() {
+        proposer.startPrepare("Candidate_A", Collections.emptyList());
+        int proposalNumber = proposer.prepareRound.proposalNumber;
+        int instance = proposer.prepareRound.instance;
+        for (int sender = 2; sender <= majority + 1; sender++) {
+            proposer.handlePromise(new Message(Message.MessageType.PROMISE, sender, proposalNumber, -1, null,
+                    instance));
+        }
+    }
+
+    public void acceptRound() {
+        int instance = proposer.deliveredUpTo();
+        proposer.sendAcceptRequest(new CouncilMember.AcceptRound(instance, PROPOSAL_NUMBER, "Candidate_A",
+                Collections.emptyList()));
+        for (int sender = 2; sender <= majority + 1; sender++) {
+            proposer.handleAccepted(new Message(Message.MessageType.ACCEPTED, sender, PROPOSAL_NUMBER, "Candidate_A",
+                    instance));
+        }
+    }
+
+    public void tearDown() {
+        proposer.shutdown();
+    }
+}
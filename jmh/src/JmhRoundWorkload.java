@@ -0,0 +1,64 @@
+import jmh.RoundWorkload;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class JmhRoundWorkload implements RoundWorkload {
+    private static final int BASE_PORT = 7800;
+    private static final long TIMEOUT_NANOS = 10_000_000_000L;
+
+    private CouncilMember[] members;
+    private int nextSlot = 0;
+
+    public void setUp(String transport, int size) throws Exception {
+        // Keep the event log out of the measurements
+        EventLog.shared().setLevel(EventLog.Level.OFF);
+        members = new CouncilMember[size];
+        if ("socket".equals(transport)) {
+            Map<Integer, Integer> memberPorts = new HashMap<>();
+            for (int id = 1; id <= size; id++) {
+                memberPorts.put(id, BASE_PORT + id);
+            }
+            for (int i = 0; i < size; i++) {
+                members[i] = new CouncilMember(i + 1, BASE_PORT + i + 1, memberPorts);
+            }
+        } else {
+            List<Integer> memberIds = new ArrayList<>();
+            for (int id = 1; id <= size; id++) {
+                memberIds.add(id);
+            }
+            InMemoryTransport.Network network = new InMemoryTransport.Network();
+            for (int i = 0; i < size; i++) {
+                members[i] = new CouncilMember(i + 1, memberIds, new InMemoryTransport(network),
+                        CouncilMember.ExecutionMode.PLATFORM);
+            }
+        }
+        for (CouncilMember member : members) {
+            member.responseProfile = CouncilMember.ResponseProfile.IMMEDIATE;
+            new Thread(member).start();
+        }
+        Thread.sleep(200);
+    }
+
+    public void round() {
+        int slot = nextSlot++;
+        members[0].propose("Value_" + slot);
+        long deadline = System.nanoTime() + TIMEOUT_NANOS;
+        for (CouncilMember member : members) {
+            while (member.deliveredUpTo() <= slot) {
+                if (System.nanoTime() > deadline) {
+                    throw new IllegalStateException("Round for slot " + slot + " timed out");
+                }
+                Thread.onSpinWait();
+            }
+        }
+    }
+
+    public void tearDown() {
+        for (CouncilMember member : members) {
+            member.shutdown();
+        }
+    }
+}
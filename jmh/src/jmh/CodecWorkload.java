@@ -0,0 +1,10 @@
+package jmh;
+
+public interface CodecWorkload {
+    // codec is "binary" or "java", message one of the sample messages of MessageCodecBench
+    void setUp(String codec, String message) throws Exception;
+
+    byte[] encode() throws Exception;
+
+    Object decode() throws Exception;
+}
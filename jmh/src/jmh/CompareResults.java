@@ -0,0 +1,141 @@
+package jmh;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Compares a JMH run against the saved baseline, both in JMH's CSV format, and prints the change of every score.
+// Changes larger than the threshold are marked, in the direction of the benchmark's mode: a higher time per
+// operation is worse, a lower throughput is worse. Usage: CompareResults <baseline.csv> <results.csv> [threshold%]
+public final class CompareResults {
+    private static final double DEFAULT_THRESHOLD_PERCENT = 10;
+
+    private CompareResults() {
+    }
+
+    private static class Score {
+        final String mode;
+        final double value;
+        final double error;
+        final String unit;
+
+        Score(String mode, double value, double error, String unit) {
+            this.mode = mode;
+            this.value = value;
+            this.error = error;
+            this.unit = unit;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: CompareResults <baseline.csv> <results.csv> [threshold%]");
+            System.exit(2);
+        }
+        Path baselineFile = Paths.get(args[0]);
+        if (!Files.exists(baselineFile)) {
+            System.out.println("No baseline at " + baselineFile + ", run make jmh-baseline to record one");
+            return;
+        }
+        double threshold = args.length > 2 ? Double.parseDouble(args[2]) : DEFAULT_THRESHOLD_PERCENT;
+        Map<String, Score> baseline = read(baselineFile);
+        Map<String, Score> results = read(Paths.get(args[1]));
+
+        int regressions = 0;
+        System.out.printf("%-70s %14s %14s %9s%n", "Benchmark", "Baseline", "Current", "Change");
+        for (Map.Entry<String, Score> entry : results.entrySet()) {
+            Score current = entry.getValue();
+            Score before = baseline.get(entry.getKey());
+            if (before == null) {
+                System.out.printf("%-70s %14s %14.3f %9s  %s%n", entry.getKey(), "-", current.value, "new",
+                        current.unit);
+                continue;
+            }
+            double change = before.value == 0 ? (current.value == 0 ? 0 : 100)
+                    : (current.value - before.value) / before.value * 100;
+            // Within the combined error bars the difference is noise, whatever its size
+            boolean significant = Math.abs(current.value - before.value) > before.error + current.error;
+            boolean worse = isTime(current.mode) ? change > threshold : change < -threshold;
+            boolean better = isTime(current.mode) ? change < -threshold : change > threshold;
+            String mark = "";
+            if (significant && worse) {
+                mark = "  REGRESSION";
+                regressions++;
+            } else if (significant && better) {
+                mark = "  improved";
+            }
+            System.out.printf("%-70s %14.3f %14.3f %+8.1f%%  %s%s%n", entry.getKey(), before.value, current.value,
+                    change, current.unit, mark);
+        }
+        System.out.println(regressions + " regression(s) beyond " + threshold + "%");
+    }
+
+    private static boolean isTime(String mode) {
+        return mode.equals("avgt") || mode.equals("sample") || mode.equals("ss");
+    }
+
+    // Keys each score by benchmark name and parameter values
+    private static Map<String, Score> read(Path file) throws IOException {
+        List<String> lines = Files.readAllLines(file);
+        Map<String, Score> scores = new LinkedHashMap<>();
+        if (lines.isEmpty()) {
+            return scores;
+        }
+        List<String> header = split(lines.get(0));
+        int benchmark = header.indexOf("Benchmark");
+        int mode = header.indexOf("Mode");
+        int score = header.indexOf("Score");
+        int error = header.indexOf("Score Error (99.9%)");
+        int unit = header.indexOf("Unit");
+        for (String line : lines.subList(1, lines.size())) {
+            if (line.isBlank()) {
+                continue;
+            }
+            List<String> fields = split(line);
+            StringBuilder key = new StringBuilder(fields.get(benchmark));
+            for (int i = 0; i < header.size(); i++) {
+                if (header.get(i).startsWith("Param: ") && i < fields.size() && !fields.get(i).isEmpty()) {
+                    key.append(' ').append(header.get(i).substring("Param: ".length())).append('=')
+                            .append(fields.get(i));
+                }
+            }
+            scores.put(key.toString(), new Score(fields.get(mode), parse(fields.get(score)),
+                    parse(fields.get(error)), fields.get(unit)));
+        }
+        return scores;
+    }
+
+    private static double parse(String number) {
+        return number.isEmpty() || number.equals("NaN") ? 0 : Double.parseDouble(number);
+    }
+
+    // JMH quotes every text field and writes numbers bare
+    private static List<String> split(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '"') {
+                if (quoted && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = !quoted;
+                }
+            } else if (c == ',' && !quoted) {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+}
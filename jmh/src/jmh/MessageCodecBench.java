@@ -0,0 +1,38 @@
+package jmh;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// Encode and decode cost of each codec for the messages on the hot path
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MessageCodecBench {
+    @Param({"binary", "java"})
+    public String codec;
+
+    @Param({"PREPARE", "PROMISE", "ACCEPT_REQUEST", "LEARN", "PROMISE_WITH_ENTRIES"})
+    public String message;
+
+    private CodecWorkload workload;
+
+    @Setup
+    public void setUp() throws Exception {
+        workload = Workloads.load("JmhCodecWorkload", CodecWorkload.class);
+        workload.setUp(codec, message);
+    }
+
+    @Benchmark
+    public byte[] encode() throws Exception {
+        return workload.encode();
+    }
+
+    @Benchmark
+    public Object decode() throws Exception {
+        return workload.decode();
+    }
+}
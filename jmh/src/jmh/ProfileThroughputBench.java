@@ -0,0 +1,49 @@
+package jmh;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// Rounds per second under each response profile. The rounds run in the deterministic simulator, so the delays cost
+// no wall clock time and the score is the protocol's own cost for the message pattern each profile produces. The
+// decided and stalled counters show how many rounds each profile lets through
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ProfileThroughputBench {
+    @Param({"IMMEDIATE", "DELAY_SMALL", "DELAY_LARGE", "SLOW", "OFFLINE"})
+    public String profile;
+
+    private ProfileWorkload workload;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Outcomes {
+        public long decided;
+        public long stalled;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            decided = 0;
+            stalled = 0;
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        workload = Workloads.load("JmhProfileWorkload", ProfileWorkload.class);
+        workload.setUp(profile);
+    }
+
+    @Benchmark
+    public void round(Outcomes outcomes) {
+        if (workload.round()) {
+            outcomes.decided++;
+        } else {
+            outcomes.stalled++;
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package jmh;
+
+public interface ProfileWorkload {
+    // Every member but the proposer gets the named ResponseProfile
+    void setUp(String profile);
+
+    // Proposes a value in the simulator and returns whether it was decided before the round timed out
+    boolean round();
+}
@@ -0,0 +1,41 @@
+package jmh;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// Proposer bookkeeping for one phase of a round, with replies fed straight into handlePromise and handleAccepted
+// and nothing sent on the network
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class QuorumBench {
+    @Param({"3", "9", "63"})
+    public int members;
+
+    private QuorumWorkload workload;
+
+    @Setup
+    public void setUp() {
+        workload = Workloads.load("JmhQuorumWorkload", QuorumWorkload.class);
+        workload.setUp(members);
+    }
+
+    @TearDown
+    public void tearDown() {
+        workload.tearDown();
+    }
+
+    @Benchmark
+    public void prepareRound() {
+        workload.prepareRound();
+    }
+
+    @Benchmark
+    public void acceptRound() {
+        workload.acceptRound();
+    }
+}
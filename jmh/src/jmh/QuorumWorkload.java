@@ -0,0 +1,13 @@
+package jmh;
+
+public interface QuorumWorkload {
+    void setUp(int members);
+
+    // Phase 1 on the proposer: PREPARE out, PROMISE from a majority, ACCEPT_REQUEST out
+    void prepareRound();
+
+    // Phase 2 on the proposer: ACCEPT_REQUEST out, ACCEPTED from a majority, value learned
+    void acceptRound();
+
+    void tearDown();
+}
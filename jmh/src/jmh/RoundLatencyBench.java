@@ -0,0 +1,35 @@
+package jmh;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// Latency of a full two phase round on a council of 9 immediate members, over loopback sockets and in memory
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RoundLatencyBench {
+    @Param({"socket", "memory"})
+    public String transport;
+
+    private RoundWorkload workload;
+
+    @Setup
+    public void setUp() throws Exception {
+        workload = Workloads.load("JmhRoundWorkload", RoundWorkload.class);
+        workload.setUp(transport, 9);
+    }
+
+    @TearDown
+    public void tearDown() {
+        workload.tearDown();
+    }
+
+    @Benchmark
+    public void round() {
+        workload.round();
+    }
+}
@@ -0,0 +1,11 @@
+package jmh;
+
+public interface RoundWorkload {
+    // transport is "socket" or "memory"
+    void setUp(String transport, int members) throws Exception;
+
+    // Proposes a value and returns once every member has delivered it
+    void round();
+
+    void tearDown();
+}
@@ -0,0 +1,18 @@
+package jmh;
+
+// The council classes live in the unnamed package, which code in a named package such as this one cannot refer to,
+// and JMH refuses benchmarks in the unnamed package. Each benchmark therefore drives its workload through an
+// interface declared here, implemented next to the council classes and loaded by name once during setup, so the
+// measured calls are plain interface calls
+public final class Workloads {
+    private Workloads() {
+    }
+
+    public static <T> T load(String className, Class<T> type) {
+        try {
+            return type.cast(Class.forName(className).getDeclaredConstructor().newInstance());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot load workload " + className, e);
+        }
+    }
+}